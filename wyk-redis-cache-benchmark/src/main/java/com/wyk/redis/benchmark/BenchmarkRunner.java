@@ -0,0 +1,25 @@
+package com.wyk.redis.benchmark;
+
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+  基准入口: 参数与JMH命令行一致,未指定-rf时结果默认输出为JSON(jmh-result.json),用于回归对比
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+            if (!commandLine.getResult().hasValue()) options.result("jmh-result.json");
+        }
+        if (commandLine.getIncludes().isEmpty()) options.include(BenchmarkRunner.class.getPackageName() + ".*");
+        new Runner(options.build()).run();
+    }
+}
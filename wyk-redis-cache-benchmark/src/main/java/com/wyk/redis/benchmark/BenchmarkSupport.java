@@ -0,0 +1,111 @@
+package com.wyk.redis.benchmark;
+
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.wyk.redis.aop.NewRedisAop;
+import com.wyk.redis.cache.CacheLock;
+import com.wyk.redis.cache.imp.LocalReentrantLock;
+import com.wyk.redis.cache.imp.RedisLock;
+import com.wyk.redis.cache.imp.StripedLock;
+import com.wyk.redis.codec.CompressingValueCodec;
+import com.wyk.redis.codec.JacksonValueCodec;
+import com.wyk.redis.codec.Lz4Compressor;
+import com.wyk.redis.codec.SerializerValueCodec;
+import com.wyk.redis.codec.SmileValueCodec;
+import com.wyk.redis.codec.ValueCodec;
+import com.wyk.redis.metrics.CacheMetrics;
+import com.wyk.redis.util.BloomFilter;
+import com.wyk.redis.util.HotKeyDetector;
+import com.wyk.redis.util.LuaScripts;
+import com.wyk.redis.util.RedisUtil;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+  基准公共装配: 按自动配置的默认参数手工创建RedisTemplate、RedisUtil、锁与切面代理,不启动Spring容器
+ */
+public final class BenchmarkSupport {
+
+    public static final String NIL_VALUE = "__NULL__";
+    public static final long LOCAL_LOCK_TIMEOUT = 2L;
+    public static final long DISTRIBUTED_LOCK_TIMEOUT = 30L;
+
+    private BenchmarkSupport() {
+    }
+
+    public static ObjectMapper objectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.findAndRegisterModules();
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        return objectMapper;
+    }
+
+    //注册分布式锁释放脚本的java实现
+    public static InMemoryRedisConnectionFactory redis() {
+        return new InMemoryRedisConnectionFactory()
+                .script(LuaScripts.UNLOCK.getScriptAsString()::equals,
+                        (redis, keys, args) -> {
+                            if (!Arrays.equals(redis.get(keys[0]), args[0])) return 0L;
+                            return redis.del(keys[0]) ? 1L : 0L;
+                        });
+    }
+
+    public static RedisTemplate<String, Object> redisTemplate(InMemoryRedisConnectionFactory factory) {
+        RedisTemplate<String, Object> template = new RedisTemplate<>();
+        template.setConnectionFactory(factory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+        template.setHashValueSerializer(new GenericJackson2JsonRedisSerializer());
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    //codec取值: json、smile、json-lz4、serializer
+    public static ValueCodec codec(String name, ObjectMapper objectMapper) {
+        return switch (name) {
+            case "json" -> new JacksonValueCodec(objectMapper);
+            case "smile" -> new SmileValueCodec(objectMapper);
+            case "json-lz4" -> new CompressingValueCodec(new JacksonValueCodec(objectMapper), new Lz4Compressor(), 256);
+            case "serializer" -> new SerializerValueCodec(new GenericJackson2JsonRedisSerializer(), objectMapper);
+            default -> throw new IllegalArgumentException("未知codec: " + name);
+        };
+    }
+
+    public static RedisUtil redisUtil(RedisTemplate<String, Object> redisTemplate, ValueCodec codec) {
+        return new RedisUtil(redisTemplate, objectMapper(), 30L, 31L, 10L, NIL_VALUE, false, null, codec);
+    }
+
+    //与lockMap一致的默认锁
+    public static Map<String, CacheLock> locks(RedisUtil redisUtil) {
+        Map<String, CacheLock> locks = new HashMap<>();
+        locks.put("defaultRedis", new RedisLock(DISTRIBUTED_LOCK_TIMEOUT, redisUtil));
+        locks.put("defaultLocalReentrant", new LocalReentrantLock(LOCAL_LOCK_TIMEOUT));
+        locks.put("defaultStriped", new StripedLock(0, LOCAL_LOCK_TIMEOUT));
+        return locks;
+    }
+
+    public static HotKeyDetector hotKeyDetector(RedisUtil redisUtil) {
+        return new HotKeyDetector(redisUtil, 3600L, 200L, 65536, 100);
+    }
+
+    //@RedisCache切面代理,detector与bloomFilter为null时关闭对应功能
+    public static ProductService cachedService(ProductService target, RedisUtil redisUtil, String lock,
+                                               HotKeyDetector detector, BloomFilter bloomFilter) {
+        Map<String, CacheLock> locks = locks(redisUtil);
+        NewRedisAop aop = new NewRedisAop(locks, Map.of(), detector, null, (RedisLock) locks.get("defaultRedis"),
+                bloomFilter, null, null, null, CacheMetrics.NOOP, bloomFilter != null, false, detector != null,
+                redisUtil, NIL_VALUE, lock);
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aop);
+        return factory.getProxy();
+    }
+}
@@ -0,0 +1,76 @@
+package com.wyk.redis.benchmark;
+
+
+import com.wyk.redis.util.BloomFilter;
+import com.wyk.redis.util.CountingBloomFilter;
+import com.wyk.redis.util.ScalableBloomFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+  布隆过滤器: 预先写入expectedSize个id,测量long与字符串key的写入、命中与未命中查询
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BloomFilterBenchmark {
+
+    private static final int SIZE = 1_000_000;
+
+    @Param({"scalable", "counting"})
+    public String type;
+
+    private BloomFilter filter;
+    private String[] keys;
+    private final AtomicLong next = new AtomicLong(SIZE * 2L);
+
+    @Setup(Level.Trial)
+    public void setup() {
+        filter = "counting".equals(type)
+                ? new CountingBloomFilter(SIZE, 0.01)
+                : new ScalableBloomFilter(SIZE, 0.01, false);
+        keys = new String[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            keys[i] = "order:" + i;
+            filter.put(i);
+            filter.put(keys[i]);
+        }
+    }
+
+    @Benchmark
+    public void put() {
+        filter.put(next.incrementAndGet());
+    }
+
+    @Benchmark
+    public boolean mightContainHit() {
+        return filter.mightContain(ThreadLocalRandom.current().nextLong(SIZE));
+    }
+
+    @Benchmark
+    public boolean mightContainMiss() {
+        return filter.mightContain(SIZE + ThreadLocalRandom.current().nextLong(SIZE));
+    }
+
+    @Benchmark
+    public boolean mightContainString() {
+        return filter.mightContain(keys[ThreadLocalRandom.current().nextInt(SIZE)]);
+    }
+}
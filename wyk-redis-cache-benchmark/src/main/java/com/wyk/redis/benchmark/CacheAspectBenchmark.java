@@ -0,0 +1,78 @@
+package com.wyk.redis.benchmark;
+
+
+import com.wyk.redis.util.RedisUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+  @RedisCache端到端: 命中路径(元数据、SpEL、key、热点计数、解码)与未命中路径(加锁、回读、执行原方法、编码写入),
+  direct为不经过切面的原方法基线
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheAspectBenchmark {
+
+    private static final int HOT_KEYS = 1024;
+
+    @Param({"defaultRedis", "defaultLocalReentrant", "defaultStriped"})
+    public String lock;
+
+    @Param({"json", "smile"})
+    public String codec;
+
+    private InMemoryRedisConnectionFactory redis;
+    private ProductService target;
+    private ProductService service;
+    private final AtomicLong missId = new AtomicLong(HOT_KEYS);
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        redis = BenchmarkSupport.redis();
+        RedisUtil redisUtil = BenchmarkSupport.redisUtil(BenchmarkSupport.redisTemplate(redis),
+                BenchmarkSupport.codec(codec, BenchmarkSupport.objectMapper()));
+        target = new ProductService();
+        service = BenchmarkSupport.cachedService(target, redisUtil, lock,
+                BenchmarkSupport.hotKeyDetector(redisUtil), null);
+    }
+
+    //每轮清空未命中写入的数据,重新预热命中key
+    @Setup(Level.Iteration)
+    public void reset() throws InterruptedException {
+        redis.flushAll();
+        for (long id = 0; id < HOT_KEYS; id++) service.get(id);
+    }
+
+    @Benchmark
+    public Product hit() throws InterruptedException {
+        return service.get(ThreadLocalRandom.current().nextLong(HOT_KEYS));
+    }
+
+    @Benchmark
+    public Product miss() throws InterruptedException {
+        return service.get(missId.incrementAndGet());
+    }
+
+    @Benchmark
+    public Product direct() throws InterruptedException {
+        return target.get(ThreadLocalRandom.current().nextLong(HOT_KEYS));
+    }
+}
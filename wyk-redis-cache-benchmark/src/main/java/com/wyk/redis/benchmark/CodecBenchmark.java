@@ -0,0 +1,78 @@
+package com.wyk.redis.benchmark;
+
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wyk.redis.codec.ValueCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+  缓存值编解码: 单个对象与100个元素的列表,serializer为原GenericJackson2JsonRedisSerializer路径
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"json", "smile", "json-lz4", "serializer"})
+    public String codec;
+
+    private ValueCodec valueCodec;
+    private Product product;
+    private List<Product> products;
+    private byte[] productBytes;
+    private byte[] productsBytes;
+    private JavaType productType;
+    private JavaType productsType;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ObjectMapper objectMapper = BenchmarkSupport.objectMapper();
+        valueCodec = BenchmarkSupport.codec(codec, objectMapper);
+        product = new Product(42L);
+        products = new ArrayList<>();
+        for (long i = 0; i < 100; i++) products.add(new Product(i));
+        productBytes = valueCodec.encode(product);
+        productsBytes = valueCodec.encode(products);
+        productType = objectMapper.constructType(Product.class);
+        productsType = objectMapper.getTypeFactory().constructCollectionType(List.class, Product.class);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return valueCodec.encode(product);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return valueCodec.decode(productBytes, productType);
+    }
+
+    @Benchmark
+    public byte[] encodeList() {
+        return valueCodec.encode(products);
+    }
+
+    @Benchmark
+    public Object decodeList() {
+        return valueCodec.decode(productsBytes, productsType);
+    }
+}
@@ -0,0 +1,81 @@
+package com.wyk.redis.benchmark;
+
+
+import com.wyk.redis.util.HotKeyDetector;
+import com.wyk.redis.util.RedisUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+  热点计数: 替代原KeyInfo.increment的HotKeyDetector.increment,
+  uniform为10万key均匀访问,skewed为80%访问集中在1%的key,多线程下测量sketch的CAS竞争
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotKeyDetectorBenchmark {
+
+    private static final int KEYS = 100_000;
+    private static final int SEQUENCE = 1 << 20;
+
+    @Param({"uniform", "skewed"})
+    public String distribution;
+
+    private HotKeyDetector detector;
+    private String[] keys;
+    private int[] sequence;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        InMemoryRedisConnectionFactory redis = BenchmarkSupport.redis();
+        RedisUtil redisUtil = BenchmarkSupport.redisUtil(BenchmarkSupport.redisTemplate(redis),
+                BenchmarkSupport.codec("json", BenchmarkSupport.objectMapper()));
+        detector = BenchmarkSupport.hotKeyDetector(redisUtil);
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) keys[i] = i + ":3f7a9c2e4b1d8f6a0c5e9b2d7f4a1c8e";
+        sequence = new int[SEQUENCE];
+        Random random = new Random(42);
+        for (int i = 0; i < SEQUENCE; i++) {
+            boolean hot = "skewed".equals(distribution) && random.nextInt(10) < 8;
+            sequence[i] = hot ? random.nextInt(KEYS / 100) : random.nextInt(KEYS);
+        }
+    }
+
+    @Benchmark
+    public long increment() {
+        return detector.increment(next());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long incrementContended() {
+        return detector.increment(next());
+    }
+
+    @Benchmark
+    public boolean isHot() {
+        return detector.isHot(next());
+    }
+
+    private String next() {
+        return keys[sequence[ThreadLocalRandom.current().nextInt(SEQUENCE)]];
+    }
+}
@@ -0,0 +1,301 @@
+package com.wyk.redis.benchmark;
+
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+/*
+  进程内redis替身: 以动态代理实现RedisConnection,字符串与过期命令存放在ConcurrentHashMap中,
+  RedisTemplate、管道与脚本执行器照常工作,基准测量的是组件自身开销而不是网络往返
+  lua脚本无法解释执行,按脚本内容匹配注册的java实现,未注册的EVALSHA返回NOSCRIPT
+ */
+public class InMemoryRedisConnectionFactory implements RedisConnectionFactory {
+
+    private final Map<Key, Entry> store = new ConcurrentHashMap<>();
+    private final Map<String, ScriptFunction> scriptsBySha = new ConcurrentHashMap<>();
+    private final List<ScriptMatcher> matchers = new CopyOnWriteArrayList<>();
+
+    //脚本的java实现,keys与args为原始字节
+    @FunctionalInterface
+    public interface ScriptFunction {
+        Object apply(InMemoryRedisConnectionFactory redis, byte[][] keys, byte[][] args);
+    }
+
+    private record ScriptMatcher(Predicate<String> source, ScriptFunction function) {
+    }
+
+    //注册脚本实现,source匹配脚本内容
+    public InMemoryRedisConnectionFactory script(Predicate<String> source, ScriptFunction function) {
+        matchers.add(new ScriptMatcher(source, function));
+        return this;
+    }
+
+    public void flushAll() {
+        store.clear();
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    public byte[] get(byte[] key) {
+        Entry entry = live(key);
+        return entry == null ? null : entry.value;
+    }
+
+    public void set(byte[] key, byte[] value, long expireAt) {
+        store.put(new Key(key), new Entry(value, expireAt));
+    }
+
+    //原子的不存在时写入,已过期视为不存在
+    public boolean setIfAbsent(byte[] key, byte[] value, long expireAt) {
+        Entry entry = new Entry(value, expireAt);
+        long now = System.currentTimeMillis();
+        return store.compute(new Key(key), (k, old) ->
+                old == null || (old.expireAt > 0 && old.expireAt <= now) ? entry : old) == entry;
+    }
+
+    public boolean del(byte[] key) {
+        return store.remove(new Key(key)) != null;
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        return (RedisConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{RedisConnection.class}, new Connection());
+    }
+
+    @Override
+    public RedisClusterConnection getClusterConnection() {
+        throw new UnsupportedOperationException("内存redis不支持集群连接");
+    }
+
+    @Override
+    public boolean getConvertPipelineAndTxResults() {
+        return true;
+    }
+
+    @Override
+    public RedisSentinelConnection getSentinelConnection() {
+        throw new UnsupportedOperationException("内存redis不支持哨兵连接");
+    }
+
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        return null;
+    }
+
+    private Entry live(byte[] key) {
+        Key k = new Key(key);
+        Entry entry = store.get(k);
+        if (entry != null && entry.expireAt > 0 && entry.expireAt <= System.currentTimeMillis()) {
+            store.remove(k, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    private static long expireAt(Expiration expiration) {
+        if (expiration == null || expiration.isPersistent() || expiration.isKeepTtl()) return 0;
+        return System.currentTimeMillis() + expiration.getExpirationTimeInMilliseconds();
+    }
+
+    private static String sha1(byte[] script) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(script));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //单个连接,管道结果按命令顺序收集
+    private final class Connection implements InvocationHandler {
+
+        private List<Object> pipeline;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            switch (name) {
+                case "stringCommands", "keyCommands", "scriptingCommands", "serverCommands" -> {
+                    return proxy;
+                }
+                case "close" -> {
+                    return null;
+                }
+                case "isClosed", "isQueueing" -> {
+                    return false;
+                }
+                case "isPipelined" -> {
+                    return pipeline != null;
+                }
+                case "openPipeline" -> {
+                    pipeline = new ArrayList<>();
+                    return null;
+                }
+                case "closePipeline" -> {
+                    List<Object> results = pipeline == null ? List.of() : pipeline;
+                    pipeline = null;
+                    return results;
+                }
+                case "getNativeConnection" -> {
+                    return InMemoryRedisConnectionFactory.this;
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "toString" -> {
+                    return "InMemoryRedisConnection";
+                }
+                default -> {
+                    Object result = command(name, args);
+                    if (pipeline == null) return result;
+                    pipeline.add(result);
+                    return null;
+                }
+            }
+        }
+
+        private Object command(String name, Object[] args) {
+            switch (name) {
+                case "get" -> {
+                    return InMemoryRedisConnectionFactory.this.get((byte[]) args[0]);
+                }
+                case "mGet" -> {
+                    List<byte[]> values = new ArrayList<>();
+                    for (byte[] key : (byte[][]) args[0]) values.add(InMemoryRedisConnectionFactory.this.get(key));
+                    return values;
+                }
+                case "set" -> {
+                    byte[] key = (byte[]) args[0];
+                    Expiration expiration = args.length > 2 ? (Expiration) args[2] : Expiration.persistent();
+                    RedisStringCommands.SetOption option = args.length > 3
+                            ? (RedisStringCommands.SetOption) args[3] : RedisStringCommands.SetOption.upsert();
+                    if (option == RedisStringCommands.SetOption.SET_IF_ABSENT) {
+                        return setIfAbsent(key, (byte[]) args[1], expireAt(expiration));
+                    }
+                    if (option == RedisStringCommands.SetOption.SET_IF_PRESENT && live(key) == null) return false;
+                    set(key, (byte[]) args[1], expireAt(expiration));
+                    return true;
+                }
+                case "setNX" -> {
+                    return setIfAbsent((byte[]) args[0], (byte[]) args[1], 0);
+                }
+                case "setEx", "pSetEx" -> {
+                    long millis = "setEx".equals(name) ? (long) args[1] * 1000 : (long) args[1];
+                    set((byte[]) args[0], (byte[]) args[2], System.currentTimeMillis() + millis);
+                    return true;
+                }
+                case "del", "unlink" -> {
+                    long count = 0;
+                    for (byte[] key : (byte[][]) args[0]) if (del(key)) count++;
+                    return count;
+                }
+                case "exists" -> {
+                    if (args[0] instanceof byte[] key) return live(key) != null;
+                    long count = 0;
+                    for (byte[] key : (byte[][]) args[0]) if (live(key) != null) count++;
+                    return count;
+                }
+                case "pTtl", "ttl" -> {
+                    Entry entry = live((byte[]) args[0]);
+                    if (entry == null) return -2L;
+                    if (entry.expireAt == 0) return -1L;
+                    long millis = entry.expireAt - System.currentTimeMillis();
+                    return "pTtl".equals(name) ? millis : millis / 1000;
+                }
+                case "persist" -> {
+                    Entry entry = live((byte[]) args[0]);
+                    if (entry == null || entry.expireAt == 0) return false;
+                    set((byte[]) args[0], entry.value, 0);
+                    return true;
+                }
+                case "expire", "pExpire" -> {
+                    Entry entry = live((byte[]) args[0]);
+                    if (entry == null) return false;
+                    long millis = "expire".equals(name) ? (long) args[1] * 1000 : (long) args[1];
+                    set((byte[]) args[0], entry.value, System.currentTimeMillis() + millis);
+                    return true;
+                }
+                case "publish" -> {
+                    return 0L;
+                }
+                case "scriptLoad" -> {
+                    return load((byte[]) args[0]);
+                }
+                case "eval" -> {
+                    return eval(scriptsBySha.get(load((byte[]) args[0])), (int) args[2], (byte[][]) args[3]);
+                }
+                case "evalSha" -> {
+                    String sha = args[0] instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : (String) args[0];
+                    ScriptFunction function = scriptsBySha.get(sha);
+                    if (function == null) throw new InvalidDataAccessApiUsageException("NOSCRIPT No matching script");
+                    return eval(function, (int) args[2], (byte[][]) args[3]);
+                }
+                default -> throw new UnsupportedOperationException("内存redis未实现命令: " + name);
+            }
+        }
+
+        private String load(byte[] script) {
+            String sha = sha1(script);
+            scriptsBySha.computeIfAbsent(sha, k -> {
+                String source = new String(script, StandardCharsets.UTF_8);
+                return matchers.stream().filter(m -> m.source().test(source)).findFirst()
+                        .map(ScriptMatcher::function)
+                        .orElseThrow(() -> new UnsupportedOperationException("内存redis未注册脚本: " + source));
+            });
+            return sha;
+        }
+
+        private Object eval(ScriptFunction function, int numKeys, byte[][] keysAndArgs) {
+            return function.apply(InMemoryRedisConnectionFactory.this,
+                    Arrays.copyOfRange(keysAndArgs, 0, numKeys),
+                    Arrays.copyOfRange(keysAndArgs, numKeys, keysAndArgs.length));
+        }
+    }
+
+    //byte[]作为map键
+    private record Key(byte[] bytes) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && Arrays.equals(bytes, k.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private record Entry(byte[] value, long expireAt) {
+    }
+}
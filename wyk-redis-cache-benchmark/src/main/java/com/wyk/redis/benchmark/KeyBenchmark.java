@@ -0,0 +1,70 @@
+package com.wyk.redis.benchmark;
+
+
+import com.wyk.redis.aop.CacheMetadata;
+import com.wyk.redis.aop.RedisCache;
+import com.wyk.redis.aop.RedisInterface;
+import com.wyk.redis.cache.imp.ExceptionHandler;
+import com.wyk.redis.cache.imp.StripedLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.util.DigestUtils;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+  key生成: 与切面相同的步骤构建参数上下文、求值SpEL并拼接key
+  redisCacheKey对应NewRedisAop的getArgByContext + getKey,redisInterfaceKey对应RedisAop的generateRedisKey
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyBenchmark {
+
+    private static final String[] PARAMETER_NAMES = {"id"};
+
+    private CacheMetadata redisCache;
+    private CacheMetadata redisInterface;
+
+    @Setup(Level.Trial)
+    public void setup() throws NoSuchMethodException {
+        Method cached = ProductService.class.getMethod("get", Long.class);
+        Method interfaced = ProductService.class.getMethod("getByInterface", Long.class);
+        redisCache = CacheMetadata.of(cached, PARAMETER_NAMES, cached.getAnnotation(RedisCache.class),
+                new ExceptionHandler(), new StripedLock(0, 2L));
+        redisInterface = CacheMetadata.of(interfaced, PARAMETER_NAMES, interfaced.getAnnotation(RedisInterface.class),
+                new ExceptionHandler());
+    }
+
+    @Benchmark
+    public String redisCacheKey() {
+        EvaluationContext context = redisCache.createContext(new Object[]{ThreadLocalRandom.current().nextLong(1 << 20)});
+        Object arg = redisCache.getKeyExpression().getValue(context);
+        if (arg == null) arg = redisCache.getDefaultVal();
+        return arg + ":" + redisCache.getPrefixDigest();
+    }
+
+    @Benchmark
+    public String redisInterfaceKey() {
+        EvaluationContext context = redisInterface.createContext(new Object[]{ThreadLocalRandom.current().nextLong(1 << 20)});
+        String key = redisInterface.getKeyExpression().getValue(context, String.class);
+        return String.format("%s::%s", redisInterface.getValue(),
+                DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8)));
+    }
+}
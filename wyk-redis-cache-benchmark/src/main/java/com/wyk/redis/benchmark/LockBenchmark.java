@@ -0,0 +1,67 @@
+package com.wyk.redis.benchmark;
+
+
+import com.wyk.redis.cache.CacheLock;
+import com.wyk.redis.util.RedisUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+  锁实现对比: 8个线程在keys个key上加解锁,keys=1为同一key的最大竞争,
+  defaultStriped不创建锁对象,defaultLocalReentrant每次创建与清理锁表项,defaultRedis经过完整的RedisTemplate与脚本路径
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class LockBenchmark {
+
+    @Param({"defaultRedis", "defaultLocalReentrant", "defaultStriped"})
+    public String lock;
+
+    @Param({"1", "1024"})
+    public int keys;
+
+    private CacheLock cacheLock;
+    private String[] lockKeys;
+
+    @State(Scope.Thread)
+    public static class Owner {
+        final String value = UUID.randomUUID().toString();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        InMemoryRedisConnectionFactory redis = BenchmarkSupport.redis();
+        RedisUtil redisUtil = BenchmarkSupport.redisUtil(BenchmarkSupport.redisTemplate(redis),
+                BenchmarkSupport.codec("json", BenchmarkSupport.objectMapper()));
+        cacheLock = BenchmarkSupport.locks(redisUtil).get(lock);
+        lockKeys = new String[keys];
+        for (int i = 0; i < keys; i++) lockKeys[i] = i + ":3f7a9c2e4b1d8f6a0c5e9b2d7f4a1c8e";
+    }
+
+    @Benchmark
+    public void lockUnlock(Owner owner) throws Throwable {
+        String key = lockKeys[ThreadLocalRandom.current().nextInt(keys)];
+        cacheLock.tryLock(key, owner.value);
+        cacheLock.unLock(key, owner.value);
+    }
+}
@@ -0,0 +1,78 @@
+package com.wyk.redis.benchmark;
+
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/*
+  基准使用的缓存值,字段数量与嵌套层次接近常见商品详情
+ */
+public class Product {
+
+    private Long id;
+    private String name;
+    private BigDecimal price;
+    private Integer stock;
+    private List<String> tags;
+    private String description;
+
+    public Product() {
+    }
+
+    public Product(Long id) {
+        this.id = id;
+        this.name = "product-" + id;
+        this.price = BigDecimal.valueOf(id % 10000, 2);
+        this.stock = (int) (id % 500);
+        this.tags = List.of("tag-a", "tag-b", "tag-" + (id % 16));
+        this.description = "description of product " + id + ", ".repeat(8);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public void setPrice(BigDecimal price) {
+        this.price = price;
+    }
+
+    public Integer getStock() {
+        return stock;
+    }
+
+    public void setStock(Integer stock) {
+        this.stock = stock;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<String> tags) {
+        this.tags = tags;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+}
@@ -0,0 +1,45 @@
+package com.wyk.redis.benchmark;
+
+
+import com.wyk.redis.aop.RedisCache;
+import com.wyk.redis.aop.RedisInterface;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+  被代理的目标服务,loadMillis模拟数据库查询耗时,loads统计原方法实际执行次数
+ */
+public class ProductService {
+
+    private final long loadMillis;
+    private final LongAdder loads = new LongAdder();
+
+    public ProductService() {
+        this(0);
+    }
+
+    public ProductService(long loadMillis) {
+        this.loadMillis = loadMillis;
+    }
+
+    @RedisCache(value = "product", key = "#id")
+    public Product get(Long id) throws InterruptedException {
+        return load(id);
+    }
+
+    @RedisInterface(value = "product", key = "#id")
+    public Product getByInterface(Long id) throws InterruptedException {
+        return load(id);
+    }
+
+    public Product load(Long id) throws InterruptedException {
+        loads.increment();
+        if (loadMillis > 0) TimeUnit.MILLISECONDS.sleep(loadMillis);
+        return new Product(id);
+    }
+
+    public long getLoads() {
+        return loads.sum();
+    }
+}
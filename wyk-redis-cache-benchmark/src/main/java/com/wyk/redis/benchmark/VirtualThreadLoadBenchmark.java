@@ -0,0 +1,103 @@
+package com.wyk.redis.benchmark;
+
+
+import com.wyk.redis.util.RedisUtil;
+import com.wyk.redis.util.ThreadFactories;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+  并发未命中压测: tasks个线程同时查询keys个冷key,原方法耗时loadMillis,测量全部完成的时间,
+  结束时输出抢锁超时的失败次数与原方法实际执行次数(理想值为每轮keys次);
+  virtual=true在Java 21及以上使用虚拟线程,低版本回退为平台线程
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VirtualThreadLoadBenchmark {
+
+    @Param({"10000"})
+    public int tasks;
+
+    @Param({"100"})
+    public int keys;
+
+    @Param({"5"})
+    public long loadMillis;
+
+    @Param({"true", "false"})
+    public boolean virtual;
+
+    @Param({"defaultRedis", "defaultLocalReentrant", "defaultStriped"})
+    public String lock;
+
+    private InMemoryRedisConnectionFactory redis;
+    private ProductService target;
+    private ProductService service;
+    private ThreadFactory threadFactory;
+    private final LongAdder failed = new LongAdder();
+    private long rounds;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        redis = BenchmarkSupport.redis();
+        RedisUtil redisUtil = BenchmarkSupport.redisUtil(BenchmarkSupport.redisTemplate(redis),
+                BenchmarkSupport.codec("json", BenchmarkSupport.objectMapper()));
+        target = new ProductService(loadMillis);
+        service = BenchmarkSupport.cachedService(target, redisUtil, lock, null, null);
+        threadFactory = ThreadFactories.create("wyk-bench-", virtual);
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() {
+        redis.flushAll();
+    }
+
+    @Benchmark
+    public void stampede(Blackhole blackhole) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(tasks);
+        rounds++;
+        for (int i = 0; i < tasks; i++) {
+            long id = i % keys;
+            threadFactory.newThread(() -> {
+                try {
+                    start.await();
+                    blackhole.consume(service.get(id));
+                } catch (Exception e) {
+                    failed.increment();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        System.out.printf("%nplatformFallback=%s rounds=%d failed=%d loads=%d%n", virtual && !ThreadFactories.isVirtualSupported(),
+                rounds, failed.sum(), target.getLoads());
+    }
+}
@@ -1,31 +1,42 @@
 package com.wyk.redis;
 
 
-import com.wyk.redis.aop.KeyInfo;
 import com.wyk.redis.aop.NewRedisAop;
+import com.wyk.redis.aop.ReactiveCacheSupport;
 import com.wyk.redis.cache.CacheLock;
 import com.wyk.redis.cache.CacheMissHandler;
 import com.wyk.redis.cache.imp.LocalReentrantLock;
 import com.wyk.redis.cache.imp.RedisLock;
+import com.wyk.redis.cache.imp.SingleFlightLock;
+import com.wyk.redis.cache.imp.StripedLock;
+import com.wyk.redis.metrics.CacheMetrics;
 import com.wyk.redis.util.BloomFilter;
+import com.wyk.redis.util.CacheRefresher;
+import com.wyk.redis.util.HotKeyCache;
+import com.wyk.redis.util.HotKeyDetector;
+import com.wyk.redis.util.HotspotAggregator;
+import com.wyk.redis.util.NearCache;
 import com.wyk.redis.util.RedisUtil;
-import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @AutoConfiguration
 @EnableConfigurationProperties(RedisProperties.class)
@@ -45,33 +56,66 @@ public class CacheLockAutoConfiguration {
     @Bean
     @ConditionalOnMissingBean(RedisLock.class)
     public RedisLock redisLock(RedisProperties redisProperties,
-                               RedisUtil redisUtil) {
+                               RedisUtil redisUtil,
+                               @Autowired(required = false) CacheMetrics cacheMetrics) {
         log.info("=== 创建 redisLock Bean ===");
         return new RedisLock(
                 redisProperties.getDistributedLockTimeOut(),
-                redisUtil
+                redisUtil,
+                cacheMetrics
         );
     }
 
     @Bean
     @ConditionalOnMissingBean(LocalReentrantLock.class)
-    public LocalReentrantLock reentrantLock(RedisProperties redisProperties) {
+    public LocalReentrantLock reentrantLock(RedisProperties redisProperties,
+                                            @Autowired(required = false) CacheMetrics cacheMetrics) {
         log.info("=== 创建 reentrantLock Bean ===");
-        return new LocalReentrantLock(redisProperties.getLocalLockTimeOut());
+        return new LocalReentrantLock(redisProperties.getLocalLockTimeOut(), cacheMetrics);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(StripedLock.class)
+    public StripedLock stripedLock(RedisProperties redisProperties,
+                                   @Autowired(required = false) CacheMetrics cacheMetrics) {
+        log.info("=== 创建 stripedLock Bean ===");
+        return new StripedLock(redisProperties.getLockStripes(), redisProperties.getLocalLockTimeOut(), cacheMetrics);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(SingleFlightLock.class)
+    public SingleFlightLock singleFlightLock(RedisProperties redisProperties,
+                                             RedisUtil redisUtil,
+                                             @Qualifier("wykRedisMessageListenerContainer") RedisMessageListenerContainer container) {
+        log.info("=== 创建 singleFlightLock Bean ===");
+        SingleFlightLock singleFlightLock = new SingleFlightLock(
+                redisProperties.getDistributedLockTimeOut(),
+                redisUtil,
+                redisProperties.getSingleFlightChannel()
+        );
+        container.addMessageListener(singleFlightLock, new ChannelTopic(redisProperties.getSingleFlightChannel()));
+        return singleFlightLock;
     }
 
     @Bean
     @ConditionalOnMissingBean(name = "lockMap")
     public Map<String, CacheLock> lockMap(ObjectProvider<List<CacheLock>> provider,
                                           RedisLock redisLock,
-                                          LocalReentrantLock reentrantLock) {
+                                          LocalReentrantLock reentrantLock,
+                                          StripedLock stripedLock,
+                                          SingleFlightLock singleFlightLock) {
         log.info("=== 创建 lockMap Bean ===");
         HashMap<String, CacheLock> cacheLockHashMap = new HashMap<>();
         cacheLockHashMap.put("defaultRedis",redisLock);
         cacheLockHashMap.put("defaultLocalReentrant",reentrantLock);
+        cacheLockHashMap.put("defaultSingleFlight",singleFlightLock);
+        cacheLockHashMap.put("defaultStriped",stripedLock);
         List<CacheLock> cacheLocks = provider.getIfAvailable(ArrayList::new);
         cacheLocks.stream()
-                .filter(cacheLock -> !(cacheLock instanceof RedisLock || cacheLock instanceof LocalReentrantLock))
+                .filter(cacheLock -> !(cacheLock instanceof RedisLock
+                        || cacheLock instanceof LocalReentrantLock
+                        || cacheLock instanceof StripedLock
+                        || cacheLock instanceof SingleFlightLock))
                 .forEach(cacheLock -> {
                     String simpleName = cacheLock.getClass().getSimpleName();
                     String lockKey = generateLockName(simpleName);
@@ -81,6 +125,19 @@ public class CacheLockAutoConfiguration {
         return cacheLockHashMap;
     }
 
+    @Bean
+    @ConditionalOnMissingBean(CacheRefresher.class)
+    public CacheRefresher cacheRefresher(RedisProperties redisProperties,
+                                         RedisUtil redisUtil) {
+        log.info("=== 创建 cacheRefresher Bean ===");
+        return new CacheRefresher(
+                redisUtil,
+                redisProperties.getRefreshThreads(),
+                redisProperties.getRefreshQueueSize(),
+                redisProperties.isVirtualThreads()
+        );
+    }
+
     @Bean
     @ConditionalOnMissingBean(NewRedisAop.class)
     public NewRedisAop newRedisAop(RedisProperties redisProperties,
@@ -88,14 +145,25 @@ public class CacheLockAutoConfiguration {
                                     Map<String, CacheMissHandler> cacheMissHandlerMap,
                                     RedisLock redisLock,
                                     RedisUtil redisUtil,
-                                    @Autowired(required = false) BloomFilter bloomFilter) {
+                                    @Autowired(required = false) BloomFilter bloomFilter,
+                                    @Autowired(required = false) NearCache nearCache,
+                                    CacheRefresher cacheRefresher,
+                                    @Autowired(required = false) HotKeyDetector hotKeyDetector,
+                                    @Autowired(required = false) HotKeyCache hotKeyCache,
+                                    @Autowired(required = false) ReactiveCacheSupport reactiveCacheSupport,
+                                    @Autowired(required = false) CacheMetrics cacheMetrics) {
         log.info("=== 创建 newRedisAop Bean ===");
         return new NewRedisAop(
                 lockMap,
                 cacheMissHandlerMap,
-                new ConcurrentHashMap<>(),
+                hotKeyDetector,
+                hotKeyCache,
                 redisLock,
                 bloomFilter,
+                nearCache,
+                cacheRefresher,
+                reactiveCacheSupport,
+                cacheMetrics,
                 redisProperties.isBloom(),
                 redisProperties.isNil(),
                 redisProperties.isHotspotEnable(),
@@ -105,14 +173,58 @@ public class CacheLockAutoConfiguration {
         );
     }
     @Bean
-    @ConditionalOnMissingBean(name = "keyInfoMap")
-    @ConditionalOnProperty(prefix = "wyk.redis.cache", name = "hotspotEnable", havingValue = "true")
-    public Map<String, KeyInfo> keyInfoMap() {
-        return new ConcurrentHashMap<>();
+    @ConditionalOnMissingBean(HotKeyDetector.class)
+    @ConditionalOnProperty(prefix = "wyk.redis.cache", name = "hotspotEnable", havingValue = "true", matchIfMissing = true)
+    public HotKeyDetector hotKeyDetector(RedisProperties redisProperties,
+                                         RedisUtil redisUtil) {
+        log.info("=== 创建 hotKeyDetector Bean ===");
+        return new HotKeyDetector(
+                redisUtil,
+                redisProperties.getInterval(),
+                redisProperties.getThreshold(),
+                redisProperties.getHotspotSketchWidth(),
+                redisProperties.getHotspotTopK()
+        );
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(HotspotAggregator.class)
+    @ConditionalOnExpression("${wyk.redis.cache.hotspotCluster:false} == true and ${wyk.redis.cache.hotspotEnable:true} == true")
+    public HotspotAggregator hotspotAggregator(RedisProperties redisProperties,
+                                               RedisTemplate<String, Object> redisTemplate,
+                                               HotKeyDetector hotKeyDetector) {
+        log.info("=== 创建 hotspotAggregator Bean ===");
+        HotspotAggregator aggregator = new HotspotAggregator(
+                redisTemplate,
+                hotKeyDetector,
+                redisProperties.getHotspotClusterKey(),
+                redisProperties.getHotspotClusterWindow(),
+                redisProperties.getHotspotClusterThreshold(),
+                redisProperties.getHotspotTopK()
+        );
+        aggregator.start();
+        return aggregator;
     }
-    @PostConstruct
-    private void init() {
-        KeyInfo.staticInj(redisProperties.getInterval(),redisProperties.getThreshold(),redisUtil);
+
+    @Bean
+    @ConditionalOnMissingBean(HotKeyCache.class)
+    @ConditionalOnProperty(prefix = "wyk.redis.cache", name = "hotspotLocal", havingValue = "true", matchIfMissing = true)
+    public HotKeyCache hotKeyCache(RedisProperties redisProperties,
+                                   RedisTemplate<String, Object> redisTemplate,
+                                   RedisUtil redisUtil,
+                                   @Qualifier("wykRedisMessageListenerContainer") RedisMessageListenerContainer container) {
+        log.info("=== 创建 hotKeyCache Bean ===");
+        HotKeyCache hotKeyCache = new HotKeyCache(
+                redisTemplate,
+                redisUtil,
+                redisProperties.getHotspotChannel(),
+                redisProperties.getHotspotTopK().longValue(),
+                redisProperties.getHotspotLocalExpires(),
+                redisProperties.getHotspotReplicas(),
+                redisProperties.isLocalCacheImmutable()
+        );
+        container.addMessageListener(hotKeyCache, new ChannelTopic(redisProperties.getHotspotChannel()));
+        return hotKeyCache;
     }
 
     private String generateLockName(String simpleName) {
@@ -3,34 +3,62 @@ package com.wyk.redis;
 
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wyk.redis.aop.ReactiveCacheSupport;
 import com.wyk.redis.aop.RedisAop;
+import com.wyk.redis.cache.BloomFilterPreloader;
+import com.wyk.redis.metrics.CacheMetrics;
 import com.wyk.redis.cache.CacheMissHandler;
 import com.wyk.redis.cache.imp.EmptyHandler;
+import com.wyk.redis.codec.ValueCodec;
 import com.wyk.redis.cache.imp.ExceptionHandler;
+import com.wyk.redis.exception.CustomizeException;
 import com.wyk.redis.util.BloomFilter;
+import com.wyk.redis.util.BloomFilterPreloadRunner;
+import com.wyk.redis.util.BloomFilterRedisStore;
+import com.wyk.redis.util.CountingBloomFilter;
+import com.wyk.redis.util.InventoryBatcher;
+import com.wyk.redis.util.InventoryKeys;
+import com.wyk.redis.util.InventoryQuota;
+import com.wyk.redis.util.LeaseManager;
+import com.wyk.redis.util.LuaScripts;
+import com.wyk.redis.util.NearCache;
+import com.wyk.redis.util.ReactiveRedisUtil;
 import com.wyk.redis.util.RedisUtil;
+import com.wyk.redis.util.ScalableBloomFilter;
+import com.wyk.redis.util.ShardedInventory;
+import com.wyk.redis.util.SlotRouter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLongArray;
 
 @AutoConfiguration
 @EnableConfigurationProperties(value = RedisProperties.class)
 //@ConditionalOnProperty(prefix = "wyk.redis.cache",name = "enable",havingValue = "true")
 @ConditionalOnExpression("${wyk.redis.cache.enable:false} == true or ${wyk.redis.cache.test:false} == true")
+@AutoConfigureAfter(name = "org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration")
 public class RedisAutoConfiguration {
 
 
@@ -41,10 +69,110 @@ public class RedisAutoConfiguration {
     @ConditionalOnProperty(prefix = "wyk.redis.cache",name = "bloom",havingValue = "true",matchIfMissing = true)
     public BloomFilter bloomFilter(RedisProperties redisProperties){
         log.info("=== 创建 BloomFilter Bean ===");
-        Integer expectedSize = redisProperties.getExpectedSize();
-        double m =  (- expectedSize * Math.log(0.01))/(Math.log(2) * Math.log(2));
-        int bitArraySize = (int) Math.ceil(m);
-        return new BloomFilter(new AtomicLongArray( (bitArraySize+63)/64), bitArraySize,5);
+        if ("counting".equalsIgnoreCase(redisProperties.getBloomType())) {
+            if (redisProperties.isBloomPersist()) log.warn("计数布隆过滤器不支持redis同步,bloomPersist将被忽略");
+            return new CountingBloomFilter(redisProperties.getExpectedSize(), redisProperties.getBloomFpp());
+        }
+        return new ScalableBloomFilter(
+                redisProperties.getExpectedSize(),
+                redisProperties.getBloomFpp(),
+                redisProperties.isBloomPersist()
+        );
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(BloomFilterRedisStore.class)
+    @ConditionalOnBean(BloomFilter.class)
+    @ConditionalOnExpression("${wyk.redis.cache.bloomPersist:false} == true and '${wyk.redis.cache.bloomType:scalable}' == 'scalable'")
+    public BloomFilterRedisStore bloomFilterRedisStore(RedisTemplate<String,Object> redisTemplate,
+                                                       BloomFilter bloomFilter,
+                                                       RedisProperties redisProperties) {
+        log.info("=== 创建 BloomFilterRedisStore Bean ===");
+        if (!(bloomFilter instanceof ScalableBloomFilter scalableBloomFilter)) {
+            throw CustomizeException.internalServerError("仅ScalableBloomFilter支持redis同步");
+        }
+        BloomFilterRedisStore store = new BloomFilterRedisStore(
+                redisTemplate,
+                scalableBloomFilter,
+                redisProperties.getBloomRedisKey(),
+                redisProperties.getBloomSyncInterval()
+        );
+        store.start();
+        return store;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(BloomFilterPreloadRunner.class)
+    @ConditionalOnBean({BloomFilter.class, BloomFilterPreloader.class})
+    public BloomFilterPreloadRunner bloomFilterPreloadRunner(BloomFilter bloomFilter,
+                                                             List<BloomFilterPreloader> preloaders,
+                                                             RedisProperties redisProperties,
+                                                             @Autowired(required = false) BloomFilterRedisStore store) {
+        log.info("=== 创建 BloomFilterPreloadRunner Bean ===");
+        return new BloomFilterPreloadRunner(
+                bloomFilter,
+                preloaders,
+                redisProperties.getBloomPreloadBatchSize(),
+                redisProperties.getBloomPreloadThreads(),
+                store
+        );
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(NearCache.class)
+    @ConditionalOnProperty(prefix = "wyk.redis.cache",name = "nearCache",havingValue = "true")
+    public NearCache nearCache(RedisProperties redisProperties,
+                               RedisTemplate<String,Object> redisTemplate,
+                               ValueCodec valueCodec,
+                               @Qualifier("wykRedisMessageListenerContainer") RedisMessageListenerContainer container) {
+        log.info("=== 创建 NearCache Bean ===");
+        NearCache nearCache = new NearCache(
+                redisTemplate,
+                redisProperties.getNearCacheChannel(),
+                redisProperties.getNearCacheMaxSize(),
+                redisProperties.getNearCacheExpires(),
+                valueCodec,
+                redisProperties.isLocalCacheImmutable()
+        );
+        container.addMessageListener(nearCache, new ChannelTopic(redisProperties.getNearCacheChannel()));
+        return nearCache;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(LeaseManager.class)
+    @ConditionalOnProperty(prefix = "wyk.redis.cache",name = "watchdog",havingValue = "true",matchIfMissing = true)
+    public LeaseManager leaseManager(RedisTemplate<String,Object> redisTemplate,
+                                     SlotRouter slotRouter,
+                                     RedisProperties redisProperties) {
+        log.info("=== 创建 LeaseManager Bean ===");
+        return new LeaseManager(
+                redisTemplate,
+                slotRouter,
+                redisProperties.getLeaseTick(),
+                redisProperties.getLeaseBatchSize()
+        );
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(SlotRouter.class)
+    public SlotRouter slotRouter(RedisTemplate<String,Object> redisTemplate,
+                                 RedisProperties redisProperties) {
+        log.info("=== 创建 SlotRouter Bean ===");
+        return new SlotRouter(
+                redisTemplate,
+                redisProperties.getSlotThreads(),
+                redisProperties.isVirtualThreads()
+        );
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(InventoryKeys.class)
+    public InventoryKeys inventoryKeys(RedisProperties redisProperties) {
+        return new InventoryKeys(
+                redisProperties.getInventoryStockPrefix(),
+                redisProperties.getInventoryLockedPrefix(),
+                redisProperties.isInventoryHashTag()
+        );
     }
 
     @Bean
@@ -52,9 +180,13 @@ public class RedisAutoConfiguration {
     public RedisUtil redisUtil(
             RedisTemplate<String,Object> redisTemplate,
             ObjectMapper objectMapper,
-            RedisProperties redisProperties
+            RedisProperties redisProperties,
+            ValueCodec valueCodec,
+            @Autowired(required = false) LeaseManager leaseManager,
+            SlotRouter slotRouter
     ) {
         log.info("=== 创建 RedisUtil Bean ===");
+        LuaScripts.load(redisTemplate);
         return new RedisUtil(
                 redisTemplate,
                 objectMapper,
@@ -62,7 +194,93 @@ public class RedisAutoConfiguration {
                 redisProperties.getMaxExpires(),
                 redisProperties.getMinExpires(),
                 redisProperties.getNilValue(),
-                redisProperties.isWatchdog()
+                redisProperties.isWatchdog() && leaseManager != null,
+                leaseManager,
+                valueCodec,
+                redisProperties.isSlotRouting() ? slotRouter : null,
+                redisProperties.getInventoryReserveTimeout()
+        );
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(ShardedInventory.class)
+    @ConditionalOnProperty(prefix = "wyk.redis.cache",name = "shardedInventory",havingValue = "true")
+    public ShardedInventory shardedInventory(RedisTemplate<String,Object> redisTemplate,
+                                             RedisUtil redisUtil,
+                                             RedisProperties redisProperties) {
+        log.info("=== 创建 ShardedInventory Bean ===");
+        return new ShardedInventory(redisTemplate, redisUtil, redisProperties.getInventoryShards());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(InventoryQuota.class)
+    @ConditionalOnProperty(prefix = "wyk.redis.cache",name = "inventoryQuota",havingValue = "true")
+    public InventoryQuota inventoryQuota(RedisTemplate<String,Object> redisTemplate,
+                                         RedisUtil redisUtil,
+                                         RedisProperties redisProperties,
+                                         @Qualifier("wykRedisMessageListenerContainer") RedisMessageListenerContainer container) {
+        log.info("=== 创建 InventoryQuota Bean ===");
+        InventoryQuota inventoryQuota = new InventoryQuota(
+                redisTemplate,
+                redisUtil,
+                redisProperties.getQuotaBlock(),
+                redisProperties.getQuotaLeaseTime(),
+                redisProperties.getQuotaFlushInterval(),
+                redisProperties.getQuotaChannel()
+        );
+        container.addMessageListener(inventoryQuota, new ChannelTopic(redisProperties.getQuotaChannel()));
+        return inventoryQuota;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(InventoryBatcher.class)
+    @ConditionalOnProperty(prefix = "wyk.redis.cache",name = "inventoryBatch",havingValue = "true")
+    public InventoryBatcher inventoryBatcher(RedisTemplate<String,Object> redisTemplate,
+                                             RedisUtil redisUtil,
+                                             SlotRouter slotRouter,
+                                             RedisProperties redisProperties) {
+        log.info("=== 创建 InventoryBatcher Bean ===");
+        return new InventoryBatcher(
+                redisTemplate,
+                redisUtil,
+                slotRouter,
+                redisProperties.getInventoryBatchSize(),
+                redisProperties.getInventoryBatchWindow()
+        );
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(ReactiveRedisUtil.class)
+    @ConditionalOnClass(name = "reactor.core.publisher.Mono")
+    @ConditionalOnBean(ReactiveRedisConnectionFactory.class)
+    public ReactiveRedisUtil reactiveRedisUtil(ReactiveRedisConnectionFactory factory,
+                                               ValueCodec valueCodec,
+                                               RedisProperties redisProperties) {
+        log.info("=== 创建 ReactiveRedisUtil Bean ===");
+        RedisSerializationContext<String, byte[]> context = RedisSerializationContext
+                .<String, byte[]>newSerializationContext(RedisSerializer.string())
+                .value(RedisSerializer.byteArray())
+                .build();
+        return new ReactiveRedisUtil(
+                new ReactiveRedisTemplate<>(factory, context),
+                valueCodec,
+                redisProperties.getNilValue(),
+                redisProperties.getNilTime(),
+                redisProperties.getMaxExpires(),
+                redisProperties.getMinExpires()
+        );
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(ReactiveCacheSupport.class)
+    @ConditionalOnBean(ReactiveRedisUtil.class)
+    public ReactiveCacheSupport reactiveCacheSupport(ReactiveRedisUtil reactiveRedisUtil,
+                                                     RedisProperties redisProperties) {
+        log.info("=== 创建 ReactiveCacheSupport Bean ===");
+        return new ReactiveCacheSupport(
+                reactiveRedisUtil,
+                redisProperties.isNil(),
+                redisProperties.getDistributedLockTimeOut()
         );
     }
 
@@ -91,12 +309,18 @@ public class RedisAutoConfiguration {
     public RedisAop redisAop(RedisProperties redisProperties,
                              RedisUtil redisUtil,
                              Map<String,CacheMissHandler> cacheMissHandlerMap,
-                             @Autowired(required = false) BloomFilter bloomFilter) {
+                             @Autowired(required = false) BloomFilter bloomFilter,
+                             @Autowired(required = false) NearCache nearCache,
+                             @Autowired(required = false) ReactiveCacheSupport reactiveCacheSupport,
+                             @Autowired(required = false) CacheMetrics cacheMetrics) {
         log.info("=== 创建 RedisAop Bean ===");
         return new RedisAop(
                 redisUtil,
                 cacheMissHandlerMap,
                 bloomFilter,
+                nearCache,
+                reactiveCacheSupport,
+                cacheMetrics,
                 redisProperties.isCluster(),
                 redisProperties.isBloom(),
                 redisProperties.isNil(),
@@ -3,20 +3,44 @@ package com.wyk.redis;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.wyk.redis.codec.*;
+import com.wyk.redis.endpoint.CacheEndpoint;
+import com.wyk.redis.metrics.CacheMeterBinder;
+import com.wyk.redis.metrics.CacheMetrics;
+import com.wyk.redis.metrics.MeteredValueCodec;
+import com.wyk.redis.metrics.MicrometerCacheMetrics;
+import com.wyk.redis.util.BloomFilter;
+import com.wyk.redis.util.BloomFilterPreloadRunner;
+import com.wyk.redis.util.CacheRefresher;
+import com.wyk.redis.util.HotKeyCache;
+import com.wyk.redis.util.HotKeyDetector;
+import com.wyk.redis.util.LeaseManager;
+import com.wyk.redis.util.NearCache;
+import com.wyk.redis.util.RedisUtil;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 
 @AutoConfiguration
+@EnableConfigurationProperties(value = RedisProperties.class)
 //@ConditionalOnProperty(prefix = "wyk.redis.cache",name = "enable",havingValue = "true")
 @ConditionalOnExpression("${wyk.redis.cache.enable:false} == true or ${wyk.redis.cache.test:false} == true")
 @AutoConfigureBefore(RedisAutoConfiguration.class)
@@ -56,5 +80,82 @@ public class RedisCoreConfiguration {
         return template;
     }
 
+    @Bean
+    @ConditionalOnMissingBean(ValueCodec.class)
+    @SuppressWarnings("unchecked")
+    public ValueCodec valueCodec(RedisTemplate<String,Object> redisTemplate,
+                                 ObjectMapper objectMapper,
+                                 RedisProperties redisProperties,
+                                 @Autowired(required = false) CacheMetrics cacheMetrics) {
+        log.info("=== 创建 ValueCodec Bean: {} ===", redisProperties.getCodec());
+        ValueCodec codec = switch (redisProperties.getCodec().toLowerCase()) {
+            case "json" -> new JacksonValueCodec(objectMapper);
+            case "smile" -> new SmileValueCodec(objectMapper);
+            default -> new SerializerValueCodec((RedisSerializer<Object>) redisTemplate.getValueSerializer(), objectMapper);
+        };
+        codec = switch (redisProperties.getCompression().toLowerCase()) {
+            case "lz4" -> new CompressingValueCodec(codec, new Lz4Compressor(), redisProperties.getCompressionThreshold());
+            case "deflate" -> new CompressingValueCodec(codec, new DeflateCompressor(), redisProperties.getCompressionThreshold());
+            default -> codec;
+        };
+        return cacheMetrics != null && cacheMetrics.isEnabled() ? new MeteredValueCodec(codec, cacheMetrics) : codec;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(name = "wykRedisMessageListenerContainer")
+    public RedisMessageListenerContainer wykRedisMessageListenerContainer(RedisConnectionFactory factory) {
+        log.info("=== 创建 RedisMessageListenerContainer Bean ===");
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        return container;
+    }
+
+    //引入micrometer时启用指标,MeterRegistry由Actuator提供
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    @ConditionalOnProperty(prefix = "wyk.redis.cache", name = "metrics", havingValue = "true", matchIfMissing = true)
+    static class MetricsConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(CacheMetrics.class)
+        public CacheMetrics cacheMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+            MeterRegistry registry = meterRegistry.getIfAvailable();
+            log.info("=== 创建 CacheMetrics Bean: {} ===", registry == null ? "noop" : "micrometer");
+            return registry == null ? CacheMetrics.NOOP : new MicrometerCacheMetrics(registry);
+        }
+
+        @Bean
+        @ConditionalOnMissingBean(CacheMeterBinder.class)
+        public CacheMeterBinder cacheMeterBinder(ObjectProvider<BloomFilter> bloomFilter,
+                                                 ObjectProvider<HotKeyDetector> hotKeyDetector,
+                                                 ObjectProvider<HotKeyCache> hotKeyCache,
+                                                 ObjectProvider<NearCache> nearCache,
+                                                 ObjectProvider<CacheRefresher> cacheRefresher,
+                                                 ObjectProvider<LeaseManager> leaseManager) {
+            log.info("=== 创建 CacheMeterBinder Bean ===");
+            return new CacheMeterBinder(bloomFilter, hotKeyDetector, hotKeyCache, nearCache, cacheRefresher, leaseManager);
+        }
+    }
+
+    //引入Actuator时注册运维端点,暴露方式由management.endpoints配置决定
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "org.springframework.boot.actuate.endpoint.annotation.Endpoint")
+    @ConditionalOnProperty(prefix = "wyk.redis.cache", name = "endpoint", havingValue = "true", matchIfMissing = true)
+    static class EndpointConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(CacheEndpoint.class)
+        public CacheEndpoint cacheEndpoint(ObjectProvider<RedisUtil> redisUtil,
+                                           ObjectProvider<HotKeyDetector> hotKeyDetector,
+                                           ObjectProvider<HotKeyCache> hotKeyCache,
+                                           ObjectProvider<NearCache> nearCache,
+                                           ObjectProvider<BloomFilter> bloomFilter,
+                                           ObjectProvider<BloomFilterPreloadRunner> preloadRunner,
+                                           ObjectProvider<CacheMetrics> metrics) {
+            log.info("=== 创建 CacheEndpoint Bean ===");
+            return new CacheEndpoint(redisUtil, hotKeyDetector, hotKeyCache, nearCache, bloomFilter, preloadRunner, metrics);
+        }
+    }
+
 
 }
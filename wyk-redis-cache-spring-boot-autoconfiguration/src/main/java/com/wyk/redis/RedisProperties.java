@@ -23,6 +23,56 @@ public class RedisProperties {
     private Long interval = 3600L; //热点过期时间间隔
     private Long threshold = 200L; //热点升级条件
     private boolean hotspotEnable = true; //热点检测开启
+    private Integer hotspotSketchWidth = 65536; //热点频率统计sketch宽度,向上取整为2的幂
+    private Integer hotspotTopK = 100; //热点候选key数量上限
+    private boolean hotspotLocal = true; //热点key本节点副本开关
+    private Long hotspotLocalExpires = 5L; //热点本节点副本过期时间,单位s
+    private String hotspotChannel = "wyk:cache:hot"; //热点副本失效广播频道
+    private Integer hotspotReplicas = 0; //热点key的redis副本数,0表示不复制
+    private boolean hotspotCluster = false; //集群热点聚合开关,开启后由各节点汇总频率统一判定热点
+    private String hotspotClusterKey = "wyk:hotspot"; //集群热点窗口有序集合key前缀
+    private Long hotspotClusterWindow = 10L; //集群热点上报窗口,单位s
+    private Long hotspotClusterThreshold = 1000L; //单个窗口内集群总访问次数达到该值判定为热点
+    private boolean nearCache = false; //本地一级缓存开关
+    private Long nearCacheMaxSize = 10000L; //本地缓存最大条数
+    private Long nearCacheExpires = 5L; //本地缓存过期时间,单位s
+    private String nearCacheChannel = "wyk:cache:invalidate"; //本地缓存失效广播频道
+    private boolean localCacheImmutable = false; //本地缓存与热点副本直接保存对象引用,需保证缓存值不可变
+    private String singleFlightChannel = "wyk:cache:loaded"; //合并请求锁加载完成广播频道
+    private Integer refreshThreads = 4; //提前刷新线程数
+    private Integer refreshQueueSize = 1000; //提前刷新队列长度
+    private Long leaseTick = 500L; //看门狗续期调度间隔,单位ms
+    private Integer leaseBatchSize = 200; //看门狗单次lua续期的最大锁数量
+    private String bloomType = "scalable"; //布隆过滤器类型: scalable可扩容, counting计数可删除
+    private Double bloomFpp = 0.01; //布隆过滤器目标误判率
+    private boolean bloomPersist = false; //布隆过滤器redis共享与持久化开关
+    private String bloomRedisKey = "wyk:bloom"; //布隆过滤器在redis中的key前缀
+    private Long bloomSyncInterval = 30L; //布隆过滤器同步间隔,单位s
+    private Integer bloomPreloadBatchSize = 1000; //布隆过滤器预加载每批数量
+    private Integer bloomPreloadThreads = 0; //布隆过滤器预加载线程数,0表示cpu核数
+    private String codec = "default"; //缓存值编码: default沿用RedisTemplate序列化, json, smile
+    private String compression = "none"; //缓存值压缩: none, lz4, deflate
+    private Integer compressionThreshold = 1024; //超过该字节数才压缩
+    private boolean virtualThreads = false; //后台任务使用虚拟线程,需Java 21及以上
+    private boolean metrics = true; //引入micrometer时记录缓存指标
+    private boolean endpoint = true; //引入Actuator时注册wykcache运维端点
+    private Integer lockStripes = 0; //分段锁段数,0表示cpu核数*16,向上取整为2的幂
+    private boolean shardedInventory = false; //分片库存开关
+    private Integer inventoryShards = 8; //每个商品的库存分片数
+    private boolean inventoryQuota = false; //本地库存额度开关
+    private Long quotaBlock = 50L; //每次租借的库存额度
+    private Long quotaLeaseTime = 10L; //额度租约时间,到期归还未使用部分,单位s
+    private Long quotaFlushInterval = 200L; //本地已扣减数量批量转入锁定库存、检查并归还到期额度的间隔,单位ms
+    private String quotaChannel = "wyk:inventory:soldout"; //售罄与补货广播频道
+    private boolean inventoryBatch = false; //库存批量扣减开关
+    private Integer inventoryBatchSize = 100; //单次lua调用合并的最大请求数
+    private Long inventoryBatchWindow = 1L; //请求合并等待时间,单位ms
+    private boolean slotRouting = true; //集群模式下多key操作按slot分组并行执行
+    private Integer slotThreads = 0; //slot分组并行线程数,0表示cpu核数
+    private Long inventoryReserveTimeout = 30L; //跨slot库存预留过期时间,单位s
+    private String inventoryStockPrefix = "stock:"; //InventoryKeys库存key前缀
+    private String inventoryLockedPrefix = "locked:"; //InventoryKeys锁定库存key前缀
+    private boolean inventoryHashTag = true; //InventoryKeys商品id使用hash tag
 
     public RedisProperties() {
     }
@@ -170,4 +220,404 @@ public class RedisProperties {
     public void setHotspotEnable(boolean hotspotEnable) {
         this.hotspotEnable = hotspotEnable;
     }
+
+    public boolean isNearCache() {
+        return nearCache;
+    }
+
+    public void setNearCache(boolean nearCache) {
+        this.nearCache = nearCache;
+    }
+
+    public Long getNearCacheMaxSize() {
+        return nearCacheMaxSize;
+    }
+
+    public void setNearCacheMaxSize(Long nearCacheMaxSize) {
+        this.nearCacheMaxSize = nearCacheMaxSize;
+    }
+
+    public Long getNearCacheExpires() {
+        return nearCacheExpires;
+    }
+
+    public void setNearCacheExpires(Long nearCacheExpires) {
+        this.nearCacheExpires = nearCacheExpires;
+    }
+
+    public String getNearCacheChannel() {
+        return nearCacheChannel;
+    }
+
+    public void setNearCacheChannel(String nearCacheChannel) {
+        this.nearCacheChannel = nearCacheChannel;
+    }
+
+    public boolean isLocalCacheImmutable() {
+        return localCacheImmutable;
+    }
+
+    public void setLocalCacheImmutable(boolean localCacheImmutable) {
+        this.localCacheImmutable = localCacheImmutable;
+    }
+
+    public String getSingleFlightChannel() {
+        return singleFlightChannel;
+    }
+
+    public void setSingleFlightChannel(String singleFlightChannel) {
+        this.singleFlightChannel = singleFlightChannel;
+    }
+
+    public Integer getRefreshThreads() {
+        return refreshThreads;
+    }
+
+    public void setRefreshThreads(Integer refreshThreads) {
+        this.refreshThreads = refreshThreads;
+    }
+
+    public Integer getRefreshQueueSize() {
+        return refreshQueueSize;
+    }
+
+    public void setRefreshQueueSize(Integer refreshQueueSize) {
+        this.refreshQueueSize = refreshQueueSize;
+    }
+
+    public Long getLeaseTick() {
+        return leaseTick;
+    }
+
+    public void setLeaseTick(Long leaseTick) {
+        this.leaseTick = leaseTick;
+    }
+
+    public Integer getLeaseBatchSize() {
+        return leaseBatchSize;
+    }
+
+    public void setLeaseBatchSize(Integer leaseBatchSize) {
+        this.leaseBatchSize = leaseBatchSize;
+    }
+
+    public Double getBloomFpp() {
+        return bloomFpp;
+    }
+
+    public void setBloomFpp(Double bloomFpp) {
+        this.bloomFpp = bloomFpp;
+    }
+
+    public boolean isBloomPersist() {
+        return bloomPersist;
+    }
+
+    public void setBloomPersist(boolean bloomPersist) {
+        this.bloomPersist = bloomPersist;
+    }
+
+    public String getBloomRedisKey() {
+        return bloomRedisKey;
+    }
+
+    public void setBloomRedisKey(String bloomRedisKey) {
+        this.bloomRedisKey = bloomRedisKey;
+    }
+
+    public Long getBloomSyncInterval() {
+        return bloomSyncInterval;
+    }
+
+    public void setBloomSyncInterval(Long bloomSyncInterval) {
+        this.bloomSyncInterval = bloomSyncInterval;
+    }
+
+    public String getBloomType() {
+        return bloomType;
+    }
+
+    public void setBloomType(String bloomType) {
+        this.bloomType = bloomType;
+    }
+
+    public Integer getBloomPreloadBatchSize() {
+        return bloomPreloadBatchSize;
+    }
+
+    public void setBloomPreloadBatchSize(Integer bloomPreloadBatchSize) {
+        this.bloomPreloadBatchSize = bloomPreloadBatchSize;
+    }
+
+    public Integer getBloomPreloadThreads() {
+        return bloomPreloadThreads;
+    }
+
+    public void setBloomPreloadThreads(Integer bloomPreloadThreads) {
+        this.bloomPreloadThreads = bloomPreloadThreads;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    public String getCompression() {
+        return compression;
+    }
+
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+
+    public Integer getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(Integer compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public Integer getLockStripes() {
+        return lockStripes;
+    }
+
+    public void setLockStripes(Integer lockStripes) {
+        this.lockStripes = lockStripes;
+    }
+
+    public Integer getHotspotSketchWidth() {
+        return hotspotSketchWidth;
+    }
+
+    public void setHotspotSketchWidth(Integer hotspotSketchWidth) {
+        this.hotspotSketchWidth = hotspotSketchWidth;
+    }
+
+    public Integer getHotspotTopK() {
+        return hotspotTopK;
+    }
+
+    public void setHotspotTopK(Integer hotspotTopK) {
+        this.hotspotTopK = hotspotTopK;
+    }
+
+    public boolean isHotspotLocal() {
+        return hotspotLocal;
+    }
+
+    public void setHotspotLocal(boolean hotspotLocal) {
+        this.hotspotLocal = hotspotLocal;
+    }
+
+    public Long getHotspotLocalExpires() {
+        return hotspotLocalExpires;
+    }
+
+    public void setHotspotLocalExpires(Long hotspotLocalExpires) {
+        this.hotspotLocalExpires = hotspotLocalExpires;
+    }
+
+    public String getHotspotChannel() {
+        return hotspotChannel;
+    }
+
+    public void setHotspotChannel(String hotspotChannel) {
+        this.hotspotChannel = hotspotChannel;
+    }
+
+    public Integer getHotspotReplicas() {
+        return hotspotReplicas;
+    }
+
+    public void setHotspotReplicas(Integer hotspotReplicas) {
+        this.hotspotReplicas = hotspotReplicas;
+    }
+
+    public boolean isHotspotCluster() {
+        return hotspotCluster;
+    }
+
+    public void setHotspotCluster(boolean hotspotCluster) {
+        this.hotspotCluster = hotspotCluster;
+    }
+
+    public String getHotspotClusterKey() {
+        return hotspotClusterKey;
+    }
+
+    public void setHotspotClusterKey(String hotspotClusterKey) {
+        this.hotspotClusterKey = hotspotClusterKey;
+    }
+
+    public Long getHotspotClusterWindow() {
+        return hotspotClusterWindow;
+    }
+
+    public void setHotspotClusterWindow(Long hotspotClusterWindow) {
+        this.hotspotClusterWindow = hotspotClusterWindow;
+    }
+
+    public Long getHotspotClusterThreshold() {
+        return hotspotClusterThreshold;
+    }
+
+    public void setHotspotClusterThreshold(Long hotspotClusterThreshold) {
+        this.hotspotClusterThreshold = hotspotClusterThreshold;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(boolean metrics) {
+        this.metrics = metrics;
+    }
+
+    public boolean isEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(boolean endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public boolean isShardedInventory() {
+        return shardedInventory;
+    }
+
+    public void setShardedInventory(boolean shardedInventory) {
+        this.shardedInventory = shardedInventory;
+    }
+
+    public Integer getInventoryShards() {
+        return inventoryShards;
+    }
+
+    public void setInventoryShards(Integer inventoryShards) {
+        this.inventoryShards = inventoryShards;
+    }
+
+    public boolean isInventoryQuota() {
+        return inventoryQuota;
+    }
+
+    public void setInventoryQuota(boolean inventoryQuota) {
+        this.inventoryQuota = inventoryQuota;
+    }
+
+    public Long getQuotaBlock() {
+        return quotaBlock;
+    }
+
+    public void setQuotaBlock(Long quotaBlock) {
+        this.quotaBlock = quotaBlock;
+    }
+
+    public Long getQuotaLeaseTime() {
+        return quotaLeaseTime;
+    }
+
+    public void setQuotaLeaseTime(Long quotaLeaseTime) {
+        this.quotaLeaseTime = quotaLeaseTime;
+    }
+
+    public Long getQuotaFlushInterval() {
+        return quotaFlushInterval;
+    }
+
+    public void setQuotaFlushInterval(Long quotaFlushInterval) {
+        this.quotaFlushInterval = quotaFlushInterval;
+    }
+
+    public String getQuotaChannel() {
+        return quotaChannel;
+    }
+
+    public void setQuotaChannel(String quotaChannel) {
+        this.quotaChannel = quotaChannel;
+    }
+
+    public boolean isInventoryBatch() {
+        return inventoryBatch;
+    }
+
+    public void setInventoryBatch(boolean inventoryBatch) {
+        this.inventoryBatch = inventoryBatch;
+    }
+
+    public Integer getInventoryBatchSize() {
+        return inventoryBatchSize;
+    }
+
+    public void setInventoryBatchSize(Integer inventoryBatchSize) {
+        this.inventoryBatchSize = inventoryBatchSize;
+    }
+
+    public Long getInventoryBatchWindow() {
+        return inventoryBatchWindow;
+    }
+
+    public void setInventoryBatchWindow(Long inventoryBatchWindow) {
+        this.inventoryBatchWindow = inventoryBatchWindow;
+    }
+
+    public boolean isSlotRouting() {
+        return slotRouting;
+    }
+
+    public void setSlotRouting(boolean slotRouting) {
+        this.slotRouting = slotRouting;
+    }
+
+    public Integer getSlotThreads() {
+        return slotThreads;
+    }
+
+    public void setSlotThreads(Integer slotThreads) {
+        this.slotThreads = slotThreads;
+    }
+
+    public Long getInventoryReserveTimeout() {
+        return inventoryReserveTimeout;
+    }
+
+    public void setInventoryReserveTimeout(Long inventoryReserveTimeout) {
+        this.inventoryReserveTimeout = inventoryReserveTimeout;
+    }
+
+    public String getInventoryStockPrefix() {
+        return inventoryStockPrefix;
+    }
+
+    public void setInventoryStockPrefix(String inventoryStockPrefix) {
+        this.inventoryStockPrefix = inventoryStockPrefix;
+    }
+
+    public String getInventoryLockedPrefix() {
+        return inventoryLockedPrefix;
+    }
+
+    public void setInventoryLockedPrefix(String inventoryLockedPrefix) {
+        this.inventoryLockedPrefix = inventoryLockedPrefix;
+    }
+
+    public boolean isInventoryHashTag() {
+        return inventoryHashTag;
+    }
+
+    public void setInventoryHashTag(boolean inventoryHashTag) {
+        this.inventoryHashTag = inventoryHashTag;
+    }
 }
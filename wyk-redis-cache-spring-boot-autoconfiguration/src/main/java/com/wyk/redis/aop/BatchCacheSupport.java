@@ -0,0 +1,123 @@
+package com.wyk.redis.aop;
+
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.wyk.redis.util.RedisUtil;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/*
+  批量缓存模式: 集合参数拆分为单元素key,MGET一次取回,
+  仅对未命中的id调用原方法,未命中结果通过管道批量写回
+ */
+public class BatchCacheSupport {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchCacheSupport.class);
+
+    private final RedisUtil redisUtil;
+    private final boolean nil;
+    private final String nilValue;
+
+    public BatchCacheSupport(RedisUtil redisUtil, boolean nil, String nilValue) {
+        this.redisUtil = redisUtil;
+        this.nil = nil;
+        this.nilValue = nilValue;
+    }
+
+    //批量查询,keyFunction将单个id转换为缓存key,bloom为null表示不校验布隆
+    public Object query(ProceedingJoinPoint joinPoint,
+                        CacheMetadata metadata,
+                        Function<Object, String> keyFunction,
+                        Predicate<Object> bloom) throws Throwable {
+        Object[] args = joinPoint.getArgs();
+        if (!(args[metadata.getBatchIndex()] instanceof Collection<?> collection) || collection.isEmpty()) {
+            return joinPoint.proceed();
+        }
+        //去重并保持入参顺序
+        Map<String, Object> idMap = new LinkedHashMap<>();
+        for (Object id : collection) {
+            if (id == null) continue;
+            if (bloom != null && !bloom.test(id)) {
+                log.debug("布隆过滤器未查询到id,跳过: {}", id);
+                continue;
+            }
+            idMap.putIfAbsent(keyFunction.apply(id), id);
+        }
+        List<String> keys = new ArrayList<>(idMap.keySet());
+        JavaType elementType = metadata.getJavaType().getContentType();
+        List<Object> cached = keys.isEmpty() ? List.of() : redisUtil.multiGet(keys, elementType);
+
+        Map<String, Object> found = new HashMap<>();
+        List<Object> missing = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            Object value = cached.get(i);
+            if (value == null) missing.add(idMap.get(keys.get(i)));
+            else if (!nilValue.equals(value)) found.put(keys.get(i), value);
+        }
+        log.debug("批量缓存命中: {},未命中: {}", found.size(), missing.size());
+
+        if (!missing.isEmpty()) {
+            Object[] newArgs = args.clone();
+            newArgs[metadata.getBatchIndex()] = copyOf(collection, missing);
+            Object loaded = joinPoint.proceed(newArgs);
+            Map<String, Object> writes = new HashMap<>();
+            if (loaded instanceof Collection<?> loadedCollection) {
+                for (Object element : loadedCollection) {
+                    if (element == null) continue;
+                    Object id = metadata.getBatchExpression().getValue(new StandardEvaluationContext(element));
+                    if (id == null) continue;
+                    String key = keyFunction.apply(id);
+                    found.put(key, element);
+                    writes.put(key, element);
+                }
+            }
+            List<String> nilKeys = new ArrayList<>();
+            if (nil) {
+                for (Object id : missing) {
+                    String key = keyFunction.apply(id);
+                    if (!writes.containsKey(key)) nilKeys.add(key);
+                }
+            }
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        redisUtil.multiSetRandomExpires(writes, nilKeys);
+                    }
+                });
+            } else redisUtil.multiSetRandomExpires(writes, nilKeys);
+        }
+
+        Collection<Object> result = Set.class.isAssignableFrom(metadata.getJavaType().getRawClass())
+                ? new LinkedHashSet<>() : new ArrayList<>();
+        for (String key : keys) {
+            Object value = found.get(key);
+            if (value != null) result.add(value);
+        }
+        return result;
+    }
+
+    //批量删除集合参数对应的每个key,返回被删除的key
+    public List<String> evict(Object[] args, CacheMetadata metadata, Function<Object, String> keyFunction) {
+        if (!(args[metadata.getBatchIndex()] instanceof Collection<?> collection)) return List.of();
+        List<String> keys = collection.stream()
+                .filter(Objects::nonNull)
+                .map(keyFunction)
+                .toList();
+        redisUtil.remove(keys);
+        return keys;
+    }
+
+    //按原集合类型构造未命中id集合
+    private Collection<Object> copyOf(Collection<?> source, List<Object> ids) {
+        return source instanceof Set<?> ? new LinkedHashSet<>(ids) : new ArrayList<>(ids);
+    }
+}
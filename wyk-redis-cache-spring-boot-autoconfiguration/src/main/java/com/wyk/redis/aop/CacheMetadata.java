@@ -0,0 +1,300 @@
+package com.wyk.redis.aop;
+
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.wyk.redis.cache.CacheLock;
+import com.wyk.redis.cache.CacheMissHandler;
+import com.wyk.redis.exception.CustomizeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.SpelMessage;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/*
+  方法级缓存元数据,每个被注解的方法只构建一次,
+  预编译SpEL表达式、参数名、返回值JavaType、降级策略与锁策略
+ */
+public class CacheMetadata {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheMetadata.class);
+    private static final SpelExpressionParser compiledParser = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.IMMEDIATE, CacheMetadata.class.getClassLoader()));
+    private static final SpelExpressionParser parser = new SpelExpressionParser();
+
+    private final Method method;
+    private final String value; //key前缀
+    private final String prefixDigest; //key前缀md5
+    private final String defaultVal;
+    private final RedisModel redisModel;
+    private final String[] parameterNames;
+    private final String[] defaultArgs; //参数为null时的占位值
+    private final JavaType javaType;
+    private final CachedExpression keyExpression;
+    private final CachedExpression bloomExpression;
+    private final CacheMissHandler handler;
+    private final CacheLock cacheLock;
+    private final boolean nearCache; //是否启用本地一级缓存
+    private final CachedExpression batchExpression; //批量模式元素id表达式
+    private final int batchIndex; //批量模式集合参数下标
+    private final long refreshAhead; //提前刷新窗口,单位s
+    private final ReturnKind returnKind; //返回值类型: 同步、Mono、Flux、CompletableFuture
+    private final String methodName; //指标标签: 类名.方法名
+
+    private CacheMetadata(Method method,
+                          String[] parameterNames,
+                          String value,
+                          String key,
+                          String defaultVal,
+                          String bloomKey,
+                          RedisModel redisModel,
+                          boolean nearCache,
+                          String batchKey,
+                          long refreshAhead,
+                          CacheMissHandler handler,
+                          CacheLock cacheLock) {
+        this.method = method;
+        this.value = value;
+        this.prefixDigest = DigestUtils.md5DigestAsHex(value.getBytes(StandardCharsets.UTF_8));
+        this.defaultVal = defaultVal;
+        this.redisModel = redisModel;
+        this.parameterNames = parameterNames == null ? new String[0] : parameterNames;
+        this.defaultArgs = new String[this.parameterNames.length];
+        for (int i = 0; i < this.parameterNames.length; i++) {
+            this.defaultArgs[i] = String.format("%s:%s", this.parameterNames[i], defaultVal);
+        }
+        this.returnKind = ReturnKind.of(method.getReturnType());
+        this.javaType = resolveJavaType(method, returnKind);
+        this.keyExpression = CachedExpression.of(key);
+        this.bloomExpression = CachedExpression.of(bloomKey);
+        this.handler = handler;
+        this.cacheLock = cacheLock;
+        this.nearCache = nearCache;
+        this.batchExpression = CachedExpression.of(batchKey);
+        if (batchExpression != null && returnKind != ReturnKind.SYNC) {
+            throw CustomizeException.internalServerError("批量模式不支持异步返回值: " + method);
+        }
+        this.batchIndex = batchExpression == null ? -1 : resolveBatchIndex(key);
+        this.refreshAhead = refreshAhead;
+        this.methodName = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+    }
+
+    //缓存值类型: Mono/CompletableFuture取泛型参数,Flux按List缓存
+    private static JavaType resolveJavaType(Method method, ReturnKind returnKind) {
+        TypeFactory typeFactory = TypeFactory.defaultInstance();
+        JavaType returnType = typeFactory.constructType(method.getGenericReturnType());
+        return switch (returnKind) {
+            case SYNC -> returnType;
+            case MONO, FUTURE -> returnType.containedTypeOrUnknown(0);
+            case FLUX -> typeFactory.constructCollectionType(List.class, returnType.containedTypeOrUnknown(0));
+        };
+    }
+
+    //批量模式下key必须直接引用集合参数,返回值必须为集合
+    private int resolveBatchIndex(String key) {
+        String name = key.trim();
+        if (name.startsWith("#")) name = name.substring(1);
+        for (int i = 0; i < parameterNames.length; i++) {
+            if (parameterNames[i].equals(name)
+                    && Collection.class.isAssignableFrom(method.getParameterTypes()[i])) {
+                if (!javaType.isCollectionLikeType()) {
+                    throw CustomizeException.internalServerError("批量模式方法返回值必须为集合: " + method);
+                }
+                return i;
+            }
+        }
+        throw CustomizeException.internalServerError("批量模式key必须为集合参数引用,如#ids: " + method);
+    }
+
+    //RedisCache注解元数据
+    public static CacheMetadata of(Method method, String[] parameterNames, RedisCache redisCache,
+                                   CacheMissHandler handler, CacheLock cacheLock) {
+        return new CacheMetadata(method, parameterNames, redisCache.value(), redisCache.key(),
+                redisCache.defaultVal(), redisCache.bloomKey(), redisCache.redisModel(), redisCache.nearCache(),
+                redisCache.batchKey(), redisCache.refreshAhead(), handler, cacheLock);
+    }
+
+    //RedisInterface注解元数据
+    public static CacheMetadata of(Method method, String[] parameterNames, RedisInterface redisInterface,
+                                   CacheMissHandler handler) {
+        return new CacheMetadata(method, parameterNames, redisInterface.value(), redisInterface.key(),
+                redisInterface.defaultVal(), redisInterface.bloomKey(), redisInterface.redisModel(),
+                redisInterface.nearCache(), redisInterface.batchKey(), 0, handler, null);
+    }
+
+    //构建SpEL参数上下文,key与bloomKey共用同一个上下文
+    public EvaluationContext createContext(Object[] args) {
+        StandardEvaluationContext context = new StandardEvaluationContext();
+        for (int i = 0; i < args.length && i < parameterNames.length; i++) {
+            context.setVariable(parameterNames[i], args[i] != null ? args[i] : defaultArgs[i]);
+        }
+        return context;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public String getPrefixDigest() {
+        return prefixDigest;
+    }
+
+    public String getDefaultVal() {
+        return defaultVal;
+    }
+
+    public RedisModel getRedisModel() {
+        return redisModel;
+    }
+
+    public String[] getParameterNames() {
+        return parameterNames;
+    }
+
+    public JavaType getJavaType() {
+        return javaType;
+    }
+
+    public CachedExpression getKeyExpression() {
+        return keyExpression;
+    }
+
+    public CachedExpression getBloomExpression() {
+        return bloomExpression;
+    }
+
+    public CacheMissHandler getHandler() {
+        return handler;
+    }
+
+    public CacheLock getCacheLock() {
+        return cacheLock;
+    }
+
+    public boolean isNearCache() {
+        return nearCache;
+    }
+
+    public boolean isBatch() {
+        return batchExpression != null;
+    }
+
+    public CachedExpression getBatchExpression() {
+        return batchExpression;
+    }
+
+    public int getBatchIndex() {
+        return batchIndex;
+    }
+
+    public long getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    public ReturnKind getReturnKind() {
+        return returnKind;
+    }
+
+    public boolean isAsync() {
+        return returnKind != ReturnKind.SYNC;
+    }
+
+    /*
+      方法返回值类型,按类名识别reactor类型,未引入reactor时不会加载
+     */
+    public enum ReturnKind {
+        SYNC, MONO, FLUX, FUTURE;
+
+        static ReturnKind of(Class<?> returnType) {
+            return switch (returnType.getName()) {
+                case "reactor.core.publisher.Mono" -> MONO;
+                case "reactor.core.publisher.Flux" -> FLUX;
+                default -> CompletionStage.class.isAssignableFrom(returnType) ? FUTURE : SYNC;
+            };
+        }
+    }
+
+    /*
+      预编译SpEL表达式,优先使用IMMEDIATE编译模式,
+      编译失败或编译后的代码因参数类型变化失败时退回解释模式;表达式本身的错误(如空指针、属性不存在)直接抛出,不重复执行
+     */
+    public static class CachedExpression {
+        private final String source;
+        private final Expression interpreted;
+        private volatile Expression compiled;
+
+        private CachedExpression(String source) {
+            this.source = source;
+            this.interpreted = parser.parseExpression(source);
+            this.compiled = compiledParser.parseExpression(source);
+        }
+
+        //空表达式返回null
+        static CachedExpression of(String source) {
+            return StringUtils.hasText(source) ? new CachedExpression(source) : null;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public Object getValue(EvaluationContext context) {
+            Expression expression = compiled;
+            if (expression != null) {
+                try {
+                    return expression.getValue(context);
+                } catch (SpelEvaluationException e) {
+                    if (!compiledFailure(e)) throw e;
+                    compiled = null;
+                    log.debug("SpEL编译执行失败,退回解释模式: {},error: {}", source, e.getMessage());
+                }
+            }
+            return interpreted.getValue(context);
+        }
+
+        public <T> T getValue(EvaluationContext context, Class<T> tClass) {
+            Expression expression = compiled;
+            if (expression != null) {
+                try {
+                    return expression.getValue(context, tClass);
+                } catch (SpelEvaluationException e) {
+                    if (!compiledFailure(e)) throw e;
+                    compiled = null;
+                    log.debug("SpEL编译执行失败,退回解释模式: {},error: {}", source, e.getMessage());
+                }
+            }
+            return interpreted.getValue(context, tClass);
+        }
+
+        //编译失败,或编译后的代码出现类型转换、状态、链接错误(参数类型与编译时不同)
+        private static boolean compiledFailure(SpelEvaluationException e) {
+            if (e.getMessageCode() == SpelMessage.EXCEPTION_COMPILING_EXPRESSION) return true;
+            if (e.getMessageCode() != SpelMessage.EXCEPTION_RUNNING_COMPILED_EXPRESSION) return false;
+            Throwable cause = e.getCause();
+            return cause instanceof ClassCastException || cause instanceof IllegalStateException
+                    || cause instanceof LinkageError;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.wyk.redis.aop;
+
+
+import com.wyk.redis.exception.CustomizeException;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/*
+  方法元数据注册表,首次调用时构建,之后直接命中
+ */
+public class CacheMetadataRegistry {
+
+    private final Map<Method, CacheMetadata> metadataMap = new ConcurrentHashMap<>();
+
+    public CacheMetadata get(ProceedingJoinPoint joinPoint,
+                             BiFunction<Method, String[], CacheMetadata> factory) {
+        MethodSignature signature = Optional.ofNullable(joinPoint)
+                .map(ProceedingJoinPoint::getSignature)
+                .filter(MethodSignature.class::isInstance)
+                .map(MethodSignature.class::cast)
+                .orElseThrow(() -> CustomizeException.badRequest("获取方法签名失败"));
+        Method method = signature.getMethod();
+        //先get避免computeIfAbsent在命中时的锁竞争
+        CacheMetadata metadata = metadataMap.get(method);
+        if (metadata != null) return metadata;
+        try {
+            return metadataMap.computeIfAbsent(method, m -> factory.apply(m, signature.getParameterNames()));
+        } catch (CustomizeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw CustomizeException.internalServerError("构建方法缓存元数据失败", e);
+        }
+    }
+
+    public Map<Method, CacheMetadata> getMetadataMap() {
+        return metadataMap;
+    }
+}
@@ -2,40 +2,38 @@ package com.wyk.redis.aop;
 
 
 import com.fasterxml.jackson.databind.JavaType;
-import com.fasterxml.jackson.databind.type.TypeFactory;
 import com.wyk.redis.exception.CustomizeException;
 import com.wyk.redis.cache.CacheLock;
 import com.wyk.redis.cache.CacheMissHandler;
 import com.wyk.redis.cache.imp.EmptyHandler;
 import com.wyk.redis.cache.imp.ExceptionHandler;
 import com.wyk.redis.cache.imp.RedisLock;
+import com.wyk.redis.metrics.CacheMetrics;
 import com.wyk.redis.util.BloomFilter;
+import com.wyk.redis.util.CacheRefresher;
+import com.wyk.redis.util.HotKeyCache;
+import com.wyk.redis.util.HotKeyDetector;
+import com.wyk.redis.util.NearCache;
 import com.wyk.redis.util.RedisUtil;
+import com.wyk.redis.util.ThreadFactories;
 import jakarta.annotation.PostConstruct;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
-import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.expression.EvaluationContext;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
-import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
-import org.springframework.util.DigestUtils;
-import org.springframework.util.StringUtils;
 
-import java.lang.reflect.Method;
-import java.lang.reflect.Type;
-import java.time.Duration;
-import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 
 
@@ -43,28 +41,40 @@ import java.util.concurrent.TimeUnit;
 public class NewRedisAop {
 
     private static final Logger log = LoggerFactory.getLogger(NewRedisAop.class);
-    private static final SpelExpressionParser parser = new SpelExpressionParser();
     private static final CacheMissHandler exceptionHandler = new ExceptionHandler();
     private final Map<String, CacheLock> lockMap;
     private final Map<String,CacheMissHandler> cacheMissHandlerMap;
-    private final Map<String,KeyInfo> keyInfoMap;
+    private final HotKeyDetector hotKeyDetector;
+    private final HotKeyCache hotKeyCache;
     private final RedisLock redisLock;
     private final BloomFilter bloomFilter;
+    private final NearCache nearCache;
+    private final CacheRefresher cacheRefresher;
+    private final ReactiveCacheSupport reactiveCacheSupport;
+    private final CacheMetrics metrics;
     private final boolean bloom;
     private final boolean nil;
     private final boolean hotspotEnable;
     private final RedisUtil redisUtil;
     private final String nilValue;
     private final String lock;
+    private final CacheMetadataRegistry metadataRegistry = new CacheMetadataRegistry();
+    private final BatchCacheSupport batchCacheSupport;
 
-    private static final ScheduledExecutorService scheduled = Executors.newScheduledThreadPool(1);
+    private static final ScheduledExecutorService scheduled =
+            Executors.newSingleThreadScheduledExecutor(ThreadFactories.create("wyk-hotspot-", false));
 
     //构造
     public NewRedisAop(Map<String, CacheLock> lockMap,
                        Map<String, CacheMissHandler> cacheMissHandlerMap,
-                       Map<String, KeyInfo> keyInfoMap,
+                       HotKeyDetector hotKeyDetector,
+                       HotKeyCache hotKeyCache,
                        RedisLock redisLock,
                        BloomFilter bloomFilter,
+                       NearCache nearCache,
+                       CacheRefresher cacheRefresher,
+                       ReactiveCacheSupport reactiveCacheSupport,
+                       CacheMetrics metrics,
                        boolean bloom,
                        boolean nil,
                        boolean hotspotEnable,
@@ -74,14 +84,20 @@ public class NewRedisAop {
         this.lockMap = lockMap;
         this.nil = nil;
         this.cacheMissHandlerMap = cacheMissHandlerMap;
-        this.keyInfoMap = keyInfoMap;
+        this.hotKeyDetector = hotKeyDetector;
+        this.hotKeyCache = hotKeyCache;
         this.redisLock = redisLock;
         this.bloomFilter = bloomFilter;
+        this.nearCache = nearCache;
+        this.cacheRefresher = cacheRefresher;
+        this.reactiveCacheSupport = reactiveCacheSupport;
+        this.metrics = metrics == null ? CacheMetrics.NOOP : metrics;
         this.bloom = bloom;
         this.redisUtil = redisUtil;
         this.nilValue = nilValue;
         this.lock = lock;
         this.hotspotEnable = hotspotEnable;
+        this.batchCacheSupport = new BatchCacheSupport(redisUtil, nil, nilValue);
     }
 
     //注解驱动
@@ -91,9 +107,10 @@ public class NewRedisAop {
     //轮询热点降级
     @PostConstruct
     public void HotspotDetection() {
-        if (hotspotEnable && keyInfoMap != null) {
-            //轮询map中的每个keyInfo并调用其isHotspot
-            scheduled.scheduleAtFixedRate(() -> keyInfoMap.values().forEach(KeyInfo::isHotspot), 1, 1, TimeUnit.MINUTES);
+        if (hotspotEnable && hotKeyDetector != null) {
+            //按热点时间间隔衰减访问频率并降级
+            long interval = hotKeyDetector.getInterval();
+            scheduled.scheduleAtFixedRate(hotKeyDetector::decay, interval, interval, TimeUnit.SECONDS);
         }
     }
 
@@ -101,123 +118,221 @@ public class NewRedisAop {
     @Around("redisCachePointcut() && @annotation(redisCache)")
     public Object redisAop(ProceedingJoinPoint joinPoint,RedisCache redisCache) throws Throwable {
         log.debug("缓存模式为: {}",redisCache.redisModel());
-        JavaType javaType = getJavaType(joinPoint);
-        Object arg = getArgByContext(joinPoint, redisCache.defaultVal(), redisCache.key());
-        String key = getKey(arg.toString(), redisCache.value());
-        KeyInfo keyInfo = keyInfoMap.compute(key,(k,oldValue) -> oldValue == null ? new KeyInfo(k) : oldValue);
-        boolean hotspot = keyInfo.getHotspot().get();
-        if (!hotspot && bloom && !"".equals(redisCache.bloomKey()) && !RedisModel.INSERT.equals(redisCache.redisModel())) {
-            Object bloomArg = getArgByContext(joinPoint,redisCache.defaultVal(),redisCache.bloomKey());
-            Optional<Object> checkBloomFilter = checkBloomFilter(bloomArg, redisCache, javaType);
-            if (checkBloomFilter.isPresent()) return switch (redisCache.redisModel()) {
-                case QUERY -> EmptyHandler.isNullMarker(checkBloomFilter.get()) ? null : checkBloomFilter.get();
-                case UPDATE, DELETE -> throw CustomizeException.badRequest("数据不存在");
-                default -> throw CustomizeException.badRequest("意外的缓存模式");
-            };
+        CacheMetadata metadata = getMetadata(joinPoint, redisCache);
+        JavaType javaType = metadata.getJavaType();
+        if (metadata.isBatch()) return batch(joinPoint, metadata);
+        EvaluationContext context = metadata.createContext(joinPoint.getArgs());
+        Object arg = getArgByContext(context, metadata.getDefaultVal(), metadata.getKeyExpression());
+        String key = getKey(arg.toString(), metadata.getPrefixDigest());
+        boolean hotspot = hotspotEnable && hotKeyDetector != null && hotKeyDetector.isHot(key);
+        if (metadata.isAsync()) return async(joinPoint, metadata, context, key, hotspot);
+        if (!hotspot && bloom && metadata.getBloomExpression() != null && !RedisModel.INSERT.equals(redisCache.redisModel())) {
+            Object bloomArg = getArgByContext(context,metadata.getDefaultVal(),metadata.getBloomExpression());
+            Optional<Object> checkBloomFilter = checkBloomFilter(bloomArg, metadata, javaType);
+            if (checkBloomFilter.isPresent()) {
+                metrics.request(metadata.getValue(), metadata.getMethodName(), CacheMetrics.BLOOM_REJECT);
+                return switch (redisCache.redisModel()) {
+                    case QUERY -> EmptyHandler.isNullMarker(checkBloomFilter.get()) ? null : checkBloomFilter.get();
+                    case UPDATE, DELETE -> throw CustomizeException.badRequest("数据不存在");
+                    default -> throw CustomizeException.badRequest("意外的缓存模式");
+                };
+            }
         }
         return switch (redisCache.redisModel()) {
-            case QUERY -> query(joinPoint, redisCache,key, javaType);
-            case UPDATE,INSERT,DELETE -> update(joinPoint,key);
+            case QUERY -> query(joinPoint, metadata,key, javaType);
+            case UPDATE,INSERT,DELETE -> update(joinPoint,metadata,context,key);
         };
     }
 
     //update分支
-    private Object update(ProceedingJoinPoint joinPoint, String key) throws Throwable {
+    private Object update(ProceedingJoinPoint joinPoint, CacheMetadata metadata, EvaluationContext context, String key) throws Throwable {
+        Object result = joinPoint.proceed();
+        context.setVariable("result", result);
+        Object bloomArg = getBloomArg(metadata, context);
+        afterCommit(() -> {
+            boolean removed = evict(key);
+            updateBloomFilter(metadata.getRedisModel(), bloomArg, result, removed);
+        });
+        return result;
+    }
+
+    //新增/删除方法的布隆参数
+    private Object getBloomArg(CacheMetadata metadata, EvaluationContext context) {
+        if (!bloom || bloomFilter == null || metadata.getBloomExpression() == null) return null;
+        RedisModel model = metadata.getRedisModel();
+        if (!RedisModel.INSERT.equals(model) && !RedisModel.DELETE.equals(model)) return null;
+        return metadata.getBloomExpression().getValue(context);
+    }
+
+    //INSERT加入布隆,DELETE确实删除了数据时从布隆移除(仅计数布隆支持)
+    private void updateBloomFilter(RedisModel model, Object bloomArg, Object result, boolean cacheRemoved) {
+        if (bloomArg == null) return;
+        Collection<?> values = bloomArg instanceof Collection<?> collect ? collect : List.of(bloomArg);
+        if (RedisModel.DELETE.equals(model) && !BloomFilter.shouldRemove(result, values.size(), cacheRemoved)) {
+            log.debug("未确认删除,不从布隆过滤器移除: {}", values);
+            return;
+        }
+        for (Object value : values) {
+            if (value == null) continue;
+            if (RedisModel.INSERT.equals(model)) bloomFilter.putValue(value);
+            else if (!bloomFilter.removeValue(value)) log.debug("布隆过滤器未移除: {}", value);
+        }
+    }
+
+    //异步分支,Mono/Flux/CompletableFuture返回值交由ReactiveCacheSupport组合,不阻塞调用线程
+    private Object async(ProceedingJoinPoint joinPoint, CacheMetadata metadata, EvaluationContext context, String key, boolean hotspot) {
+        if (reactiveCacheSupport == null) {
+            throw CustomizeException.internalServerError("未启用响应式redis,不支持异步返回值: " + metadata.getMethod());
+        }
+        RedisModel model = metadata.getRedisModel();
+        if (!hotspot && bloom && metadata.getBloomExpression() != null && !RedisModel.INSERT.equals(model)) {
+            Object bloomArg = getArgByContext(context,metadata.getDefaultVal(),metadata.getBloomExpression());
+            Optional<Object> checkBloomFilter;
+            try {
+                checkBloomFilter = checkBloomFilter(bloomArg, metadata, metadata.getJavaType());
+            } catch (RuntimeException e) {
+                return reactiveCacheSupport.just(metadata, () -> { throw e; });
+            }
+            if (checkBloomFilter.isPresent()) return reactiveCacheSupport.just(metadata, () -> {
+                if (RedisModel.QUERY.equals(model)) return checkBloomFilter.get();
+                throw CustomizeException.badRequest("数据不存在");
+            });
+        }
+        if (RedisModel.QUERY.equals(model)) return reactiveCacheSupport.query(joinPoint, metadata, key);
+        return reactiveCacheSupport.update(joinPoint, metadata, key, result -> {
+            invalidateCopies(key);
+            context.setVariable("result", result);
+            updateBloomFilter(model, getBloomArg(metadata, context), result, false);
+        });
+    }
+
+    //批量分支,集合参数中每个元素对应一个key,配置bloomKey时逐个id校验布隆
+    private Object batch(ProceedingJoinPoint joinPoint, CacheMetadata metadata) throws Throwable {
+        Function<Object, String> keyFunction = id -> getKey(id.toString(), metadata.getPrefixDigest());
+        if (RedisModel.QUERY.equals(metadata.getRedisModel())) {
+            Predicate<Object> bloomPredicate = bloom && bloomFilter != null && metadata.getBloomExpression() != null
+                    ? bloomFilter::mightContainValue : null;
+            return batchCacheSupport.query(joinPoint, metadata, keyFunction, bloomPredicate);
+        }
+        Object[] args = joinPoint.getArgs();
         Object result = joinPoint.proceed();
+        EvaluationContext context = metadata.createContext(args);
+        context.setVariable("result", result);
+        Object bloomArg = getBloomArg(metadata, context);
+        afterCommit(() -> {
+            batchCacheSupport.evict(args, metadata, keyFunction)
+                    .forEach(this::invalidateCopies);
+            updateBloomFilter(metadata.getRedisModel(), bloomArg, result, false);
+        });
+        return result;
+    }
+
+    //存在事务时提交后执行,否则立即执行
+    private void afterCommit(Runnable task) {
         if (TransactionSynchronizationManager.isSynchronizationActive()) {
             TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
                 @Override
                 public void afterCommit() {
-                    redisUtil.remove(key);
+                    task.run();
                 }
             });
-        } else redisUtil.remove(key);
-        return result;
+        } else task.run();
+    }
+
+    //删除redis与本地缓存,返回redis中是否存在该key
+    private boolean evict(String key) {
+        boolean removed = redisUtil.remove(key);
+        invalidateCopies(key);
+        return removed;
+    }
+
+    //删除本地缓存与热点副本
+    private void invalidateCopies(String key) {
+        if (nearCache != null) nearCache.invalidate(key);
+        if (hotKeyCache != null) hotKeyCache.invalidate(key);
     }
 
     //查询分支
-    private Object query(ProceedingJoinPoint joinPoint,RedisCache redisCache,String key,JavaType javaType) throws Throwable {
+    private Object query(ProceedingJoinPoint joinPoint,CacheMetadata metadata,String key,JavaType javaType) throws Throwable {
 
-        Optional<Object> redisResult = checkRedis(key, redisCache, javaType);
+        Optional<Object> redisResult = checkRedis(joinPoint, key, metadata, javaType);
         if (redisResult.isPresent()) return EmptyHandler.isNullMarker(redisResult.get()) ? null : redisResult.get();
         log.debug("锁策略: {}",lock);
-        return getLock(lock).executeWithLock(joinPoint, key, redisUtil);
-
-    }
-
-    //获取SpEL参数上下文
-    private EvaluationContext getContextByJoinPoint(ProceedingJoinPoint joinPoint,String defaultVal) {
-        try {
-            String[] parameterNames = Optional.ofNullable(joinPoint)
-                    .map(ProceedingJoinPoint::getSignature)
-                    .filter(MethodSignature.class::isInstance)
-                    .map(MethodSignature.class::cast)
-                    .map(MethodSignature::getParameterNames)
-                    .orElseThrow(() -> CustomizeException.badRequest("获取参数名称时发生异常"));
-            Object[] args = joinPoint.getArgs();
-            EvaluationContext context = new StandardEvaluationContext();
-            for (int i = 0; i < args.length && i < parameterNames.length; i++) {
-                context.setVariable(parameterNames[i],
-                        args[i] != null ? args[i] : String.format("%s:%s",parameterNames[i],defaultVal));
-            }
-            return context;
-        } catch (Exception e) {
-            throw e instanceof CustomizeException ce ? ce : CustomizeException.internalServerError("构建SpEL参数上下文失败",e);
-        }
+        //锁内执行原方法时记录加载耗时
+        return metadata.getCacheLock().executeWithLock(TimedJoinPoint.of(joinPoint, metrics, metadata), key, javaType, redisUtil);
+
+    }
+
+    //获取方法元数据,首次调用时构建
+    private CacheMetadata getMetadata(ProceedingJoinPoint joinPoint,RedisCache redisCache) {
+        return metadataRegistry.get(joinPoint, (method, parameterNames) ->
+                CacheMetadata.of(method, parameterNames, redisCache, getHandler(redisCache.handler()), getLock(lock)));
     }
 
     //解析SpEL表达式
-    private Object getArgByContext(ProceedingJoinPoint joinPoint,String defaultVal,String value) {
-        if (!StringUtils.hasText(value)) return defaultVal;
-        EvaluationContext context = getContextByJoinPoint(joinPoint, defaultVal);
-        Object result = parser.parseExpression(value).getValue(context);
+    private Object getArgByContext(EvaluationContext context,String defaultVal,CacheMetadata.CachedExpression expression) {
+        if (expression == null) return defaultVal;
+        Object result = expression.getValue(context);
         return result != null ? result : defaultVal;
     }
 
     //生成key
-    private String getKey(String arg,String value) {
-        return String.format("%s:%s",arg, DigestUtils.md5DigestAsHex(value.getBytes()));
+    private String getKey(String arg,String prefixDigest) {
+        return arg + ":" + prefixDigest;
     }
 
     //查布隆
-    private Optional<Object> checkBloomFilter(Object key, RedisCache redisCache, JavaType javaType) {
+    private Optional<Object> checkBloomFilter(Object key, CacheMetadata metadata, JavaType javaType) {
         if (key instanceof Collection<?> collect) {
             boolean b = collect.stream()
                     .filter(Objects::nonNull)
-                    .map(Object::toString)
-                    .anyMatch(bloomFilter::mightContain);
+                    .anyMatch(bloomFilter::mightContainValue);
             if (!b) {
                 log.debug("在集合中布隆过滤器未查询到key,触发降级: {}",collect);
-                return Optional.ofNullable(getHandler(redisCache.handler()).handle(collect,javaType));
+                return Optional.ofNullable(metadata.getHandler().handle(collect,javaType));
             }
         } else {
-            String value = String.valueOf(key);
-            if (!bloomFilter.mightContain(value)) {
-                log.debug("布隆过滤器未查询到key,触发降级: {}",value);
-                return Optional.ofNullable(getHandler(redisCache.handler()).handle(key,javaType));
+            if (!bloomFilter.mightContainValue(key)) {
+                log.debug("布隆过滤器未查询到key,触发降级: {}",key);
+                return Optional.ofNullable(metadata.getHandler().handle(key,javaType));
             }
         }
         return Optional.empty();
     }
 
     //查redis
-    private Optional<Object> checkRedis(String key, RedisCache redisCache, JavaType javaType) {
-        if (!RedisModel.QUERY.equals(redisCache.redisModel())) {
+    private Optional<Object> checkRedis(ProceedingJoinPoint joinPoint, String key, CacheMetadata metadata, JavaType javaType) {
+        if (!RedisModel.QUERY.equals(metadata.getRedisModel())) {
             log.debug("非法类型,将跳过检查缓存逻辑");
             return Optional.empty();
         }
-        Object redisResult = redisUtil.get(key, javaType);
+        long ttl = -1;
+        //热点key优先读本节点副本或随机redis副本
+        boolean hot = hotKeyCache != null && hotspotEnable && hotKeyDetector != null && hotKeyDetector.isHot(key);
+        Object redisResult = hot ? hotKeyCache.get(key, javaType) : null;
+        if (redisResult == null) {
+            if (metadata.getRefreshAhead() > 0 && cacheRefresher != null) {
+                RedisUtil.CacheValue cacheValue = redisUtil.getWithTtl(key, javaType);
+                redisResult = cacheValue.value();
+                ttl = cacheValue.ttl();
+            } else redisResult = getCacheValue(key, metadata, javaType);
+            if (hot && redisResult != null && !nilValue.equals(redisResult)) hotKeyCache.promote(key, redisResult);
+        }
+        metrics.request(metadata.getValue(), metadata.getMethodName(), redisResult == null ? CacheMetrics.MISS
+                : nilValue.equals(redisResult) ? CacheMetrics.NIL : CacheMetrics.HIT);
         if (redisResult != null) {
             if (nil && nilValue.equals(redisResult))
-                return Optional.ofNullable(getHandler(redisCache.handler()).handle(key,javaType));
+                return Optional.ofNullable(metadata.getHandler().handle(key,javaType));
             else {
                 if (nilValue.equals(redisResult)) return Optional.empty();
-                if (hotspotEnable && keyInfoMap != null) {
-                    //热点属性自增
-                    KeyInfo.increment(keyInfoMap, key);
-                    KeyInfo compute = keyInfoMap.compute(key, (k, oldValue) -> oldValue == null ? new KeyInfo(k) : oldValue);
-                    log.debug("KeyInfo当前访问次数为: {},计算访问窗口为: {}", compute.getFrequency().sum(),
-                            Duration.between(compute.getStartTime(), LocalDateTime.now()).getSeconds());
+                if (hotspotEnable && hotKeyDetector != null) {
+                    //热点频率自增
+                    long frequency = hotKeyDetector.increment(key);
+                    log.debug("key当前估算访问频率为: {},key: {}", frequency, key);
+                }
+                //进入刷新窗口,返回当前值并异步刷新
+                if (ttl >= 0 && ttl < metadata.getRefreshAhead() * 1000) {
+                    cacheRefresher.refresh(key, metadata.getRefreshAhead(), joinPoint::proceed);
                 }
                 return nilValue.equals(redisResult) ? Optional.empty() : Optional.of(redisResult);
             }
@@ -226,22 +341,16 @@ public class NewRedisAop {
         return Optional.empty();
     }
 
-    //获取方法返回值JavaType
-    private JavaType getJavaType(ProceedingJoinPoint joinPoint) {
-        try {
-            Type type = Optional.ofNullable(joinPoint)
-                    .map(ProceedingJoinPoint::getSignature)
-                    .filter(MethodSignature.class::isInstance)
-                    .map(MethodSignature.class::cast)
-                    .map(MethodSignature::getMethod)
-                    .map(Method::getGenericReturnType)
-                    .orElseThrow(() -> CustomizeException.badRequest("获取方法返回值失败,方法签名或是返回类型为空"));
-            return TypeFactory.defaultInstance().constructType(type);
-        } catch (CustomizeException e) {
-          throw e;
-        } catch (Exception e) {
-            throw CustomizeException.internalServerError("获取返回值类型失败",e);
+    //先查本地缓存,未命中再查redis并回填本地缓存
+    private Object getCacheValue(String key, CacheMetadata metadata, JavaType javaType) {
+        boolean near = nearCache != null && metadata.isNearCache();
+        if (near) {
+            Object local = nearCache.get(key, javaType);
+            if (local != null) return local;
         }
+        Object redisResult = redisUtil.get(key, javaType);
+        if (near && redisResult != null) nearCache.put(key, redisResult);
+        return redisResult;
     }
 
     //空值降级策略选择
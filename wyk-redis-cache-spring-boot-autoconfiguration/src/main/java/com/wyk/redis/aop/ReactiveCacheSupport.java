@@ -0,0 +1,149 @@
+package com.wyk.redis.aop;
+
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.wyk.redis.cache.imp.EmptyHandler;
+import com.wyk.redis.util.ReactiveRedisUtil;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+/*
+  异步返回值支持: Mono/Flux/CompletableFuture统一转换为Mono组合缓存读取、加载与回写,全程不阻塞
+  Flux按List缓存;同一节点内同一key的并发未命中共享一次加载,跨节点通过分布式锁互斥,
+  未抢到锁的请求按间隔回读缓存直到超时,超时后自行加载
+ */
+public class ReactiveCacheSupport {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveCacheSupport.class);
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(50);
+
+    private final ReactiveRedisUtil reactiveRedisUtil;
+    private final boolean nil;
+    private final Long lockTimeOut;
+    private final Map<String, Mono<Object>> inFlight = new ConcurrentHashMap<>();
+
+    public ReactiveCacheSupport(ReactiveRedisUtil reactiveRedisUtil, boolean nil, Long lockTimeOut) {
+        this.reactiveRedisUtil = reactiveRedisUtil;
+        this.nil = nil;
+        this.lockTimeOut = lockTimeOut;
+    }
+
+    //查询: 命中直接返回,空值占位走降级策略,未命中加锁加载并回写
+    public Object query(ProceedingJoinPoint joinPoint, CacheMetadata metadata, String key) {
+        JavaType javaType = metadata.getJavaType();
+        Mono<Object> result = reactiveRedisUtil.get(key, javaType)
+                .flatMap(value -> {
+                    if (!reactiveRedisUtil.getNilValue().equals(value)) return Mono.just(value);
+                    return nil ? handle(metadata, key) : load(joinPoint, metadata, key);
+                })
+                .switchIfEmpty(Mono.defer(() -> load(joinPoint, metadata, key)));
+        return fromMono(metadata, result);
+    }
+
+    //更新/新增/删除: 方法完成后删除缓存,onSuccess在成功后执行(如布隆与本地缓存维护)
+    public Object update(ProceedingJoinPoint joinPoint, CacheMetadata metadata, String key, Consumer<Object> onSuccess) {
+        Mono<Object> result = proceed(joinPoint, metadata)
+                .flatMap(value -> reactiveRedisUtil.remove(key).thenReturn(value))
+                .switchIfEmpty(Mono.defer(() -> reactiveRedisUtil.remove(key).then(Mono.empty())))
+                .doOnSuccess(onSuccess);
+        return fromMono(metadata, result);
+    }
+
+    //将同步结果包装为方法声明的异步类型,null为空
+    public Object just(CacheMetadata metadata, Callable<Object> supplier) {
+        return fromMono(metadata, Mono.fromCallable(supplier)
+                .filter(value -> !EmptyHandler.isNullMarker(value)));
+    }
+
+    //降级策略在订阅时执行,异常转为错误信号
+    private Mono<Object> handle(CacheMetadata metadata, String key) {
+        return Mono.fromCallable(() -> metadata.getHandler().handle(key, metadata.getJavaType()))
+                .filter(value -> !EmptyHandler.isNullMarker(value));
+    }
+
+    //本地合并并发加载
+    private Mono<Object> load(ProceedingJoinPoint joinPoint, CacheMetadata metadata, String key) {
+        return inFlight.computeIfAbsent(key, k -> loadWithLock(joinPoint, metadata, k)
+                .doFinally(signal -> inFlight.remove(k))
+                .cache());
+    }
+
+    //跨节点互斥加载
+    private Mono<Object> loadWithLock(ProceedingJoinPoint joinPoint, CacheMetadata metadata, String key) {
+        String value = UUID.randomUUID().toString();
+        return reactiveRedisUtil.setDistributedLock(key, value, lockTimeOut)
+                .flatMap(locked -> {
+                    if (locked) {
+                        return Mono.usingWhen(Mono.just(value),
+                                v -> loadAndCache(joinPoint, metadata, key),
+                                v -> reactiveRedisUtil.delDistributedLock(key, v));
+                    }
+                    log.debug("其他请求正在加载,等待回读缓存,key: {}", key);
+                    return waitForCache(joinPoint, metadata, key);
+                });
+    }
+
+    //按间隔回读缓存,超时后自行加载
+    private Mono<Object> waitForCache(ProceedingJoinPoint joinPoint, CacheMetadata metadata, String key) {
+        return reactiveRedisUtil.get(key, metadata.getJavaType())
+                .repeatWhenEmpty(repeat -> repeat.delayElements(POLL_INTERVAL))
+                .timeout(Duration.ofSeconds(lockTimeOut), Mono.defer(() -> {
+                    log.warn("等待其他请求加载超时,key: {}", key);
+                    return loadAndCache(joinPoint, metadata, key);
+                }))
+                .flatMap(value -> reactiveRedisUtil.getNilValue().equals(value)
+                        ? (nil ? handle(metadata, key) : Mono.empty())
+                        : Mono.just(value));
+    }
+
+    //执行原方法并回写,空结果写入空值占位
+    private Mono<Object> loadAndCache(ProceedingJoinPoint joinPoint, CacheMetadata metadata, String key) {
+        return proceed(joinPoint, metadata)
+                .flatMap(value -> reactiveRedisUtil.setRandomExpires(key, value).thenReturn(value))
+                .switchIfEmpty(Mono.defer(() -> reactiveRedisUtil.setNil(key).then(Mono.empty())));
+    }
+
+    //调用原方法并转换为Mono,订阅时才执行
+    private Mono<Object> proceed(ProceedingJoinPoint joinPoint, CacheMetadata metadata) {
+        return Mono.defer(() -> {
+            try {
+                return toMono(metadata, joinPoint.proceed());
+            } catch (Throwable e) {
+                return Mono.error(e);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mono<Object> toMono(CacheMetadata metadata, Object result) {
+        if (result == null) return Mono.empty();
+        return switch (metadata.getReturnKind()) {
+            case MONO -> (Mono<Object>) result;
+            case FLUX -> ((Flux<Object>) result).collectList().map(list -> list);
+            case FUTURE -> Mono.fromCompletionStage((CompletionStage<Object>) result);
+            case SYNC -> Mono.just(result);
+        };
+    }
+
+    private Object fromMono(CacheMetadata metadata, Mono<Object> mono) {
+        return switch (metadata.getReturnKind()) {
+            case MONO -> mono;
+            case FLUX -> mono.flatMapMany(value -> value instanceof Collection<?> collection
+                    ? Flux.fromIterable(collection) : Flux.just(value));
+            case FUTURE -> mono.toFuture();
+            case SYNC -> mono.block();
+        };
+    }
+}
@@ -2,60 +2,64 @@ package com.wyk.redis.aop;
 
 
 import com.fasterxml.jackson.databind.JavaType;
-import com.fasterxml.jackson.databind.type.TypeFactory;
 import com.wyk.redis.cache.CacheMissHandler;
 import com.wyk.redis.cache.Status;
 import com.wyk.redis.cache.imp.EmptyHandler;
 import com.wyk.redis.cache.imp.ExceptionHandler;
+import com.wyk.redis.cache.imp.LocalReentrantLock;
+import com.wyk.redis.metrics.CacheMetrics;
 import com.wyk.redis.util.BloomFilter;
+import com.wyk.redis.util.NearCache;
 import com.wyk.redis.util.RedisUtil;
-import com.wyk.redis.util.SpELUtil;
 import com.wyk.redis.exception.CustomizeException;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
-import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.expression.EvaluationContext;
 import org.springframework.transaction.support.TransactionSynchronization;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.DigestUtils;
 
-import java.lang.reflect.Method;
-import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 @Aspect
 
 public class RedisAop {
     @Pointcut("@annotation(redisInterface)")
     public void redisCachePointcut(RedisInterface redisInterface){}
-    private static final ConcurrentHashMap<String, AtomicReference<ReentrantLock>> reentrantLock = new ConcurrentHashMap<>();
     private static final Logger log = LoggerFactory.getLogger(RedisAop.class);
-    private static final SpELUtil spELUtil = new SpELUtil();
     private final RedisUtil redisUtil;
     private final Map<String, CacheMissHandler> missHandler;
     private static final ExceptionHandler defaultMissHandler = new ExceptionHandler();
     private final BloomFilter bloomFilter;
+    private final NearCache nearCache;
+    private final ReactiveCacheSupport reactiveCacheSupport;
+    private final CacheMetrics metrics;
 
     private final boolean cluster;
     private final boolean bloom;
     private final boolean nil;
     private final String nilValue;
-    private final Long localLockTimeOut;
+    private final LocalReentrantLock localLock;
     private final Long distributedLockTimeOut;
+    private final CacheMetadataRegistry metadataRegistry = new CacheMetadataRegistry();
+    private final BatchCacheSupport batchCacheSupport;
 
 
     public RedisAop(
             RedisUtil redisUtil,
             Map<String, CacheMissHandler> missHandler,
             BloomFilter bloomFilter,
+            NearCache nearCache,
+            ReactiveCacheSupport reactiveCacheSupport,
+            CacheMetrics metrics,
             boolean cluster,
             boolean bloom,
             boolean nil,
@@ -66,45 +70,120 @@ public class RedisAop {
         this.redisUtil = redisUtil;
         this.missHandler = missHandler;
         this.bloomFilter = bloomFilter;
+        this.nearCache = nearCache;
+        this.reactiveCacheSupport = reactiveCacheSupport;
+        this.metrics = metrics == null ? CacheMetrics.NOOP : metrics;
         this.cluster = cluster;
         this.bloom = bloom;
         this.nil = nil;
         this.nilValue = nilValue;
-        this.localLockTimeOut = localLockTimeOut;
+        this.localLock = new LocalReentrantLock(localLockTimeOut, this.metrics, "interfaceLocal");
         this.distributedLockTimeOut = distributedLockTimeOut;
+        this.batchCacheSupport = new BatchCacheSupport(redisUtil, nil, nilValue);
     }
 
     @Around("redisCachePointcut(redisInterface)")
     public Object redisAop(ProceedingJoinPoint joinPoint,RedisInterface redisInterface) throws Throwable {
 
-        String key = generateRedisKey(joinPoint, redisInterface);
+        CacheMetadata metadata = getMetadata(joinPoint, redisInterface);
+        if (metadata.isBatch()) return batch(joinPoint, metadata);
+        EvaluationContext context = metadata.createContext(joinPoint.getArgs());
+        String key = generateRedisKey(context, metadata);
+        if (metadata.isAsync()) return async(key, joinPoint, metadata, context);
 
         return switch (redisInterface.redisModel()) {
-            case QUERY -> queryOrInsert(key,joinPoint,redisInterface);
-            case UPDATE,INSERT,DELETE -> updateOrDelete(key,joinPoint,redisInterface);
+            case QUERY -> queryOrInsert(key,joinPoint,metadata,context);
+            case UPDATE,INSERT,DELETE -> updateOrDelete(key,joinPoint,metadata,context);
         };
     }
 
+    //异步分支,Mono/Flux/CompletableFuture返回值交由ReactiveCacheSupport组合,不阻塞调用线程
+    private Object async(String key, ProceedingJoinPoint joinPoint, CacheMetadata metadata, EvaluationContext context) {
+        if (reactiveCacheSupport == null) {
+            throw CustomizeException.internalServerError("未启用响应式redis,不支持异步返回值: " + metadata.getMethod());
+        }
+        if (!RedisModel.QUERY.equals(metadata.getRedisModel())) {
+            return reactiveCacheSupport.update(joinPoint, metadata, key, result -> {
+                if (nearCache != null) nearCache.invalidate(key);
+                context.setVariable("result", result);
+                updateBloomFilter(metadata, context, false);
+            });
+        }
+        if (bloom && metadata.getBloomExpression() != null) {
+            Optional<Object> optionalBloom;
+            try {
+                Object o = parseSpEL(metadata.getBloomExpression(), context, "布隆SpEL表达式不能为空", Object.class);
+                optionalBloom = bloomFilterHandler(o, metadata.getHandler(), metadata.getJavaType());
+            } catch (RuntimeException e) {
+                return reactiveCacheSupport.just(metadata, () -> { throw e; });
+            }
+            if (optionalBloom.isPresent()) return reactiveCacheSupport.just(metadata, optionalBloom::get);
+        }
+        return reactiveCacheSupport.query(joinPoint, metadata, key);
+    }
+
+    //批量分支,集合参数中每个元素对应一个key
+    private Object batch(ProceedingJoinPoint joinPoint,CacheMetadata metadata) throws Throwable {
+        Function<Object, String> keyFunction = id -> String.format("%s::%s",metadata.getValue(),
+                DigestUtils.md5DigestAsHex(String.valueOf(id).getBytes(StandardCharsets.UTF_8)));
+        if (RedisModel.QUERY.equals(metadata.getRedisModel())) {
+            Predicate<Object> bloomPredicate = bloom && bloomFilter != null && metadata.getBloomExpression() != null
+                    ? id -> !(id instanceof Long l) || bloomFilter.mightContain(l) : null;
+            return batchCacheSupport.query(joinPoint, metadata, keyFunction, bloomPredicate);
+        }
+        Object proceed = joinPoint.proceed();
+        batchCacheSupport.evict(joinPoint.getArgs(), metadata, keyFunction)
+                .forEach(key -> {
+                    if (nearCache != null) nearCache.invalidate(key);
+                });
+        EvaluationContext context = metadata.createContext(joinPoint.getArgs());
+        context.setVariable("result", proceed);
+        updateBloomFilter(metadata, context, false);
+        return proceed;
+    }
+
+    //获取方法元数据,首次调用时构建
+    private CacheMetadata getMetadata(ProceedingJoinPoint joinPoint,RedisInterface redisInterface) {
+        return metadataRegistry.get(joinPoint, (method, parameterNames) ->
+                CacheMetadata.of(method, parameterNames, redisInterface, resolveHandler(redisInterface.handler())));
+    }
+
     //生成key
-    private String generateRedisKey(ProceedingJoinPoint joinPoint,RedisInterface redisInterface) {
-        String key = spELUtil.parseSpEL(redisInterface.key(), redisInterface.defaultVal(), joinPoint);
+    private String generateRedisKey(EvaluationContext context,CacheMetadata metadata) {
+        String key = parseSpEL(metadata.getKeyExpression(), context, "SpEL表达式不能为空", String.class);
         if (key == null) return null;
-        return String.format("%s::%s",redisInterface.value(),
+        return String.format("%s::%s",metadata.getValue(),
                 DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8)));
 //                key);
     }
+
+    //执行预编译SpEL表达式
+    private <T> T parseSpEL(CacheMetadata.CachedExpression expression,EvaluationContext context,String emptyMessage,Class<T> tClass) {
+        if (expression == null) {
+            throw CustomizeException.internalServerError(emptyMessage);
+        }
+        try {
+            return expression.getValue(context, tClass);
+        } catch (Exception e) {
+            throw CustomizeException.internalServerError("SpEL表达式解析失败");
+        }
+    }
+
     //查询或插入操作逻辑
-    private Object queryOrInsert(String key,ProceedingJoinPoint joinPoint,RedisInterface redisInterface) throws Throwable {
-        JavaType javaType = getJavaType(joinPoint);
-        if (bloom && redisInterface.bloomKey() != null && !redisInterface.bloomKey().trim().isEmpty()) {
-            Object o = spELUtil.parseBloomSpEL(redisInterface.bloomKey(), redisInterface.defaultVal(), joinPoint);
-            Optional<Object> optionalBloom = bloomFilterHandler(o, redisInterface.handler(), javaType);
+    private Object queryOrInsert(String key,ProceedingJoinPoint joinPoint,CacheMetadata metadata,EvaluationContext context) throws Throwable {
+        JavaType javaType = metadata.getJavaType();
+        //锁内执行原方法时记录加载耗时
+        joinPoint = TimedJoinPoint.of(joinPoint, metrics, metadata);
+        if (bloom && metadata.getBloomExpression() != null) {
+            Object o = parseSpEL(metadata.getBloomExpression(), context, "布隆SpEL表达式不能为空", Object.class);
+            Optional<Object> optionalBloom = bloomFilterHandler(o, metadata.getHandler(), javaType);
             if (optionalBloom.isPresent()) {
+                metrics.request(metadata.getValue(), metadata.getMethodName(), CacheMetrics.BLOOM_REJECT);
                 Object object = optionalBloom.get();
                 return EmptyHandler.isNullMarker(object)?null:object;
             }
         }
-        Optional<Object> optionalRedis = redisGetHandler(redisInterface.handler(), key, javaType);
+        Optional<Object> optionalRedis = redisGetHandler(metadata, key, javaType);
         if (optionalRedis.isPresent()) {
             Object object = optionalRedis.get();
             return EmptyHandler.isNullMarker(object)?null:object;
@@ -113,7 +192,12 @@ public class RedisAop {
         //分布式锁方案
         if (cluster) {
             String value = UUID.randomUUID().toString();
-            if (redisUtil.setDistributedLock(key, value, distributedLockTimeOut)) {
+            //未抢到锁时退避等待,获取后回读缓存,等待超时才失败
+            long start = System.nanoTime();
+            boolean acquired = redisUtil.setDistributedLock(key, value, distributedLockTimeOut,
+                    TimeUnit.SECONDS.toMillis(distributedLockTimeOut));
+            metrics.lockWait("interfaceRedis", System.nanoTime() - start, acquired);
+            if (acquired) {
                 try {
                     log.debug("获取分布式锁成功,key: {},value: {}",key,value);
                     //这里是业务逻辑
@@ -143,69 +227,81 @@ public class RedisAop {
                 throw new CustomizeException("服务器繁忙,请稍后重试", Status.BAD_REQUEST.getCode());
             }
         } else {
-            AtomicReference<ReentrantLock> lockRef = reentrantLock
-                    .computeIfAbsent(key, k -> new AtomicReference<>(new ReentrantLock()));
-            ReentrantLock lock = lockRef.get();
-            if (lock.tryLock(localLockTimeOut, TimeUnit.SECONDS)) {
-                try {
-                    Object object = redisUtil.get(key, javaType);
-                    if (Optional.ofNullable(object).filter(o -> !nilValue.equals(o)).isPresent())
-                        return object;
-                    Object proceed = joinPoint.proceed();
-                    if (TransactionSynchronizationManager.isSynchronizationActive()) {
-                        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
-                            @Override
-                            public void afterCommit() {
-                                redisSetHandler(proceed, key);
-                            }
-                        });
-                    } else {
-                        redisSetHandler(proceed, key);
-                    }
-                    return proceed;
-                } finally {
-                    lock.unlock();
-                    safeCleanLocalLock(key,lockRef,lock);
+            //与defaultLocalReentrant相同的本地锁,获取后校验锁未被清理替换
+            String value = UUID.randomUUID().toString();
+            localLock.tryLock(key, value);
+            try {
+                Object object = redisUtil.get(key, javaType);
+                if (Optional.ofNullable(object).filter(o -> !nilValue.equals(o)).isPresent())
+                    return object;
+                Object proceed = joinPoint.proceed();
+                if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            redisSetHandler(proceed, key);
+                        }
+                    });
+                } else {
+                    redisSetHandler(proceed, key);
                 }
-            } else {
-                log.warn("获取本地锁 {} 失败", key);
-                throw new CustomizeException("服务器繁忙,请稍后重试", Status.BAD_REQUEST.getCode());
+                return proceed;
+            } finally {
+                localLock.unLock(key, value);
             }
         }
     }
     //更新或删除逻辑
-    private Object updateOrDelete(String key ,ProceedingJoinPoint joinPoint, RedisInterface redisInterface) throws Throwable {
+    private Object updateOrDelete(String key ,ProceedingJoinPoint joinPoint, CacheMetadata metadata, EvaluationContext context) throws Throwable {
         Object proceed = joinPoint.proceed();
-        redisUtil.remove(key);
+        boolean removed = redisUtil.remove(key);
+        if (nearCache != null) nearCache.invalidate(key);
         if (proceed != null) {
             redisUtil.setRandomExpires(key,proceed);
         }
+        context.setVariable("result", proceed);
+        updateBloomFilter(metadata, context, removed);
         return proceed;
     }
-    //获取方法返回值javaType
-    private JavaType getJavaType(ProceedingJoinPoint joinPoint) {
-        Type returnType = Optional.of(joinPoint)
-                .map(ProceedingJoinPoint::getSignature)
-                .filter(MethodSignature.class::isInstance)
-                .map(MethodSignature.class::cast)
-                .map(MethodSignature::getMethod)
-                .map(Method::getGenericReturnType)
-                .orElseThrow(() -> CustomizeException.internalServerError("获取方法返回值失败"));
-        return TypeFactory.defaultInstance().constructType(returnType);
-    }
 
+    //INSERT加入布隆,DELETE确实删除了数据时从布隆移除(仅计数布隆支持),存在事务时提交后执行
+    private void updateBloomFilter(CacheMetadata metadata, EvaluationContext context, boolean cacheRemoved) {
+        RedisModel model = metadata.getRedisModel();
+        if (!bloom || bloomFilter == null || metadata.getBloomExpression() == null
+                || !(RedisModel.INSERT.equals(model) || RedisModel.DELETE.equals(model))) return;
+        Object bloomArg = parseSpEL(metadata.getBloomExpression(), context, "布隆SpEL表达式不能为空", Object.class);
+        if (bloomArg == null) return;
+        Collection<?> values = bloomArg instanceof Collection<?> collect ? collect : List.of(bloomArg);
+        if (RedisModel.DELETE.equals(model)
+                && !BloomFilter.shouldRemove(context.lookupVariable("result"), values.size(), cacheRemoved)) {
+            log.debug("未确认删除,不从布隆过滤器移除: {}", values);
+            return;
+        }
+        Runnable task = () -> values.forEach(value -> {
+            if (RedisModel.INSERT.equals(model)) bloomFilter.putValue(value);
+            else bloomFilter.removeValue(value);
+        });
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else task.run();
+    }
     //查布隆
-    private Optional<Object> bloomFilterHandler(Object result,String handler,JavaType javaType) {
+    private Optional<Object> bloomFilterHandler(Object result,CacheMissHandler handler,JavaType javaType) {
         if (result instanceof List<?> s) {
             boolean b = s.stream().anyMatch(list -> list instanceof Long l && bloomFilter.mightContain(l));
             if(!b) {
                 log.debug("布隆过滤器未找到List: {},直接结束!", s);
-                return Optional.ofNullable(resolveHandler(handler).handle(result, javaType));
+                return Optional.ofNullable(handler.handle(result, javaType));
             }
         } else if (result instanceof Long l) {
             if (!bloomFilter.mightContain(l)) {
                 log.debug("布隆过滤器未找到Long: {},直接结束!", l);
-                return Optional.ofNullable(resolveHandler(handler).handle(result, javaType));
+                return Optional.ofNullable(handler.handle(result, javaType));
             }
         }
         return Optional.empty();
@@ -214,15 +310,18 @@ public class RedisAop {
 
 
     //查缓存
-    private Optional<Object> redisGetHandler(String handler,String key,JavaType javaType) {
-        Object redisResult = redisUtil.get(key, javaType);
+    private Optional<Object> redisGetHandler(CacheMetadata metadata,String key,JavaType javaType) {
+        CacheMissHandler handler = metadata.getHandler();
+        Object redisResult = getCacheValue(key, metadata, javaType);
+        metrics.request(metadata.getValue(), metadata.getMethodName(), redisResult == null ? CacheMetrics.MISS
+                : nilValue.equals(redisResult) ? CacheMetrics.NIL : CacheMetrics.HIT);
         if (nil) {
             if (Optional.ofNullable(redisResult)
                     .filter(o -> !(o instanceof String && nilValue.equals(o)))
                     .isPresent()) return Optional.of(redisResult);
             else if (nilValue.equals(redisResult)) {
                 log.info("空缓存,直接结束!");
-                return Optional.ofNullable(resolveHandler(handler).handle(key, javaType));
+                return Optional.ofNullable(handler.handle(key, javaType));
             }
         } else {
             if (redisResult != null && !nilValue.equals(redisResult)) return Optional.of(redisResult);
@@ -230,6 +329,18 @@ public class RedisAop {
         return Optional.empty();
     }
 
+    //先查本地缓存,未命中再查redis并回填本地缓存
+    private Object getCacheValue(String key, CacheMetadata metadata, JavaType javaType) {
+        boolean near = nearCache != null && metadata.isNearCache();
+        if (near) {
+            Object local = nearCache.get(key, javaType);
+            if (local != null) return local;
+        }
+        Object redisResult = redisUtil.get(key, javaType);
+        if (near && redisResult != null) nearCache.put(key, redisResult);
+        return redisResult;
+    }
+
     private void redisSetHandler(Object proceed,String key) {
         if (nil && proceed == null) redisUtil.set(key);
         else redisUtil.setRandomExpires(key, proceed);
@@ -238,21 +349,4 @@ public class RedisAop {
     private CacheMissHandler resolveHandler(String handlerName) {
         return missHandler.getOrDefault(handlerName,defaultMissHandler);
     }
-
-    //安全清理本地锁
-    private void safeCleanLocalLock(String key, AtomicReference<ReentrantLock> lockRef, ReentrantLock lock) {
-        if (!lock.hasQueuedThreads()) {
-            if (lockRef.compareAndSet(lock,null)) {
-                if (reentrantLock.remove(key,lockRef)) {
-                    log.debug("本地锁清理成功: {}",key);
-                } else {
-                    log.debug("本地锁清理失败,可能被其他线程处理: {}",key);
-                }
-            } else {
-                log.debug("锁引用已被其他线程修改: {}",key);
-            }
-        } else {
-            log.debug("有线程在等待锁,暂不释放: {}",key);
-        }
-    }
 }
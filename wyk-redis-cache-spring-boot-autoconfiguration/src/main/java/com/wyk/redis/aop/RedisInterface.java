@@ -15,4 +15,6 @@ public @interface RedisInterface {
     RedisModel redisModel() default RedisModel.QUERY; //方法的模式
     String handler() default "exception";
     String bloomKey() default ""; //布隆过滤器key
+    boolean nearCache() default false; //是否启用本地一级缓存,需开启nearCache配置
+    String batchKey() default ""; //批量模式,以返回集合元素为根的id SpEL(如"id"),非空时key须为集合参数引用(如"#ids")
 }
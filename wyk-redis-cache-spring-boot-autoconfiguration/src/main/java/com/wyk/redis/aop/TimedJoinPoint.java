@@ -0,0 +1,115 @@
+package com.wyk.redis.aop;
+
+
+import com.wyk.redis.metrics.CacheMetrics;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.aspectj.lang.reflect.SourceLocation;
+import org.aspectj.runtime.internal.AroundClosure;
+
+/*
+  原方法计时包装: 锁策略内部调用proceed时记录加载耗时,不区分锁实现
+ */
+class TimedJoinPoint implements ProceedingJoinPoint {
+
+    private final ProceedingJoinPoint delegate;
+    private final CacheMetrics metrics;
+    private final CacheMetadata metadata;
+
+    private TimedJoinPoint(ProceedingJoinPoint delegate, CacheMetrics metrics, CacheMetadata metadata) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.metadata = metadata;
+    }
+
+    //未启用指标时返回原对象
+    static ProceedingJoinPoint of(ProceedingJoinPoint joinPoint, CacheMetrics metrics, CacheMetadata metadata) {
+        return metrics.isEnabled() ? new TimedJoinPoint(joinPoint, metrics, metadata) : joinPoint;
+    }
+
+    @Override
+    public Object proceed() throws Throwable {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Object result = delegate.proceed();
+            success = true;
+            return result;
+        } finally {
+            metrics.load(metadata.getValue(), metadata.getMethodName(), System.nanoTime() - start, success);
+        }
+    }
+
+    @Override
+    public Object proceed(Object[] args) throws Throwable {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            Object result = delegate.proceed(args);
+            success = true;
+            return result;
+        } finally {
+            metrics.load(metadata.getValue(), metadata.getMethodName(), System.nanoTime() - start, success);
+        }
+    }
+
+    @Override
+    public void set$AroundClosure(AroundClosure arc) {
+        delegate.set$AroundClosure(arc);
+    }
+
+    @Override
+    public void stack$AroundClosure(AroundClosure arc) {
+        delegate.stack$AroundClosure(arc);
+    }
+
+    @Override
+    public String toShortString() {
+        return delegate.toShortString();
+    }
+
+    @Override
+    public String toLongString() {
+        return delegate.toLongString();
+    }
+
+    @Override
+    public Object getThis() {
+        return delegate.getThis();
+    }
+
+    @Override
+    public Object getTarget() {
+        return delegate.getTarget();
+    }
+
+    @Override
+    public Object[] getArgs() {
+        return delegate.getArgs();
+    }
+
+    @Override
+    public Signature getSignature() {
+        return delegate.getSignature();
+    }
+
+    @Override
+    public SourceLocation getSourceLocation() {
+        return delegate.getSourceLocation();
+    }
+
+    @Override
+    public String getKind() {
+        return delegate.getKind();
+    }
+
+    @Override
+    public StaticPart getStaticPart() {
+        return delegate.getStaticPart();
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
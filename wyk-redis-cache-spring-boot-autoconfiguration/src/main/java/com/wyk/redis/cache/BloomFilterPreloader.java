@@ -0,0 +1,8 @@
+package com.wyk.redis.cache;
+
+import java.util.stream.Stream;
+
+public interface BloomFilterPreloader {
+    //返回需要预加载到布隆过滤器的id流,按批并行写入,结束后关闭流
+    Stream<?> ids();
+}
@@ -1,5 +1,6 @@
 package com.wyk.redis.cache;
 
+import com.fasterxml.jackson.databind.JavaType;
 import com.wyk.redis.util.RedisUtil;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.springframework.transaction.support.TransactionSynchronization;
@@ -11,26 +12,46 @@ public interface CacheLock {
 
     void tryLock(String key, String value) throws Throwable;
     void unLock(String key, String value) throws Throwable;
-    default Object executeWithLock(ProceedingJoinPoint joinPoint, String key, RedisUtil redisUtil) throws Throwable {
+
+    //带返回值类型的模板方法: 获取锁后先回读缓存,等待锁期间已被其他请求加载时直接返回
+    default Object executeWithLock(ProceedingJoinPoint joinPoint, String key, JavaType javaType, RedisUtil redisUtil) throws Throwable {
         String value = UUID.randomUUID().toString();
         tryLock(key,value);
         try {
-            Object result = joinPoint.proceed();
-            if (result != null) {
-                if (TransactionSynchronizationManager.isSynchronizationActive()) {
-                    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
-                        @Override
-                        public void afterCommit() {
-                            redisUtil.setRandomExpires(key,result);
-                        }
-                    });
-                } else redisUtil.setRandomExpires(key,result);
+            if (javaType != null) {
+                Object cached = redisUtil.get(key, javaType);
+                if (cached != null && !redisUtil.getNilValue().equals(cached)) return cached;
             }
-            else redisUtil.set(key);
-            return result;
+            return proceedAndCache(joinPoint, key, redisUtil);
         } finally {
             unLock(key,value);
         }
     }
+    default Object executeWithLock(ProceedingJoinPoint joinPoint, String key, RedisUtil redisUtil) throws Throwable {
+        String value = UUID.randomUUID().toString();
+        tryLock(key,value);
+        try {
+            return proceedAndCache(joinPoint, key, redisUtil);
+        } finally {
+            unLock(key,value);
+        }
+    }
+
+    //执行原方法并回写缓存,空结果写入空值占位
+    private Object proceedAndCache(ProceedingJoinPoint joinPoint, String key, RedisUtil redisUtil) throws Throwable {
+        Object result = joinPoint.proceed();
+        if (result != null) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        redisUtil.setRandomExpires(key,result);
+                    }
+                });
+            } else redisUtil.setRandomExpires(key,result);
+        }
+        else redisUtil.set(key);
+        return result;
+    }
 
 }
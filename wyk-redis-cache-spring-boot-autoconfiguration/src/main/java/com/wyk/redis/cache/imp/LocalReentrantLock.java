@@ -5,6 +5,7 @@ import com.wyk.redis.exception.CustomizeException;
 import com.wyk.redis.RedisProperties;
 import com.wyk.redis.cache.CacheLock;
 import com.wyk.redis.cache.Status;
+import com.wyk.redis.metrics.CacheMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -21,19 +22,48 @@ public class LocalReentrantLock implements CacheLock {
     private static final Logger log = LoggerFactory.getLogger(LocalReentrantLock.class);
 
     private final Long localLockTimeOut;
+    private final CacheMetrics metrics;
+    private final String name;
 
     public LocalReentrantLock(Long localLockTimeOut) {
+        this(localLockTimeOut, CacheMetrics.NOOP);
+    }
+
+    public LocalReentrantLock(Long localLockTimeOut, CacheMetrics metrics) {
+        this(localLockTimeOut, metrics, "defaultLocalReentrant");
+    }
+
+    //name为等待锁指标中的锁名称
+    public LocalReentrantLock(Long localLockTimeOut, CacheMetrics metrics, String name) {
         this.localLockTimeOut = localLockTimeOut;
+        this.metrics = metrics == null ? CacheMetrics.NOOP : metrics;
+        this.name = name;
     }
 
     @Override
     public void tryLock(String key, String value) throws InterruptedException {
-        AtomicReference<ReentrantLock> lockRef = localLock
-                .computeIfAbsent(key, k -> new AtomicReference<>(new ReentrantLock()));
-        ReentrantLock lock = lockRef.get();
-        if (lock != null && lock.tryLock(localLockTimeOut, TimeUnit.SECONDS)) {
-            log.debug("本地锁获取成功,key: {},value: {}",key,value);
-        } else {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(localLockTimeOut);
+        while (true) {
+            AtomicReference<ReentrantLock> lockRef = localLock
+                    .computeIfAbsent(key, k -> new AtomicReference<>(new ReentrantLock()));
+            ReentrantLock lock = lockRef.get();
+            //锁已被清理,移除旧引用后重新获取,避免清理竞争导致直接失败
+            if (lock == null) {
+                localLock.remove(key, lockRef);
+                continue;
+            }
+            if (lock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                //等待期间锁可能已被清理,持有的是旧锁时释放重试
+                if (lockRef.get() == lock && localLock.get(key) == lockRef) {
+                    metrics.lockWait(name, System.nanoTime() - start, true);
+                    log.debug("本地锁获取成功,key: {},value: {}",key,value);
+                    return;
+                }
+                lock.unlock();
+                continue;
+            }
+            metrics.lockWait(name, System.nanoTime() - start, false);
             log.debug("本地锁获取失败,key: {},value: {}",key,value);
             throw CustomizeException.conflict("服务器繁忙,请稍后重试");
         }
@@ -47,6 +77,11 @@ public class LocalReentrantLock implements CacheLock {
         safeCleanLock(key,lockRef,lock);
     }
 
+    //当前存在的本地锁数量
+    public static int getLockCount() {
+        return localLock.size();
+    }
+
     private void safeCleanLock(String key, AtomicReference<ReentrantLock> lockRef, ReentrantLock lock) {
 
         if (!lock.hasQueuedThreads()) {
@@ -3,24 +3,37 @@ package com.wyk.redis.cache.imp;
 import com.wyk.redis.exception.CustomizeException;
 import com.wyk.redis.cache.CacheLock;
 import com.wyk.redis.cache.Status;
+import com.wyk.redis.metrics.CacheMetrics;
 import com.wyk.redis.util.RedisUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.TimeUnit;
+
 public class RedisLock implements CacheLock {
 
     private static final Logger log = LoggerFactory.getLogger(RedisLock.class);
 
     private final Long distributedLockTimeOut;
     private final RedisUtil redisUtil;
+    private final CacheMetrics metrics;
 
     public RedisLock(Long distributedLockTimeOut,RedisUtil redisUtil) {
+        this(distributedLockTimeOut, redisUtil, CacheMetrics.NOOP);
+    }
+
+    public RedisLock(Long distributedLockTimeOut,RedisUtil redisUtil,CacheMetrics metrics) {
         this.distributedLockTimeOut = distributedLockTimeOut;
         this.redisUtil = redisUtil;
+        this.metrics = metrics == null ? CacheMetrics.NOOP : metrics;
     }
     @Override
-    public void tryLock(String key, String value) {
-        boolean b = redisUtil.setDistributedLock(key, value, distributedLockTimeOut);
+    public void tryLock(String key, String value) throws InterruptedException {
+        //未抢到锁时在锁超时时间内退避等待,超时才失败
+        long start = System.nanoTime();
+        boolean b = redisUtil.setDistributedLock(key, value, distributedLockTimeOut,
+                TimeUnit.SECONDS.toMillis(distributedLockTimeOut));
+        metrics.lockWait("defaultRedis", System.nanoTime() - start, b);
         if (b) {
             log.debug("获取分布式锁成功,key: {},value: {}",key,value);
         } else {
@@ -0,0 +1,173 @@
+package com.wyk.redis.cache.imp;
+
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.wyk.redis.cache.CacheLock;
+import com.wyk.redis.cache.Status;
+import com.wyk.redis.exception.CustomizeException;
+import com.wyk.redis.util.RedisUtil;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/*
+  合并请求锁: 同一JVM内同一key的并发未命中共享一个加载Future,
+  跨节点时未抢到分布式锁的节点订阅加载完成消息后回读缓存,而不是直接失败
+  等待超时后最多重试MAX_ATTEMPTS次(重新抢锁或继续等待),仍未加载完成时抛出异常,不在锁外执行原方法
+  回读缓存需要返回值类型,只实现带JavaType的executeWithLock,不带类型时使用CacheLock的默认实现
+ */
+public class SingleFlightLock implements CacheLock, MessageListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SingleFlightLock.class);
+    private static final Object MISS = new Object();
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Void>> waiters = new ConcurrentHashMap<>();
+    private final Long distributedLockTimeOut;
+    private final RedisUtil redisUtil;
+    private final String channel;
+
+    public SingleFlightLock(Long distributedLockTimeOut, RedisUtil redisUtil, String channel) {
+        this.distributedLockTimeOut = distributedLockTimeOut;
+        this.redisUtil = redisUtil;
+        this.channel = channel;
+    }
+
+    @Override
+    public void tryLock(String key, String value) {
+        if (!redisUtil.setDistributedLock(key, value, distributedLockTimeOut)) {
+            throw new CustomizeException("获取分布式锁失败", Status.BAD_REQUEST.getCode());
+        }
+    }
+
+    @Override
+    public void unLock(String key, String value) {
+        if (!redisUtil.delDistributedLock(key, value)) {
+            log.warn("释放分布式锁失败,可能已经超时,key: {},value: {}", key, value);
+        }
+    }
+
+    @Override
+    public Object executeWithLock(ProceedingJoinPoint joinPoint, String key, JavaType javaType, RedisUtil redisUtil) throws Throwable {
+        if (javaType == null) throw CustomizeException.internalServerError("合并请求锁需要返回值类型");
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            log.debug("合并本地并发请求,key: {}", key);
+            return await(existing, key, javaType);
+        }
+        try {
+            Object result = load(joinPoint, key, javaType);
+            future.complete(result);
+            return result;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    //等待本地加载结果,超时后回读缓存,多次超时后失败
+    private Object await(CompletableFuture<Object> future, String key, JavaType javaType) throws Throwable {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return future.get(distributedLockTimeOut, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            } catch (TimeoutException e) {
+                Object cached = read(key, javaType);
+                if (cached != MISS) return cached;
+                if (attempt >= MAX_ATTEMPTS) throw timeout(key);
+                log.warn("等待本地合并请求超时,继续等待,key: {},次数: {}", key, attempt);
+            }
+        }
+    }
+
+    //跨节点加载: 抢到锁的节点加载并广播,其余节点订阅等待,超时后重新抢锁
+    private Object load(ProceedingJoinPoint joinPoint, String key, JavaType javaType) throws Throwable {
+        for (int attempt = 1; ; attempt++) {
+            String value = UUID.randomUUID().toString();
+            if (redisUtil.setDistributedLock(key, value, distributedLockTimeOut)) {
+                try {
+                    Object cached = read(key, javaType);
+                    if (cached != MISS) return cached;
+                    return loadAndSet(joinPoint, key);
+                } finally {
+                    unLock(key, value);
+                }
+            }
+            CompletableFuture<Void> signal = new CompletableFuture<>();
+            waiters.put(key, signal);
+            try {
+                //订阅后再检查一次,避免错过加载完成消息
+                Object cached = read(key, javaType);
+                if (cached != MISS) return cached;
+                signal.get(distributedLockTimeOut, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                log.warn("等待其他节点加载超时,key: {},次数: {}", key, attempt);
+            } finally {
+                waiters.remove(key, signal);
+            }
+            Object cached = read(key, javaType);
+            if (cached != MISS) return cached;
+            if (attempt >= MAX_ATTEMPTS) throw timeout(key);
+        }
+    }
+
+    private static CustomizeException timeout(String key) {
+        return new CustomizeException("等待缓存加载超时: " + key, Status.BAD_REQUEST.getCode());
+    }
+
+    //执行原方法,写入缓存后广播加载完成
+    private Object loadAndSet(ProceedingJoinPoint joinPoint, String key) throws Throwable {
+        Object result = joinPoint.proceed();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    setAndPublish(key, result);
+                }
+            });
+        } else setAndPublish(key, result);
+        return result;
+    }
+
+    private void setAndPublish(String key, Object result) {
+        if (result != null) redisUtil.setRandomExpires(key, result);
+        else redisUtil.set(key);
+        redisUtil.publish(channel, key);
+    }
+
+    //回读缓存,空值占位视为null结果
+    private Object read(String key, JavaType javaType) {
+        Object object = redisUtil.get(key, javaType);
+        if (object == null) return MISS;
+        return redisUtil.getNilValue().equals(object) ? null : object;
+    }
+
+    //接收加载完成消息
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        CompletableFuture<Void> signal = waiters.get(key);
+        if (signal != null) {
+            signal.complete(null);
+            log.debug("收到缓存加载完成消息: {}", key);
+        }
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+}
@@ -0,0 +1,70 @@
+package com.wyk.redis.cache.imp;
+
+
+import com.wyk.redis.cache.CacheLock;
+import com.wyk.redis.exception.CustomizeException;
+import com.wyk.redis.metrics.CacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+  分段本地锁: 固定2的幂数量的ReentrantLock按key哈希取段,
+  加解锁不分配对象也不维护锁表,不同key落在同一段时共享等待,获取锁后由模板方法回读缓存
+ */
+public class StripedLock implements CacheLock {
+
+    private static final Logger log = LoggerFactory.getLogger(StripedLock.class);
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+    private final Long localLockTimeOut;
+    private final CacheMetrics metrics;
+
+    public StripedLock(Integer stripes, Long localLockTimeOut) {
+        this(stripes, localLockTimeOut, CacheMetrics.NOOP);
+    }
+
+    //stripes不大于0时按cpu核数*16,向上取整为2的幂
+    public StripedLock(Integer stripes, Long localLockTimeOut, CacheMetrics metrics) {
+        int size = stripes == null || stripes <= 0 ? Runtime.getRuntime().availableProcessors() * 16 : stripes;
+        size = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) locks[i] = new ReentrantLock();
+        this.mask = size - 1;
+        this.localLockTimeOut = localLockTimeOut;
+        this.metrics = metrics == null ? CacheMetrics.NOOP : metrics;
+    }
+
+    @Override
+    public void tryLock(String key, String value) throws InterruptedException {
+        long start = System.nanoTime();
+        boolean acquired = stripe(key).tryLock(localLockTimeOut, TimeUnit.SECONDS);
+        metrics.lockWait("defaultStriped", System.nanoTime() - start, acquired);
+        if (acquired) {
+            log.debug("分段锁获取成功,key: {},value: {}", key, value);
+        } else {
+            log.debug("分段锁获取失败,key: {},value: {}", key, value);
+            throw CustomizeException.conflict("服务器繁忙,请稍后重试");
+        }
+    }
+
+    @Override
+    public void unLock(String key, String value) {
+        ReentrantLock lock = stripe(key);
+        if (lock.isHeldByCurrentThread()) lock.unlock();
+        else log.warn("当前线程未持有分段锁,key: {},value: {}", key, value);
+    }
+
+    public int getStripes() {
+        return locks.length;
+    }
+
+    //高位扰动后取段,避免相近hash集中在少数段
+    private ReentrantLock stripe(String key) {
+        int h = key.hashCode();
+        return locks[(h ^ (h >>> 16)) & mask];
+    }
+}
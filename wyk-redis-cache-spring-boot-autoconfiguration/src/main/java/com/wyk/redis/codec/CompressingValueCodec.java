@@ -0,0 +1,59 @@
+package com.wyk.redis.codec;
+
+import com.fasterxml.jackson.databind.JavaType;
+
+import java.util.Arrays;
+
+/*
+  压缩装饰: 编码结果超过阈值且压缩有收益时写入魔数头+压缩数据,否则原样写入内部codec的编码结果
+  读取时有魔数头才解压,没有魔数头的数据(未压缩或开启压缩前写入的旧数据)直接交给内部codec,开启压缩无需清空缓存
+  魔数以0x00开头,json、smile与jdk序列化结果都不会以0x00开头,不会与原文冲突
+ */
+public class CompressingValueCodec implements ValueCodec {
+
+    private static final byte[] MAGIC = {0x00, 'W', 'Y', 'K', 'Z'};
+
+    private final ValueCodec delegate;
+    private final Compressor compressor;
+    private final int threshold;
+
+    public CompressingValueCodec(ValueCodec delegate, Compressor compressor, Integer threshold) {
+        this.delegate = delegate;
+        this.compressor = compressor;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        byte[] bytes = delegate.encode(value);
+        if (bytes.length >= threshold) {
+            byte[] compressed = compressor.compress(bytes);
+            //压缩无收益时保留原文
+            if (compressed.length + MAGIC.length < bytes.length) return withMagic(compressed);
+        }
+        return bytes;
+    }
+
+    @Override
+    public Object decode(byte[] bytes, JavaType javaType) {
+        if (!isCompressed(bytes)) return delegate.decode(bytes, javaType);
+        return delegate.decode(compressor.decompress(Arrays.copyOfRange(bytes, MAGIC.length, bytes.length)), javaType);
+    }
+
+    private static boolean isCompressed(byte[] bytes) {
+        return bytes.length > MAGIC.length && Arrays.equals(bytes, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    private static byte[] withMagic(byte[] body) {
+        byte[] result = new byte[body.length + MAGIC.length];
+        System.arraycopy(MAGIC, 0, result, 0, MAGIC.length);
+        System.arraycopy(body, 0, result, MAGIC.length, body.length);
+        return result;
+    }
+
+    public interface Compressor {
+        byte[] compress(byte[] bytes);
+
+        byte[] decompress(byte[] bytes);
+    }
+}
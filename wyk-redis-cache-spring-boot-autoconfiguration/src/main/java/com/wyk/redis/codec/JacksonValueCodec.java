@@ -0,0 +1,53 @@
+package com.wyk.redis.codec;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+  Jackson编解码: 按JavaType缓存ObjectReader,字节直接反序列化为目标类型,不写入@class类型信息
+  传入Smile等二进制格式的ObjectMapper即可得到紧凑的二进制编码
+ */
+public class JacksonValueCodec implements ValueCodec {
+
+    private final ObjectWriter writer;
+    private final ObjectReader untypedReader;
+    private final ObjectMapper objectMapper;
+    private final Map<JavaType, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    public JacksonValueCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.writer = objectMapper.writer();
+        this.untypedReader = objectMapper.readerFor(Object.class);
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        try {
+            return writer.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new SerializationException("缓存值序列化失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Object decode(byte[] bytes, JavaType javaType) {
+        return decode(bytes, 0, bytes.length, javaType);
+    }
+
+    @Override
+    public Object decode(byte[] bytes, int offset, int length, JavaType javaType) {
+        ObjectReader reader = javaType == null ? untypedReader : readers.computeIfAbsent(javaType, objectMapper::readerFor);
+        try {
+            return reader.readValue(bytes, offset, length);
+        } catch (IOException e) {
+            throw new SerializationException("缓存值反序列化失败: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.wyk.redis.codec;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import java.nio.ByteBuffer;
+
+/*
+  LZ4压缩,需引入org.lz4:lz4-java,压缩结果前4字节为原始长度
+ */
+public class Lz4Compressor implements CompressingValueCodec.Compressor {
+
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        byte[] result = new byte[Integer.BYTES + compressor.maxCompressedLength(bytes.length)];
+        ByteBuffer.wrap(result).putInt(bytes.length);
+        int length = compressor.compress(bytes, 0, bytes.length, result, Integer.BYTES);
+        byte[] trimmed = new byte[Integer.BYTES + length];
+        System.arraycopy(result, 0, trimmed, 0, trimmed.length);
+        return trimmed;
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        int length = ByteBuffer.wrap(bytes).getInt();
+        byte[] result = new byte[length];
+        decompressor.decompress(bytes, Integer.BYTES, result, 0, length);
+        return result;
+    }
+}
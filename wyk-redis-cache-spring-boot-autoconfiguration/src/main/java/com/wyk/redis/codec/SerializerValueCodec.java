@@ -0,0 +1,31 @@
+package com.wyk.redis.codec;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/*
+  默认编解码: 沿用RedisTemplate的值序列化器,读取后再convertValue为目标类型,兼容已有缓存数据
+ */
+public class SerializerValueCodec implements ValueCodec {
+
+    private final RedisSerializer<Object> serializer;
+    private final ObjectMapper objectMapper;
+
+    public SerializerValueCodec(RedisSerializer<Object> serializer, ObjectMapper objectMapper) {
+        this.serializer = serializer;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return serializer.serialize(value);
+    }
+
+    @Override
+    public Object decode(byte[] bytes, JavaType javaType) {
+        Object object = serializer.deserialize(bytes);
+        if (object == null || javaType == null) return object;
+        return objectMapper.convertValue(object, javaType);
+    }
+}
@@ -0,0 +1,14 @@
+package com.wyk.redis.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/*
+  Smile二进制编码,沿用ObjectMapper的模块与配置,需引入jackson-dataformat-smile
+ */
+public class SmileValueCodec extends JacksonValueCodec {
+
+    public SmileValueCodec(ObjectMapper objectMapper) {
+        super(objectMapper.copyWith(new SmileFactory()));
+    }
+}
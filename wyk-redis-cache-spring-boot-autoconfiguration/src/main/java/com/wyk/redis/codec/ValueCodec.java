@@ -0,0 +1,22 @@
+package com.wyk.redis.codec;
+
+import com.fasterxml.jackson.databind.JavaType;
+
+import java.util.Arrays;
+
+/*
+  缓存值编解码: 按方法返回值的JavaType直接从字节反序列化为目标类型
+ */
+public interface ValueCodec {
+
+    byte[] encode(Object value);
+
+    //javaType为null时按无类型解析
+    Object decode(byte[] bytes, JavaType javaType);
+
+    //从字节区间解析,避免调用方截取数组
+    default Object decode(byte[] bytes, int offset, int length, JavaType javaType) {
+        if (offset == 0 && length == bytes.length) return decode(bytes, javaType);
+        return decode(Arrays.copyOfRange(bytes, offset, offset + length), javaType);
+    }
+}
@@ -0,0 +1,202 @@
+package com.wyk.redis.endpoint;
+
+
+import com.wyk.redis.cache.imp.LocalReentrantLock;
+import com.wyk.redis.exception.CustomizeException;
+import com.wyk.redis.metrics.CacheMetrics;
+import com.wyk.redis.util.BloomFilter;
+import com.wyk.redis.util.BloomFilterPreloadRunner;
+import com.wyk.redis.util.HotKeyCache;
+import com.wyk.redis.util.HotKeyDetector;
+import com.wyk.redis.util.LeaseManager;
+import com.wyk.redis.util.NearCache;
+import com.wyk.redis.util.RedisUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+  缓存运维端点 /actuator/wykcache:
+  GET 查看热点key与频率、锁与看门狗租约数量、布隆过滤器状态、各前缀命中率
+  POST /actuator/wykcache/{action} 执行操作,action为:
+  evict(key)          删除指定key及本地副本
+  evictPrefix(prefix) 按注解value删除全部key,本节点本地副本清空
+  upgrade(key)        手动热点升级
+  downgrade(key)      手动热点降级,到下次衰减前不再自动升级
+  rebuildBloom        重新执行预加载器重建布隆过滤器,期间查询不受影响
+  redis中的数据全局生效,热点、布隆过滤器与本地副本只作用于当前节点,多节点需逐个节点执行
+ */
+@Endpoint(id = "wykcache")
+public class CacheEndpoint {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheEndpoint.class);
+
+    private final ObjectProvider<RedisUtil> redisUtil;
+    private final ObjectProvider<HotKeyDetector> hotKeyDetector;
+    private final ObjectProvider<HotKeyCache> hotKeyCache;
+    private final ObjectProvider<NearCache> nearCache;
+    private final ObjectProvider<BloomFilter> bloomFilter;
+    private final ObjectProvider<BloomFilterPreloadRunner> preloadRunner;
+    private final ObjectProvider<CacheMetrics> metrics;
+
+    public CacheEndpoint(ObjectProvider<RedisUtil> redisUtil,
+                         ObjectProvider<HotKeyDetector> hotKeyDetector,
+                         ObjectProvider<HotKeyCache> hotKeyCache,
+                         ObjectProvider<NearCache> nearCache,
+                         ObjectProvider<BloomFilter> bloomFilter,
+                         ObjectProvider<BloomFilterPreloadRunner> preloadRunner,
+                         ObjectProvider<CacheMetrics> metrics) {
+        this.redisUtil = redisUtil;
+        this.hotKeyDetector = hotKeyDetector;
+        this.hotKeyCache = hotKeyCache;
+        this.nearCache = nearCache;
+        this.bloomFilter = bloomFilter;
+        this.preloadRunner = preloadRunner;
+        this.metrics = metrics;
+    }
+
+    @ReadOperation
+    public Map<String, Object> info() {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("hotspot", hotspot());
+        info.put("locks", locks());
+        info.put("bloom", bloom());
+        info.put("hitRatio", hitRatio());
+        Map<String, Object> local = new LinkedHashMap<>();
+        nearCache.ifAvailable(cache -> local.put("nearCache", cache.size()));
+        hotKeyCache.ifAvailable(cache -> local.put("hotKeyCache", cache.size()));
+        info.put("localCache", local);
+        return info;
+    }
+
+    @WriteOperation
+    public Map<String, Object> operate(@Selector String action, @Nullable String key, @Nullable String prefix) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("action", action);
+        switch (action) {
+            case "evict" -> {
+                String target = required(key, "key");
+                redisUtil.getObject().remove(target);
+                nearCache.ifAvailable(cache -> cache.invalidate(target));
+                hotKeyCache.ifAvailable(cache -> cache.invalidate(target));
+                result.put("key", target);
+            }
+            case "evictPrefix" -> result.put("removed", evictPrefix(required(prefix, "prefix")));
+            case "upgrade" -> {
+                String target = required(key, "key");
+                detector().forceUpgrade(target);
+                result.put("key", target);
+            }
+            case "downgrade" -> {
+                String target = required(key, "key");
+                detector().forceDowngrade(target);
+                result.put("key", target);
+            }
+            case "rebuildBloom" -> result.put("count", rebuildBloom());
+            default -> throw CustomizeException.badRequest("不支持的操作: " + action);
+        }
+        log.info("缓存运维操作完成: {}", result);
+        return result;
+    }
+
+    private Map<String, Object> hotspot() {
+        Map<String, Object> hotspot = new LinkedHashMap<>();
+        HotKeyDetector detector = hotKeyDetector.getIfAvailable();
+        if (detector == null) return hotspot;
+        hotspot.put("hotKeys", detector.getHotKeys());
+        hotspot.put("candidates", detector.getTopK());
+        return hotspot;
+    }
+
+    private Map<String, Object> locks() {
+        Map<String, Object> locks = new LinkedHashMap<>();
+        locks.put("localReentrant", LocalReentrantLock.getLockCount());
+        RedisUtil util = redisUtil.getIfAvailable();
+        LeaseManager leaseManager = util == null ? null : util.getLeaseManager();
+        if (leaseManager != null) {
+            Map<String, Object> watchdog = new LinkedHashMap<>();
+            watchdog.put("leases", leaseManager.getLeaseCount());
+            watchdog.put("renewed", leaseManager.getRenewedCount());
+            watchdog.put("lost", leaseManager.getLostCount());
+            watchdog.put("lastLagMillis", leaseManager.getLastLagMillis());
+            watchdog.put("maxLagMillis", leaseManager.getMaxLagMillis());
+            locks.put("watchdog", watchdog);
+        }
+        return locks;
+    }
+
+    private Map<String, Object> bloom() {
+        Map<String, Object> bloom = new LinkedHashMap<>();
+        BloomFilter filter = bloomFilter.getIfAvailable();
+        if (filter == null) return bloom;
+        bloom.put("type", filter.getType());
+        bloom.put("approximateCount", filter.getApproximateCount());
+        bloom.put("fillRatio", filter.getFillRatio());
+        bloom.put("estimatedFpp", filter.getEstimatedFpp());
+        return bloom;
+    }
+
+    //各前缀命中率,nil与命中均视为命中,布隆拦截不计入
+    private Map<String, Object> hitRatio() {
+        Map<String, Object> ratios = new LinkedHashMap<>();
+        CacheMetrics cacheMetrics = metrics.getIfAvailable(() -> CacheMetrics.NOOP);
+        cacheMetrics.requestCounts().forEach((cache, counts) -> {
+            long hit = counts.getOrDefault(CacheMetrics.HIT, 0L) + counts.getOrDefault(CacheMetrics.NIL, 0L);
+            long total = hit + counts.getOrDefault(CacheMetrics.MISS, 0L);
+            Map<String, Object> entry = new LinkedHashMap<>(counts);
+            entry.put("ratio", total == 0 ? 0D : (double) hit / total);
+            ratios.put(cache, entry);
+        });
+        return ratios;
+    }
+
+    //两种注解的key格式: @RedisInterface为value::md5(key),@RedisCache为参数:md5(value),热点副本追加#序号
+    private long evictPrefix(String prefix) {
+        RedisUtil util = redisUtil.getObject();
+        String digest = DigestUtils.md5DigestAsHex(prefix.getBytes(StandardCharsets.UTF_8));
+        long removed = util.removeByPattern(escape(prefix) + "::*")
+                + util.removeByPattern("*:" + digest)
+                + util.removeByPattern("*:" + digest + "#*");
+        nearCache.ifAvailable(NearCache::invalidateAll);
+        hotKeyCache.ifAvailable(HotKeyCache::invalidateAll);
+        return removed;
+    }
+
+    private long rebuildBloom() {
+        BloomFilterPreloadRunner runner = preloadRunner.getIfAvailable();
+        if (runner == null) throw CustomizeException.badRequest("未启用布隆过滤器或未配置BloomFilterPreloader");
+        try {
+            return runner.rebuild();
+        } catch (CustomizeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw CustomizeException.internalServerError("布隆过滤器重建失败", e);
+        }
+    }
+
+    private HotKeyDetector detector() {
+        HotKeyDetector detector = hotKeyDetector.getIfAvailable();
+        if (detector == null) throw CustomizeException.badRequest("未启用热点检测");
+        return detector;
+    }
+
+    private static String required(String value, String name) {
+        if (value == null || value.isBlank()) throw CustomizeException.badRequest("缺少参数: " + name);
+        return value;
+    }
+
+    //转义glob特殊字符
+    private static String escape(String value) {
+        return value.replaceAll("([*?\\[\\]\\\\])", "\\\\$1");
+    }
+}
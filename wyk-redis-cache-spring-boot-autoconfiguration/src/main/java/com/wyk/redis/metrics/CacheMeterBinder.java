@@ -0,0 +1,75 @@
+package com.wyk.redis.metrics;
+
+
+import com.wyk.redis.util.BloomFilter;
+import com.wyk.redis.util.CacheRefresher;
+import com.wyk.redis.util.HotKeyCache;
+import com.wyk.redis.util.HotKeyDetector;
+import com.wyk.redis.util.LeaseManager;
+import com.wyk.redis.util.NearCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+
+/*
+  状态类指标: 布隆过滤器填充率与估算误判率、热点数量、本地缓存与刷新队列大小、看门狗租约数与续期延迟,
+  由Actuator在MeterRegistry就绪后绑定,未启用的组件不注册
+ */
+public class CacheMeterBinder implements MeterBinder {
+
+    private final ObjectProvider<BloomFilter> bloomFilter;
+    private final ObjectProvider<HotKeyDetector> hotKeyDetector;
+    private final ObjectProvider<HotKeyCache> hotKeyCache;
+    private final ObjectProvider<NearCache> nearCache;
+    private final ObjectProvider<CacheRefresher> cacheRefresher;
+    private final ObjectProvider<LeaseManager> leaseManager;
+
+    public CacheMeterBinder(ObjectProvider<BloomFilter> bloomFilter,
+                            ObjectProvider<HotKeyDetector> hotKeyDetector,
+                            ObjectProvider<HotKeyCache> hotKeyCache,
+                            ObjectProvider<NearCache> nearCache,
+                            ObjectProvider<CacheRefresher> cacheRefresher,
+                            ObjectProvider<LeaseManager> leaseManager) {
+        this.bloomFilter = bloomFilter;
+        this.hotKeyDetector = hotKeyDetector;
+        this.hotKeyCache = hotKeyCache;
+        this.nearCache = nearCache;
+        this.cacheRefresher = cacheRefresher;
+        this.leaseManager = leaseManager;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bloomFilter.ifAvailable(filter -> {
+            Gauge.builder("wyk.cache.bloom.fill.ratio", filter, BloomFilter::getFillRatio)
+                    .tag("type", filter.getType()).register(registry);
+            Gauge.builder("wyk.cache.bloom.fpp", filter, BloomFilter::getEstimatedFpp)
+                    .tag("type", filter.getType()).register(registry);
+            Gauge.builder("wyk.cache.bloom.count", filter, BloomFilter::getApproximateCount)
+                    .tag("type", filter.getType()).register(registry);
+        });
+        hotKeyDetector.ifAvailable(detector -> {
+            Gauge.builder("wyk.cache.hotspot.keys", detector, HotKeyDetector::getHotCount).register(registry);
+            Gauge.builder("wyk.cache.hotspot.candidates", detector, HotKeyDetector::getCandidateCount).register(registry);
+        });
+        hotKeyCache.ifAvailable(cache ->
+                Gauge.builder("wyk.cache.hotspot.local.size", cache, HotKeyCache::size).register(registry));
+        nearCache.ifAvailable(cache ->
+                Gauge.builder("wyk.cache.near.size", cache, NearCache::size).register(registry));
+        cacheRefresher.ifAvailable(refresher ->
+                Gauge.builder("wyk.cache.refresh.queue", refresher, CacheRefresher::getQueueSize).register(registry));
+        leaseManager.ifAvailable(manager -> {
+            Gauge.builder("wyk.cache.lease.count", manager, LeaseManager::getLeaseCount).register(registry);
+            Gauge.builder("wyk.cache.lease.lag", manager, LeaseManager::getLastLagMillis)
+                    .baseUnit("milliseconds").register(registry);
+            Gauge.builder("wyk.cache.lease.lag.max", manager, LeaseManager::getMaxLagMillis)
+                    .baseUnit("milliseconds").register(registry);
+            Gauge.builder("wyk.cache.lease.tick.cost", manager, LeaseManager::getLastTickCostMillis)
+                    .baseUnit("milliseconds").register(registry);
+            FunctionCounter.builder("wyk.cache.lease.renewed", manager, LeaseManager::getRenewedCount).register(registry);
+            FunctionCounter.builder("wyk.cache.lease.lost", manager, LeaseManager::getLostCount).register(registry);
+        });
+    }
+}
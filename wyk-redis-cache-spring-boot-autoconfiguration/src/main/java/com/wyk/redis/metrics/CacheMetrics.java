@@ -0,0 +1,43 @@
+package com.wyk.redis.metrics;
+
+
+import java.util.Map;
+
+/*
+  缓存指标: 切面、锁与编码在各阶段回调,未引入micrometer时使用NOOP,不产生任何开销
+ */
+public interface CacheMetrics {
+
+    CacheMetrics NOOP = new CacheMetrics() {};
+
+    String HIT = "hit"; //缓存命中
+    String NIL = "nil"; //空值占位命中
+    String MISS = "miss"; //未命中
+    String BLOOM_REJECT = "bloom_reject"; //布隆过滤器拦截
+
+    //是否启用,未启用时调用方可跳过计时
+    default boolean isEnabled() {
+        return false;
+    }
+
+    //查询结果,cache为注解value,method为类名.方法名
+    default void request(String cache, String method, String result) {
+    }
+
+    //未命中时执行原方法的耗时
+    default void load(String cache, String method, long nanos, boolean success) {
+    }
+
+    //等待锁的耗时,acquired为false表示超时失败
+    default void lockWait(String lock, long nanos, boolean acquired) {
+    }
+
+    //值编码耗时,operation为encode或decode
+    default void codec(String operation, long nanos) {
+    }
+
+    //按cache汇总的各查询结果累计次数,未启用时为空
+    default Map<String, Map<String, Long>> requestCounts() {
+        return Map.of();
+    }
+}
@@ -0,0 +1,49 @@
+package com.wyk.redis.metrics;
+
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.wyk.redis.codec.ValueCodec;
+
+/*
+  编码计时装饰器: 记录每次编码与解码的耗时
+ */
+public class MeteredValueCodec implements ValueCodec {
+
+    private final ValueCodec delegate;
+    private final CacheMetrics metrics;
+
+    public MeteredValueCodec(ValueCodec delegate, CacheMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        long start = System.nanoTime();
+        try {
+            return delegate.encode(value);
+        } finally {
+            metrics.codec("encode", System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Object decode(byte[] bytes, JavaType javaType) {
+        long start = System.nanoTime();
+        try {
+            return delegate.decode(bytes, javaType);
+        } finally {
+            metrics.codec("decode", System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Object decode(byte[] bytes, int offset, int length, JavaType javaType) {
+        long start = System.nanoTime();
+        try {
+            return delegate.decode(bytes, offset, length, javaType);
+        } finally {
+            metrics.codec("decode", System.nanoTime() - start);
+        }
+    }
+}
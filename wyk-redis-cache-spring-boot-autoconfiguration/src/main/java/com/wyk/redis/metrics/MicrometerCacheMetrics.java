@@ -0,0 +1,70 @@
+package com.wyk.redis.metrics;
+
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+  Micrometer指标实现:
+  wyk.cache.requests   计数,标签cache/method/result(hit、nil、miss、bloom_reject)
+  wyk.cache.load       计时,标签cache/method/outcome,未命中时原方法耗时
+  wyk.cache.lock.wait  计时,标签lock/result(acquired、timeout),等待锁耗时与失败次数
+  wyk.cache.codec      计时,标签operation(encode、decode)
+ */
+public class MicrometerCacheMetrics implements CacheMetrics {
+
+    private final MeterRegistry registry;
+    private final Timer encode;
+    private final Timer decode;
+
+    public MicrometerCacheMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.encode = registry.timer("wyk.cache.codec", "operation", "encode");
+        this.decode = registry.timer("wyk.cache.codec", "operation", "decode");
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void request(String cache, String method, String result) {
+        registry.counter("wyk.cache.requests", "cache", cache, "method", method, "result", result).increment();
+    }
+
+    @Override
+    public void load(String cache, String method, long nanos, boolean success) {
+        registry.timer("wyk.cache.load", "cache", cache, "method", method, "outcome", success ? "success" : "error")
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void lockWait(String lock, long nanos, boolean acquired) {
+        registry.timer("wyk.cache.lock.wait", "lock", lock, "result", acquired ? "acquired" : "timeout")
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void codec(String operation, long nanos) {
+        ("encode".equals(operation) ? encode : decode).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> requestCounts() {
+        Map<String, Map<String, Long>> counts = new TreeMap<>();
+        for (Counter counter : registry.find("wyk.cache.requests").counters()) {
+            String cache = counter.getId().getTag("cache");
+            String result = counter.getId().getTag("result");
+            if (cache == null || result == null) continue;
+            counts.computeIfAbsent(cache, k -> new TreeMap<>())
+                    .merge(result, (long) counter.count(), Long::sum);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,183 @@
+package com.wyk.redis.util;
+
+
+import com.wyk.redis.exception.CustomizeException;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+  布隆过滤器公共哈希: MurmurHash3 x64_128,按UTF-16字符或long直接计算,不生成中间数组
+ */
+public abstract class AbstractBloomFilter implements BloomFilter {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    protected static final int PUT = 0;
+    protected static final int CONTAINS = 1;
+    protected static final int REMOVE = 2;
+
+    //重建中的新过滤器,写入与删除同时作用于新旧两份,查询仍使用旧数据
+    private volatile AbstractBloomFilter rebuilding;
+    private final ReentrantReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+
+    @Override
+    public void put(CharSequence key) {
+        hash(key, PUT);
+    }
+
+    @Override
+    public void put(long key) {
+        hash(key, PUT);
+    }
+
+    @Override
+    public boolean mightContain(CharSequence key) {
+        return hash(key, CONTAINS);
+    }
+
+    @Override
+    public boolean mightContain(long key) {
+        return hash(key, CONTAINS);
+    }
+
+    @Override
+    public boolean remove(CharSequence key) {
+        return hash(key, REMOVE);
+    }
+
+    @Override
+    public boolean remove(long key) {
+        return hash(key, REMOVE);
+    }
+
+    @Override
+    public void beginRebuild() {
+        rebuildLock.writeLock().lock();
+        try {
+            if (rebuilding != null) throw CustomizeException.conflict("布隆过滤器正在重建");
+            rebuilding = emptyCopy();
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+    }
+
+    //替换为新过滤器的数据,与重建期间的双写互斥,替换后不再双写
+    @Override
+    public void completeRebuild() {
+        rebuildLock.writeLock().lock();
+        try {
+            AbstractBloomFilter target = rebuilding;
+            if (target == null) return;
+            replaceWith(target);
+            rebuilding = null;
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void abortRebuild() {
+        rebuildLock.writeLock().lock();
+        try {
+            rebuilding = null;
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+    }
+
+    //按两个64位哈希值执行具体操作,探测位置为hash1 + i * hash2
+    protected abstract boolean apply(long hash1, long hash2, int operation);
+
+    //相同参数的空过滤器,用于重建
+    protected abstract AbstractBloomFilter emptyCopy();
+
+    //用重建完成的过滤器数据替换当前数据
+    protected abstract void replaceWith(AbstractBloomFilter source);
+
+    //MurmurHash3 x64_128,按UTF-16字符每8个(16字节)一块直接读取,不生成中间数组
+    private boolean hash(CharSequence key, int operation) {
+        int length = key.length();
+        long h1 = 0, h2 = 0;
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            long k1 = chars(key, i, 4);
+            long k2 = chars(key, i + 4, 4);
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        int remaining = length - i;
+        if (remaining > 4) h2 ^= mixK2(chars(key, i + 4, remaining - 4));
+        if (remaining > 0) h1 ^= mixK1(chars(key, i, Math.min(remaining, 4)));
+        return finish(h1, h2, (long) length * 2, operation);
+    }
+
+    //long按8字节小端作为尾块处理
+    private boolean hash(long key, int operation) {
+        return finish(mixK1(key), 0, Long.BYTES, operation);
+    }
+
+    private boolean finish(long h1, long h2, long length, int operation) {
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        //h2取奇数,保证在2的幂长度上探测序列不重复
+        h2 |= 1;
+        return dispatch(h1, h2, operation);
+    }
+
+    //未重建时直接执行;重建中写入与删除同时作用于新过滤器
+    private boolean dispatch(long h1, long h2, int operation) {
+        if (operation == CONTAINS || rebuilding == null) return apply(h1, h2, operation);
+        rebuildLock.readLock().lock();
+        try {
+            AbstractBloomFilter target = rebuilding;
+            if (target != null) target.apply(h1, h2, operation);
+            return apply(h1, h2, operation);
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    private static long chars(CharSequence key, int from, int count) {
+        long k = 0;
+        for (int j = 0; j < count; j++) {
+            k |= (long) key.charAt(from + j) << (j * 16);
+        }
+        return k;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        return k2;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
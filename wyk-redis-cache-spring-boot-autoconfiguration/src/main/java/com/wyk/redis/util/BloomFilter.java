@@ -1,108 +1,78 @@
 package com.wyk.redis.util;
 
 
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
-import java.util.concurrent.atomic.AtomicLongArray;
+import com.wyk.redis.exception.CustomizeException;
 
-public class BloomFilter {
+/*
+  布隆过滤器: 默认实现为可扩容的ScalableBloomFilter,需要删除时使用CountingBloomFilter
+ */
+public interface BloomFilter {
 
+    //增加
+    void put(CharSequence key);
+
+    void put(long key);
+
+    //验证
+    boolean mightContain(CharSequence key);
 
-    private final AtomicLongArray atomic;
-    private final int size;
-    private final int hashCount;
+    boolean mightContain(long key);
 
-    public BloomFilter(AtomicLongArray atomic, int size, int hashCount) {
-        this.atomic = atomic;
-        this.size = size;
-        this.hashCount = hashCount;
+    //删除,不支持删除的实现返回false
+    default boolean remove(CharSequence key) {
+        return false;
     }
 
-    //增加
-    public void put(String key) {
-        int[] hashes = getHashes(key);
-        for (int hash : hashes) {
-            int longIndex = hash/64;
-            int bitIndex = hash%64;
-            long mark = 1L << bitIndex;
-            atomic.getAndUpdate(longIndex,old -> old | mark);
-        }
+    default boolean remove(long key) {
+        return false;
     }
-    public void put(Long key) {
-        byte[] array = ByteBuffer.allocate(Long.BYTES).putLong(key).array();
-        int[] hashes = getHashes(array);
-        for (int hash : hashes) {
-            int longIndex = hash/64;
-            int bitIndex = hash%64;
-            long mark = 1L << bitIndex;
-            atomic.getAndUpdate(longIndex,old -> old | mark);
-        }
+
+    //Long/Integer按long处理,其余按toString处理,切面与预加载统一使用
+    default void putValue(Object value) {
+        if (value instanceof Long || value instanceof Integer) put(((Number) value).longValue());
+        else if (value != null) put(value.toString());
     }
-    //验证
-    public boolean mightContain(String key) {
-        int[] hashes = getHashes(key);
-        for (int hash : hashes) {
-            int longIndex = hash/64;
-            int bitIndex = hash%64;
-            long mark = 1L << bitIndex;
-            if ((atomic.get(longIndex) & mark) == 0) {
-                return false;
-            }
-        }
-        return true;
+
+    default boolean mightContainValue(Object value) {
+        if (value instanceof Long || value instanceof Integer) return mightContain(((Number) value).longValue());
+        return value != null && mightContain(value.toString());
     }
 
-    public boolean mightContain(Long key) {
-        byte[] array = ByteBuffer.allocate(Long.BYTES).putLong(key).array();
-        int[] hashes = getHashes(array);
-        for (int hash : hashes) {
-            int longIndex = hash/64;
-            int bitIndex = hash%64;
-            long mark = 1L << bitIndex;
-            if ((atomic.get(longIndex) & mark) == 0) {
-                return false;
-            }
-        }
-        return true;
+    default boolean removeValue(Object value) {
+        if (value instanceof Long || value instanceof Integer) return remove(((Number) value).longValue());
+        return value != null && remove(value.toString());
     }
 
+    //DELETE后是否从布隆移除: 方法返回boolean或影响行数时以返回值为准(影响行数需不少于id数),否则以缓存key是否被删除为准
+    //计数布隆的删除不是幂等的,重复删除或删除未插入但哈希冲突的id会减掉其他元素的计数,产生误判,因此不确定时不移除
+    static boolean shouldRemove(Object result, int ids, boolean cacheRemoved) {
+        if (result instanceof Boolean deleted) return deleted;
+        if (result instanceof Number rows) return rows.longValue() > 0 && rows.longValue() >= ids;
+        return cacheRemoved;
+    }
 
-    //计算key哈希数组
-    private int[] getHashes(String key) {
-        int[] results = new int[hashCount];
-        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
-        int hash1 = hash(bytes,0);
-        int hash2 = hash(bytes,hash1);
-        for (int i = 0; i < hashCount; i++) {
-            results[i] = Math.abs(hash1 + i * hash2) % size;
-        }
-        return results;
+    //开始重建: 之后的写入同时进入空白的新过滤器,期间查询仍使用旧数据
+    default void beginRebuild() {
+        throw CustomizeException.internalServerError("当前布隆过滤器不支持重建");
     }
 
-    private int[] getHashes(byte[] bytes) {
-        int[] results = new int[hashCount];
-        int hash1 = hash(bytes,0);
-        int hash2 = hash(bytes,hash1);
-        for (int i = 0; i < hashCount; i++) {
-            results[i] = Math.abs(hash1 + i * hash2) % size;
-        }
-        return results;
+    //完成重建,替换为新过滤器的数据
+    default void completeRebuild() {
     }
-    //哈希算法
-//    private int hash(byte[] bytes, int seed) {
-//        int h = seed;
-//        for (byte b : bytes) {
-//            h = 31 * h + b;
-//        }
-//        return h;
-//    }
-    private int hash(byte[] bytes, int seed) {
-        int h = seed;
-        for (byte b : bytes) {
-            h ^= (b * 0x5bd1e995);
-            h ^= (h >>> 15);
-            h *= 0x5bd1e995;
-        }
-        return h;
+
+    //放弃重建,保留旧数据
+    default void abortRebuild() {
     }
-}
\ No newline at end of file
+
+    //实现类型
+    String getType();
+
+    //近似插入数量
+    long getApproximateCount();
+
+    //填充率
+    double getFillRatio();
+
+    //估算误判率
+    double getEstimatedFpp();
+}
@@ -0,0 +1,134 @@
+package com.wyk.redis.util;
+
+
+import com.wyk.redis.cache.BloomFilterPreloader;
+import com.wyk.redis.exception.CustomizeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/*
+  布隆过滤器预加载: 在应用就绪前依次读取各预加载器的id流,
+  按批提交到并行线程池写入布隆过滤器,排队批次受限避免一次性读入全部id
+ */
+public class BloomFilterPreloadRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(BloomFilterPreloadRunner.class);
+
+    private final BloomFilter bloomFilter;
+    private final List<BloomFilterPreloader> preloaders;
+    private final int batchSize;
+    private final int threads;
+    private final BloomFilterRedisStore store;
+
+    public BloomFilterPreloadRunner(BloomFilter bloomFilter, List<BloomFilterPreloader> preloaders,
+                                    Integer batchSize, Integer threads) {
+        this(bloomFilter, preloaders, batchSize, threads, null);
+    }
+
+    //store不为空时重建完成后同时替换redis中的位图
+    public BloomFilterPreloadRunner(BloomFilter bloomFilter, List<BloomFilterPreloader> preloaders,
+                                    Integer batchSize, Integer threads, BloomFilterRedisStore store) {
+        this.bloomFilter = bloomFilter;
+        this.store = store;
+        this.preloaders = preloaders;
+        this.batchSize = batchSize;
+        this.threads = threads == null || threads <= 0 ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (preloaders.isEmpty()) return;
+        preloadAll();
+        log.info("布隆过滤器当前近似数量: {},填充率: {},估算误判率: {}", bloomFilter.getApproximateCount(),
+                bloomFilter.getFillRatio(), bloomFilter.getEstimatedFpp());
+    }
+
+    //重建: 重建期间的写入同时进入新过滤器,重新执行全部预加载器后替换,已删除的id随旧数据一起清除
+    //开始重建与预加载器读取之间写入的id已存在于数据源,由预加载覆盖,整个过程不产生漏判
+    public synchronized long rebuild() throws Exception {
+        if (preloaders.isEmpty()) throw CustomizeException.badRequest("未配置BloomFilterPreloader,无法重建布隆过滤器");
+        long start = System.currentTimeMillis();
+        bloomFilter.beginRebuild();
+        long count;
+        try {
+            count = preloadAll();
+            if (store != null) store.replace(bloomFilter::completeRebuild);
+            else bloomFilter.completeRebuild();
+        } catch (Exception e) {
+            bloomFilter.abortRebuild();
+            throw e;
+        }
+        log.info("布隆过滤器重建完成,数量: {},耗时: {}ms,填充率: {},估算误判率: {}", count,
+                System.currentTimeMillis() - start, bloomFilter.getFillRatio(), bloomFilter.getEstimatedFpp());
+        return count;
+    }
+
+    private long preloadAll() throws Exception {
+        //预加载为cpu密集任务,固定使用平台线程
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                ThreadFactories.create("wyk-bloom-preload-", false));
+        long total = 0;
+        try {
+            for (BloomFilterPreloader preloader : preloaders) {
+                long start = System.currentTimeMillis();
+                long count = preload(preloader, executor);
+                total += count;
+                log.info("布隆过滤器预加载完成: {},数量: {},耗时: {}ms", preloader.getClass().getSimpleName(),
+                        count, System.currentTimeMillis() - start);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return total;
+    }
+
+    private long preload(BloomFilterPreloader preloader, ExecutorService executor) throws Exception {
+        LongAdder count = new LongAdder();
+        //每个线程最多排队两批
+        Semaphore permits = new Semaphore(threads * 2);
+        List<Future<?>> futures = new ArrayList<>();
+        try (Stream<?> ids = preloader.ids()) {
+            Iterator<?> iterator = ids.iterator();
+            while (iterator.hasNext()) {
+                List<Object> batch = new ArrayList<>(batchSize);
+                while (iterator.hasNext() && batch.size() < batchSize) batch.add(iterator.next());
+                permits.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        batch.forEach(bloomFilter::putValue);
+                        count.add(batch.size());
+                    } finally {
+                        permits.release();
+                    }
+                }));
+                await(futures, true);
+            }
+        }
+        await(futures, false);
+        return count.sum();
+    }
+
+    //检查批次结果,onlyDone为true时只处理已完成的批次
+    private void await(List<Future<?>> futures, boolean onlyDone) throws InterruptedException {
+        Iterator<Future<?>> iterator = futures.iterator();
+        while (iterator.hasNext()) {
+            Future<?> future = iterator.next();
+            if (onlyDone && !future.isDone()) continue;
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw CustomizeException.internalServerError("布隆过滤器预加载失败", e.getCause());
+            }
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.wyk.redis.util;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+  布隆过滤器redis同步: 每个分片对应一个redis位图,元数据hash中记录各分片的全局插入数
+  本地新置位的位置通过管道SETBIT合并到redis(只置1,多节点并发写入互不覆盖),同时追加到分片的增量stream
+  周期同步只读取各分片stream中上次之后的增量与元数据,完整位图只在启动预热与重建时读取;
+  增量已被裁剪(落后超过DELTA_MAX_LEN条)时该分片改为整体读取
+ */
+public class BloomFilterRedisStore {
+
+    private static final Logger log = LoggerFactory.getLogger(BloomFilterRedisStore.class);
+    private static final String COUNT_FIELD = "count:";
+    private static final int DELTA_MAX_LEN = 1000; //每个分片保留的增量条数
+    private static final byte[] POSITIONS_FIELD = "p".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NODE_FIELD = "n".getBytes(StandardCharsets.UTF_8);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final ScalableBloomFilter bloomFilter;
+    private final String prefix;
+    private final byte[] metaKey;
+    private final byte[] nodeId = UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+    private final long syncInterval;
+    private final ScheduledExecutorService scheduler;
+    //各分片已读取到的增量id,为空表示从头读取
+    private final Map<Integer, String> lastIds = new HashMap<>();
+
+    public BloomFilterRedisStore(RedisTemplate<String, Object> redisTemplate, ScalableBloomFilter bloomFilter,
+                                 String prefix, Long syncInterval) {
+        this.redisTemplate = redisTemplate;
+        this.bloomFilter = bloomFilter;
+        this.prefix = prefix;
+        this.metaKey = (prefix + ":meta").getBytes(StandardCharsets.UTF_8);
+        this.syncInterval = syncInterval;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wyk-bloom-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    //启动时预热并开始周期同步
+    public void start() {
+        try {
+            load();
+            log.info("布隆过滤器预热完成,分片数: {},近似数量: {},填充率: {}",
+                    bloomFilter.getSliceCount(), bloomFilter.getApproximateCount(), bloomFilter.getFillRatio());
+        } catch (Exception e) {
+            log.warn("布隆过滤器预热失败: {}", e.getMessage());
+        }
+        scheduler.scheduleWithFixedDelay(this::sync, syncInterval, syncInterval, TimeUnit.SECONDS);
+    }
+
+    //推送本地变更后拉取其他节点的增量,与重建替换互斥
+    public synchronized void sync() {
+        try {
+            flush();
+            pull();
+        } catch (Exception e) {
+            log.warn("布隆过滤器同步失败: {}", e.getMessage());
+            log.debug("布隆过滤器同步失败", e);
+        }
+    }
+
+    //推送本地新置位与插入计数,新置位同时写入增量stream
+    public void flush() {
+        int sliceCount = bloomFilter.getSliceCount();
+        long[][] positions = new long[sliceCount][];
+        long[] pending = new long[sliceCount];
+        for (int i = 0; i < sliceCount; i++) {
+            positions[i] = bloomFilter.drainDirty(i);
+            pending[i] = bloomFilter.drainPending(i);
+        }
+        RedisStreamCommands.XAddOptions options = RedisStreamCommands.XAddOptions.maxlen(DELTA_MAX_LEN).approximateTrimming(true);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < sliceCount; i++) {
+                byte[] sliceKey = sliceKey(i);
+                for (long position : positions[i]) {
+                    connection.stringCommands().setBit(sliceKey, position, true);
+                }
+                if (positions[i].length > 0) {
+                    ByteRecord record = StreamRecords.rawBytes(Map.of(POSITIONS_FIELD, pack(positions[i]), NODE_FIELD, nodeId))
+                            .withStreamKey(deltaKey(i));
+                    connection.streamCommands().xAdd(record, options);
+                }
+                //计数为0时也写入字段,用于登记新分片
+                connection.hashCommands().hIncrBy(metaKey, (COUNT_FIELD + i).getBytes(StandardCharsets.UTF_8), pending[i]);
+            }
+            return null;
+        }, RedisSerializer.byteArray());
+    }
+
+    //完整读取: 先记录各分片增量stream的最新id,再拉取全部分片位图合并到本地,之后的同步从记录的id继续
+    public synchronized void load() {
+        long[] counts = readCounts();
+        if (counts == null) return;
+        int total = counts.length;
+        bloomFilter.ensureSlices(total);
+        for (int i = 0; i < total; i++) {
+            byte[] deltaKey = deltaKey(i);
+            List<ByteRecord> latest = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                    connection.streamCommands().xRevRange(deltaKey, Range.unbounded(), Limit.limit().count(1)));
+            if (latest == null || latest.isEmpty()) lastIds.remove(i);
+            else lastIds.put(i, latest.get(0).getId().getValue());
+        }
+        List<Object> bitmaps = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < total; i++) {
+                connection.stringCommands().get(sliceKey(i));
+            }
+            return null;
+        }, RedisSerializer.byteArray());
+        for (int i = 0; i < total; i++) {
+            bloomFilter.merge(i, (byte[]) bitmaps.get(i), counts[i]);
+        }
+    }
+
+    //增量读取: 元数据更新计数,各分片只读取上次之后其他节点推送的位置
+    private void pull() {
+        long[] counts = readCounts();
+        if (counts == null) return;
+        bloomFilter.ensureSlices(counts.length);
+        for (int i = 0; i < counts.length; i++) {
+            pullSlice(i);
+            bloomFilter.mergeCount(i, counts[i]);
+        }
+    }
+
+    private void pullSlice(int index) {
+        String lastId = lastIds.get(index);
+        Range<String> range = lastId == null ? Range.unbounded() : Range.rightUnbounded(Range.Bound.inclusive(lastId));
+        List<ByteRecord> records = redisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+                connection.streamCommands().xRange(deltaKey(index), range));
+        if (records == null || records.isEmpty()) return;
+        //上次读到的记录已被裁剪,中间的增量可能丢失,改为读取完整位图
+        boolean trimmed = lastId == null ? records.size() >= DELTA_MAX_LEN
+                : !lastId.equals(records.get(0).getId().getValue());
+        if (trimmed) {
+            byte[] bitmap = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                    connection.stringCommands().get(sliceKey(index)));
+            bloomFilter.merge(index, bitmap, 0);
+            log.debug("布隆过滤器增量已裁剪,分片 {} 改为完整读取", index);
+        } else {
+            for (ByteRecord record : records) {
+                if (record.getId().getValue().equals(lastId)) continue;
+                int[] positions = positions(record);
+                if (positions != null) bloomFilter.mergePositions(index, positions);
+            }
+        }
+        lastIds.put(index, records.get(records.size() - 1).getId().getValue());
+    }
+
+    //重建完成时替换本地数据,并删除redis中的旧位图、增量与元数据后推送新数据,避免下次拉取把旧位图合并回来
+    public synchronized void replace(Runnable swap) {
+        int previous = bloomFilter.getSliceCount();
+        swap.run();
+        Map<byte[], byte[]> meta = redisTemplate.execute(
+                (RedisCallback<Map<byte[], byte[]>>) connection -> connection.hashCommands().hGetAll(metaKey));
+        int total = Math.max(previous, meta == null ? 0 : meta.size());
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < total; i++) {
+                connection.keyCommands().del(sliceKey(i), deltaKey(i));
+            }
+            connection.keyCommands().del(metaKey);
+            return null;
+        }, RedisSerializer.byteArray());
+        lastIds.clear();
+        flush();
+        load();
+        log.info("布隆过滤器redis数据已替换,分片数: {}", bloomFilter.getSliceCount());
+    }
+
+    //读取各分片全局插入数,下标即分片序号;没有数据时返回null
+    private long[] readCounts() {
+        Map<byte[], byte[]> meta = redisTemplate.execute(
+                (RedisCallback<Map<byte[], byte[]>>) connection -> connection.hashCommands().hGetAll(metaKey));
+        if (meta == null || meta.isEmpty()) return null;
+        int sliceCount = 0;
+        long[] counts = new long[64];
+        for (Map.Entry<byte[], byte[]> entry : meta.entrySet()) {
+            String field = new String(entry.getKey(), StandardCharsets.UTF_8);
+            if (!field.startsWith(COUNT_FIELD)) continue;
+            int index = Integer.parseInt(field.substring(COUNT_FIELD.length()));
+            if (index >= counts.length) continue;
+            counts[index] = Long.parseLong(new String(entry.getValue(), StandardCharsets.UTF_8));
+            sliceCount = Math.max(sliceCount, index + 1);
+        }
+        return Arrays.copyOf(counts, sliceCount);
+    }
+
+    //解析增量中的位置,本节点推送的增量已在本地,返回null
+    private int[] positions(ByteRecord record) {
+        byte[] packed = null;
+        for (Map.Entry<byte[], byte[]> field : record.getValue().entrySet()) {
+            if (Arrays.equals(field.getKey(), NODE_FIELD) && Arrays.equals(field.getValue(), nodeId)) return null;
+            if (Arrays.equals(field.getKey(), POSITIONS_FIELD)) packed = field.getValue();
+        }
+        if (packed == null) return null;
+        ByteBuffer buffer = ByteBuffer.wrap(packed);
+        int[] positions = new int[packed.length / Integer.BYTES];
+        for (int i = 0; i < positions.length; i++) positions[i] = buffer.getInt();
+        return positions;
+    }
+
+    //分片位数不超过2^30,位置按4字节写入
+    private static byte[] pack(long[] positions) {
+        ByteBuffer buffer = ByteBuffer.allocate(positions.length * Integer.BYTES);
+        for (long position : positions) buffer.putInt((int) position);
+        return buffer.array();
+    }
+
+    private byte[] sliceKey(int index) {
+        return (prefix + ":" + index).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] deltaKey(int index) {
+        return (prefix + ":" + index + ":delta").getBytes(StandardCharsets.UTF_8);
+    }
+
+    //停止前推送一次本地变更
+    public void shutdown() {
+        scheduler.shutdownNow();
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("布隆过滤器关闭时推送失败: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.wyk.redis.util;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.*;
+
+/*
+  提前刷新执行器: 缓存进入刷新窗口后由有界线程池异步重新加载,
+  本节点通过refreshing集合去重,跨节点通过redis短期标记保证同一key只刷新一次
+ */
+public class CacheRefresher {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheRefresher.class);
+    private static final String REFRESH_PREFIX = "CacheRefresh:";
+
+    private final RedisUtil redisUtil;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    public CacheRefresher(RedisUtil redisUtil, Integer threads, Integer queueSize) {
+        this(redisUtil, threads, queueSize, false);
+    }
+
+    //virtualThreads为true时刷新任务运行在虚拟线程上,线程数与队列长度仍然限制并发
+    public CacheRefresher(RedisUtil redisUtil, Integer threads, Integer queueSize, boolean virtualThreads) {
+        this.redisUtil = redisUtil;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                ThreadFactories.create("wyk-cache-refresh-", virtualThreads),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    //提交异步刷新,window为刷新窗口(秒),同时作为跨节点标记的过期时间
+    public void refresh(String key, long window, Loader loader) {
+        if (!refreshing.add(key)) return;
+        try {
+            executor.execute(() -> {
+                try {
+                    if (!redisUtil.setIfAbsent(REFRESH_PREFIX + key, "1", Math.max(window, 1))) {
+                        log.debug("其他节点正在刷新,key: {}", key);
+                        return;
+                    }
+                    Object result = loader.load();
+                    if (result != null) redisUtil.setRandomExpires(key, result);
+                    else redisUtil.set(key);
+                    log.debug("缓存提前刷新成功,key: {}", key);
+                } catch (Throwable e) {
+                    log.warn("缓存提前刷新失败,key: {},error: {}", key, e.getMessage());
+                    log.debug("缓存提前刷新失败,key: {},error: ", key, e);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+            log.debug("刷新队列已满,跳过本次刷新,key: {}", key);
+        }
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getRefreshingCount() {
+        return refreshing.size();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        Object load() throws Throwable;
+    }
+}
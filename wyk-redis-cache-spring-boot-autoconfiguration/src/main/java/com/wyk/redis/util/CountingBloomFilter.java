@@ -0,0 +1,125 @@
+package com.wyk.redis.util;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+  计数布隆过滤器: 每个位置为4位计数器(每个long存16个),支持删除
+  计数器达到15后视为饱和,不再增减,避免溢出导致误删;容量固定,按expectedSize与fpp计算
+  删除不是幂等的: 只能删除确实插入过的元素,重复删除或删除哈希冲突的未插入元素会减掉其他元素的计数,产生误判
+ */
+public class CountingBloomFilter extends AbstractBloomFilter {
+
+    private static final long MAX = 15L;
+
+    private volatile AtomicLongArray counters;
+    private final int size;
+    private final int mask;
+    private final int hashCount;
+    private final AtomicLong count = new AtomicLong();
+    private final long expectedSize;
+    private final double fpp;
+
+    public CountingBloomFilter(long expectedSize, double fpp) {
+        this.expectedSize = expectedSize;
+        this.fpp = fpp;
+        long capacity = Math.max(expectedSize, 1);
+        long m = (long) Math.ceil(-capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        //向上取2的幂,探测时用掩码代替取模
+        this.size = 1 << Math.min(30, 64 - Long.numberOfLeadingZeros(Math.max(m, 16) - 1));
+        this.mask = size - 1;
+        this.hashCount = Math.max(1, (int) Math.round((double) size / capacity * Math.log(2)));
+        this.counters = new AtomicLongArray(size / 16);
+    }
+
+    @Override
+    protected boolean apply(long hash1, long hash2, int operation) {
+        switch (operation) {
+            case PUT -> {
+                long combined = hash1;
+                for (int i = 0; i < hashCount; i++, combined += hash2) {
+                    add((int) combined & mask, 1);
+                }
+                count.incrementAndGet();
+                return true;
+            }
+            case CONTAINS -> {
+                return contains(hash1, hash2);
+            }
+            default -> {
+                //不存在时不删除,避免把其他元素的计数减到0
+                if (!contains(hash1, hash2)) return false;
+                long combined = hash1;
+                for (int i = 0; i < hashCount; i++, combined += hash2) {
+                    add((int) combined & mask, -1);
+                }
+                count.decrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    @Override
+    protected AbstractBloomFilter emptyCopy() {
+        return new CountingBloomFilter(expectedSize, fpp);
+    }
+
+    @Override
+    protected void replaceWith(AbstractBloomFilter source) {
+        CountingBloomFilter filter = (CountingBloomFilter) source;
+        counters = filter.counters;
+        count.set(filter.count.get());
+    }
+
+    private boolean contains(long hash1, long hash2) {
+        long combined = hash1;
+        for (int i = 0; i < hashCount; i++, combined += hash2) {
+            if (counter((int) combined & mask) == 0) return false;
+        }
+        return true;
+    }
+
+    private long counter(int index) {
+        return (counters.get(index >>> 4) >>> ((index & 15) << 2)) & MAX;
+    }
+
+    //计数器加减,饱和或为0时不再变化
+    private void add(int index, int delta) {
+        int word = index >>> 4;
+        int shift = (index & 15) << 2;
+        //读取一次引用,避免重建替换时在新旧数组之间CAS
+        AtomicLongArray array = counters;
+        long old, value;
+        do {
+            old = array.get(word);
+            long current = (old >>> shift) & MAX;
+            if (current == MAX || (delta < 0 && current == 0)) return;
+            value = delta > 0 ? old + (1L << shift) : old - (1L << shift);
+        } while (!array.compareAndSet(word, old, value));
+    }
+
+    @Override
+    public String getType() {
+        return "counting";
+    }
+
+    @Override
+    public long getApproximateCount() {
+        return count.get();
+    }
+
+    @Override
+    public double getFillRatio() {
+        long used = 0;
+        for (int i = 0; i < size; i++) {
+            if (counter(i) != 0) used++;
+        }
+        return (double) used / size;
+    }
+
+    @Override
+    public double getEstimatedFpp() {
+        return Math.pow(getFillRatio(), hashCount);
+    }
+}
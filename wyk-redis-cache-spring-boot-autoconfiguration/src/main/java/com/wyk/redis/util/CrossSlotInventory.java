@@ -0,0 +1,225 @@
+package com.wyk.redis.util;
+
+
+import com.wyk.redis.exception.CustomizeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/*
+  跨slot库存: 集群模式下一个订单的商品分布在多个slot时,按slot分组并行执行,每组一次lua脚本
+  扣减使用两阶段预留/提交: 各组先扣减库存并在库存key:reserved哈希中记录预留(过期时间记录在:reserved:exp有序集合),全部成功后提交到锁定库存,
+  任一组失败时撤销已预留的组;协调节点宕机时未提交的预留过期后由下次预留回收放回库存
+  回补与支付按组执行,任一组失败时对已成功的组做反向操作
+ */
+public class CrossSlotInventory {
+
+    private static final Logger log = LoggerFactory.getLogger(CrossSlotInventory.class);
+    private static final RedisSerializer<Long> RESULT_SERIALIZER = new GenericToStringSerializer<>(Long.class);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final SlotRouter slotRouter;
+    private final long reserveMillis;
+
+    public CrossSlotInventory(RedisTemplate<String, Object> redisTemplate, SlotRouter slotRouter, Long reserveTimeout) {
+        this.redisTemplate = redisTemplate;
+        this.slotRouter = slotRouter;
+        this.reserveMillis = TimeUnit.SECONDS.toMillis(reserveTimeout);
+    }
+
+    //keys按(库存,锁定库存)成对排列,全部成功或全部失败
+    public boolean deductInv(List<String> keys, List<Integer> nums) {
+        List<List<Item>> groups = group(keys, nums);
+        String txId = UUID.randomUUID().toString();
+        long now = System.currentTimeMillis();
+        List<Boolean> reserved;
+        try {
+            reserved = slotRouter.parallel(groups, group -> reserve(group, txId, now));
+        } catch (RuntimeException e) {
+            //结果未知,全部撤销
+            abort(groups, txId);
+            throw e;
+        }
+        if (reserved.contains(Boolean.FALSE)) {
+            List<List<Item>> succeeded = new ArrayList<>();
+            for (int i = 0; i < groups.size(); i++) if (reserved.get(i)) succeeded.add(groups.get(i));
+            abort(succeeded, txId);
+            return false;
+        }
+        return commit(groups, txId);
+    }
+
+    public boolean addInv(List<String> keys, List<Integer> nums) {
+        List<List<Item>> groups = group(keys, nums);
+        return applyOrRevert(groups,
+                group -> Long.valueOf(1L).equals(execute(LuaScripts.ADD_MULTI, pairKeys(group), nums(group))),
+                group -> {
+                    if (!Long.valueOf(1L).equals(execute(LuaScripts.DEDUCT_MULTI, pairKeys(group), nums(group)))) {
+                        log.warn("跨slot回补撤销失败,库存已被扣减,keys: {}", pairKeys(group));
+                    }
+                });
+    }
+
+    //keys为锁定库存,与数量一一对应
+    public boolean paySuccess(List<String> keys, List<Integer> nums) {
+        List<Item> items = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) items.add(new Item(null, keys.get(i), num(nums.get(i))));
+        List<List<Item>> groups = new ArrayList<>(slotRouter.group(items, Item::locked).values());
+        return applyOrRevert(groups,
+                group -> Long.valueOf(1L).equals(execute(LuaScripts.PAY_SUCCESS,
+                        group.stream().map(Item::locked).toList(), nums(group))),
+                group -> group.forEach(item -> incrBy(item.locked, item.num)));
+    }
+
+    private boolean reserve(List<Item> group, String txId, long now) {
+        List<String> keys = new ArrayList<>(group.size() * 3);
+        List<Object> args = new ArrayList<>(group.size() + 3);
+        args.add(now);
+        args.add(txId);
+        args.add(now + reserveMillis);
+        for (Item item : group) {
+            String reserved = reservedKey(item.stock);
+            keys.add(item.stock);
+            keys.add(reserved);
+            keys.add(expKey(reserved));
+            args.add(item.num);
+        }
+        return Long.valueOf(1L).equals(execute(LuaScripts.TX_RESERVE, keys, args));
+    }
+
+    //并行提交;有组提交失败时撤销未提交的组,已提交的组从锁定库存回补
+    private boolean commit(List<List<Item>> groups, String txId) {
+        List<Boolean> committed = slotRouter.parallel(groups, group -> {
+            List<String> keys = new ArrayList<>(group.size() * 3);
+            for (Item item : group) {
+                String reserved = reservedKey(item.stock);
+                keys.add(reserved);
+                keys.add(expKey(reserved));
+                keys.add(item.locked);
+            }
+            try {
+                return Long.valueOf(1L).equals(execute(LuaScripts.TX_COMMIT, keys,
+                        List.of(txId, System.currentTimeMillis())));
+            } catch (Exception e) {
+                log.warn("跨slot库存提交失败,事务: {},error: {}", txId, e.getMessage());
+                return false;
+            }
+        });
+        if (!committed.contains(Boolean.FALSE)) return true;
+        List<List<Item>> pending = new ArrayList<>();
+        for (int i = 0; i < groups.size(); i++) {
+            List<Item> group = groups.get(i);
+            if (!committed.get(i)) {
+                pending.add(group);
+            } else if (!Long.valueOf(1L).equals(execute(LuaScripts.ADD_MULTI, pairKeys(group), nums(group)))) {
+                log.error("跨slot库存提交失败后回补失败,事务: {},keys: {}", txId, pairKeys(group));
+            }
+        }
+        abort(pending, txId);
+        return false;
+    }
+
+    private void abort(List<List<Item>> groups, String txId) {
+        if (groups.isEmpty()) return;
+        try {
+            slotRouter.parallel(groups, group -> {
+                List<String> keys = new ArrayList<>(group.size() * 3);
+                for (Item item : group) {
+                    String reserved = reservedKey(item.stock);
+                    keys.add(item.stock);
+                    keys.add(reserved);
+                    keys.add(expKey(reserved));
+                }
+                return execute(LuaScripts.TX_ABORT, keys, List.of(txId));
+            });
+        } catch (Exception e) {
+            log.warn("跨slot库存撤销失败,预留过期后回收,事务: {},error: {}", txId, e.getMessage());
+            log.debug("跨slot库存撤销失败,事务: {}", txId, e);
+        }
+    }
+
+    //并行执行各组,有组失败时对成功的组执行revert
+    private boolean applyOrRevert(List<List<Item>> groups, Predicate<List<Item>> apply, Consumer<List<Item>> revert) {
+        List<Boolean> results = slotRouter.parallel(groups, group -> {
+            try {
+                return apply.test(group);
+            } catch (Exception e) {
+                log.warn("跨slot库存操作失败,商品数: {},error: {}", group.size(), e.getMessage());
+                return false;
+            }
+        });
+        if (!results.contains(Boolean.FALSE)) return true;
+        for (int i = 0; i < groups.size(); i++) {
+            if (results.get(i)) revert.accept(groups.get(i));
+        }
+        return false;
+    }
+
+    //按库存key的slot分组,同一商品的库存与锁定库存须在同一slot
+    private List<List<Item>> group(List<String> keys, List<Integer> nums) {
+        List<Item> items = new ArrayList<>(nums.size());
+        for (int i = 0; i < nums.size(); i++) {
+            String stock = keys.get(2 * i);
+            String locked = keys.get(2 * i + 1);
+            if (SlotRouter.slot(stock) != SlotRouter.slot(locked)) {
+                throw CustomizeException.badRequest("库存与锁定库存key需在同一slot,请使用相同hash tag: " + stock);
+            }
+            items.add(new Item(stock, locked, num(nums.get(i))));
+        }
+        Map<Integer, List<Item>> groups = slotRouter.group(items, Item::stock);
+        return new ArrayList<>(groups.values());
+    }
+
+    private static int num(Integer num) {
+        if (num == null) throw CustomizeException.badRequest("库存数量不能为空");
+        return num;
+    }
+
+    private static String reservedKey(String stockKey) {
+        return SlotRouter.sameSlotKey(stockKey, ":reserved");
+    }
+
+    //预留过期集合,与预留哈希同一slot
+    private static String expKey(String reservedKey) {
+        return SlotRouter.sameSlotKey(reservedKey, ":exp");
+    }
+
+    private static List<String> pairKeys(List<Item> group) {
+        List<String> keys = new ArrayList<>(group.size() * 2);
+        for (Item item : group) {
+            keys.add(item.stock);
+            keys.add(item.locked);
+        }
+        return keys;
+    }
+
+    private static List<Object> nums(List<Item> group) {
+        return group.stream().<Object>map(Item::num).toList();
+    }
+
+    private void incrBy(String key, long delta) {
+        byte[] raw = key.getBytes(StandardCharsets.UTF_8);
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.stringCommands().incrBy(raw, delta));
+    }
+
+    private Long execute(RedisScript<Long> script, List<String> keys, List<Object> args) {
+        Object[] values = args.stream().map(String::valueOf).toArray();
+        return redisTemplate.execute(script, RedisSerializer.string(), RESULT_SERIALIZER, keys, values);
+    }
+
+    private record Item(String stock, String locked, int num) {
+    }
+}
@@ -0,0 +1,91 @@
+package com.wyk.redis.util;
+
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.wyk.redis.codec.ValueCodec;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+  热点副本: 升级为热点的key在本节点保存短期副本,失效通过独立频道广播;
+  replicas大于0时同时写入key#0..key#N-1个redis副本,读取时随机选择,分散到不同分片
+  本节点副本与NearCache一致,默认保存编码后的字节,每次读取返回新对象
+ */
+public class HotKeyCache implements MessageListener {
+
+    private static final char REPLICA_SEPARATOR = '#';
+
+    private final NearCache local;
+    private final RedisUtil redisUtil;
+    private final int replicas;
+
+    public HotKeyCache(RedisTemplate<String, Object> redisTemplate,
+                       RedisUtil redisUtil,
+                       String channel,
+                       Long maxSize,
+                       Long expires,
+                       Integer replicas,
+                       boolean immutable) {
+        this.local = new NearCache(redisTemplate, channel, maxSize, expires, redisUtil.getCodec(), immutable);
+        this.redisUtil = redisUtil;
+        this.replicas = replicas == null ? 0 : Math.max(replicas, 0);
+    }
+
+    //先读本地副本,未命中时随机读一个redis副本并回填本地
+    public Object get(String key, JavaType javaType) {
+        Object value = local.get(key, javaType);
+        if (value != null || replicas == 0) return value;
+        value = redisUtil.get(replicaKey(key, ThreadLocalRandom.current().nextInt(replicas)), javaType);
+        if (value != null) local.put(key, value);
+        return value;
+    }
+
+    //本地不存在时写入副本,同时刷新redis副本
+    public void promote(String key, Object value) {
+        if (key == null || value == null || local.contains(key)) return;
+        local.put(key, value);
+        if (replicas == 0) return;
+        Map<String, Object> values = new HashMap<>(replicas * 2);
+        for (int i = 0; i < replicas; i++) values.put(replicaKey(key, i), value);
+        redisUtil.multiSetRandomExpires(values, List.of());
+    }
+
+    //删除本地与redis副本并广播
+    public void invalidate(String key) {
+        if (key == null) return;
+        local.invalidate(key);
+        if (replicas == 0) return;
+        List<String> keys = new ArrayList<>(replicas);
+        for (int i = 0; i < replicas; i++) keys.add(replicaKey(key, i));
+        redisUtil.remove(keys);
+    }
+
+    //清空本节点副本,不广播
+    public void invalidateAll() {
+        local.invalidateAll();
+    }
+
+    public long size() {
+        return local.size();
+    }
+
+    public int getReplicas() {
+        return replicas;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        local.onMessage(message, pattern);
+    }
+
+    private static String replicaKey(String key, int index) {
+        return key + REPLICA_SEPARATOR + index;
+    }
+}
@@ -0,0 +1,265 @@
+package com.wyk.redis.util;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntUnaryOperator;
+
+/*
+  热点检测: Count-Min Sketch(保守更新)统计访问频率,每个interval计数减半衰减,
+  频率最高的topK个key保存在有界候选表中(Space-Saving替换最小项),候选项频率超过阈值时升级为热点,
+  衰减后低于阈值一半或被挤出候选表时降级; 内存与key数量无关,每次访问仅为几次数组CAS
+  候选表只记录成员,频率在衰减、上报与淘汰时从sketch读取,访问时不写候选表,热点key的并发读取之间没有锁竞争
+  开启集群聚合后本地只统计,热点由HotspotAggregator汇总各节点候选频率后统一判定
+ */
+public class HotKeyDetector {
+
+    private static final Logger log = LoggerFactory.getLogger(HotKeyDetector.class);
+    private static final int DEPTH = 4;
+    private static final IntUnaryOperator HALVE = c -> c >>> 1;
+
+    private final RedisUtil redisUtil;
+    private final long interval;
+    private final long threshold;
+    private final int capacity;
+    private final int width;
+    private final int mask;
+    private final AtomicIntegerArray counters;
+    private final Set<String> topK = ConcurrentHashMap.newKeySet();
+    private final Set<String> hot = ConcurrentHashMap.newKeySet();
+    //手动降级的key,到下次衰减前不再自动升级
+    private final Set<String> suppressed = ConcurrentHashMap.newKeySet();
+    //已上报的候选频率,用于计算增量
+    private final Map<String, Long> reported = new ConcurrentHashMap<>();
+    private volatile Set<String> clusterHot = Set.of();
+    private volatile boolean clusterMode;
+    private final ReentrantLock admitLock = new ReentrantLock();
+    //候选表已满时进入需要超过的最小频率
+    private volatile long floor;
+
+    //width向上取整为2的幂
+    public HotKeyDetector(RedisUtil redisUtil, Long interval, Long threshold, Integer width, Integer topK) {
+        this.redisUtil = redisUtil;
+        this.interval = interval;
+        this.threshold = threshold;
+        this.capacity = Math.max(topK, 1);
+        this.width = Integer.highestOneBit(Math.max(width - 1, 1)) << 1;
+        this.mask = this.width - 1;
+        this.counters = new AtomicIntegerArray(DEPTH * this.width);
+    }
+
+    //记录一次访问,返回当前估算频率
+    public long increment(String key) {
+        long estimate = add(key);
+        boolean candidate = topK.contains(key);
+        if (!candidate && estimate > floor) candidate = admit(key, estimate);
+        if (!clusterMode && estimate > threshold && candidate && !suppressed.contains(key) && hot.add(key)) {
+            redisUtil.upgrade(key);
+            log.debug("达到缓存访问阈值,热点升级,key: {}", key);
+        }
+        return estimate;
+    }
+
+    public boolean isHot(String key) {
+        return hot.contains(key) || clusterHot.contains(key);
+    }
+
+    //开启集群模式,之后仅由集群判定结果升降级
+    public void enableClusterMode() {
+        this.clusterMode = true;
+    }
+
+    //取出自上次上报以来各候选key的频率增量
+    public Map<String, Long> drainDeltas() {
+        Map<String, Long> deltas = new HashMap<>();
+        for (String key : topK) {
+            long count = estimate(key);
+            Long last = reported.put(key, count);
+            long delta = last == null ? count : count - last;
+            if (delta > 0) deltas.put(key, delta);
+        }
+        reported.keySet().retainAll(topK);
+        return deltas;
+    }
+
+    //应用集群判定的热点集合,新增的升级,移出且本地也不是热点的降级
+    public void applyClusterHot(Set<String> keys) {
+        Set<String> previous = clusterHot;
+        clusterHot = Set.copyOf(keys);
+        for (String key : keys) {
+            if (!previous.contains(key) && !hot.contains(key)) {
+                redisUtil.upgrade(key);
+                log.debug("集群访问频率达到阈值,热点升级,key: {}", key);
+            }
+        }
+        for (String key : previous) {
+            if (!keys.contains(key) && !hot.contains(key)) {
+                redisUtil.downgrade(key);
+                log.debug("集群访问频率下降,热点降级,key: {}", key);
+            }
+        }
+    }
+
+    //估算频率,取各行最小值
+    public long estimate(String key) {
+        int h1 = hash(key);
+        return min(h1, spread(h1));
+    }
+
+    //周期衰减: 计数减半,热点低于阈值一半时降级
+    public void decay() {
+        for (int i = 0; i < counters.length(); i++) counters.getAndUpdate(i, HALVE);
+        admitLock.lock();
+        try {
+            reported.replaceAll((k, v) -> v >>> 1);
+            topK.removeIf(k -> estimate(k) == 0);
+            floor = topK.size() < capacity ? 0 : minEntry().getValue();
+        } finally {
+            admitLock.unlock();
+        }
+        suppressed.clear();
+        for (String key : hot) {
+            if ((!topK.contains(key) || estimate(key) < threshold / 2) && hot.remove(key) && !clusterHot.contains(key)) {
+                redisUtil.downgrade(key);
+                log.debug("长时间未访问热点数据,热点降级,key: {}", key);
+            }
+        }
+    }
+
+    //手动升级,之后按正常规则在衰减时降级
+    public void forceUpgrade(String key) {
+        suppressed.remove(key);
+        if (hot.add(key) && !clusterHot.contains(key)) {
+            redisUtil.upgrade(key);
+            log.info("手动热点升级,key: {}", key);
+        }
+    }
+
+    //手动降级并移出候选表,到下次衰减前不再自动升级;集群热点在下次汇总前保持
+    public void forceDowngrade(String key) {
+        suppressed.add(key);
+        boolean removed = hot.remove(key);
+        topK.remove(key);
+        reported.remove(key);
+        if (removed && !clusterHot.contains(key)) {
+            redisUtil.downgrade(key);
+            log.info("手动热点降级,key: {}", key);
+        }
+    }
+
+    //衰减间隔,单位s
+    public long getInterval() {
+        return interval;
+    }
+
+    public int getHotCount() {
+        return hot.size() + clusterHot.size();
+    }
+
+    public int getCandidateCount() {
+        return topK.size();
+    }
+
+    public Set<String> getHotKeys() {
+        Set<String> keys = new HashSet<>(hot);
+        keys.addAll(clusterHot);
+        return keys;
+    }
+
+    //候选表快照,按频率降序
+    public Map<String, Long> getTopK() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        topK.stream()
+                .map(key -> Map.entry(key, estimate(key)))
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> snapshot.put(entry.getKey(), entry.getValue()));
+        return snapshot;
+    }
+
+    //保守更新: 只把低于最小值+1的计数提升到最小值+1,降低哈希冲突带来的高估
+    private long add(String key) {
+        int h1 = hash(key);
+        int h2 = spread(h1);
+        int min = min(h1, h2);
+        if (min == Integer.MAX_VALUE) return min;
+        int target = min + 1;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = index(h1, h2, i);
+            int current;
+            while ((current = counters.get(index)) < target && !counters.compareAndSet(index, current, target)) {
+                Thread.onSpinWait();
+            }
+        }
+        return target;
+    }
+
+    //进入候选表,满时替换频率最小项,返回是否进入;竞争时放弃本次,由后续访问重试
+    private boolean admit(String key, long estimate) {
+        if (!admitLock.tryLock()) return false;
+        String evicted = null;
+        try {
+            if (topK.size() < capacity) {
+                topK.add(key);
+            } else {
+                Map.Entry<String, Long> min = minEntry();
+                if (estimate <= min.getValue()) {
+                    floor = min.getValue();
+                    return false;
+                }
+                topK.remove(min.getKey());
+                topK.add(key);
+                evicted = min.getKey();
+            }
+            if (topK.size() >= capacity) floor = minEntry().getValue();
+        } finally {
+            admitLock.unlock();
+        }
+        if (evicted != null && hot.remove(evicted) && !clusterHot.contains(evicted)) {
+            redisUtil.downgrade(evicted);
+            log.debug("热点被更高频率key替换,热点降级,key: {}", evicted);
+        }
+        return true;
+    }
+
+    //候选表中估算频率最小的项,只在持有admitLock时调用
+    private Map.Entry<String, Long> minEntry() {
+        return topK.stream()
+                .map(key -> Map.entry(key, estimate(key)))
+                .min(Comparator.comparingLong(Map.Entry::getValue))
+                .orElseThrow();
+    }
+
+    private int min(int h1, int h2) {
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) min = Math.min(min, counters.get(index(h1, h2, i)));
+        return min;
+    }
+
+    private int index(int h1, int h2, int row) {
+        return row * width + ((h1 + row * h2) & mask);
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    //第二个哈希,奇数保证各行位置不同
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h | 1;
+    }
+}
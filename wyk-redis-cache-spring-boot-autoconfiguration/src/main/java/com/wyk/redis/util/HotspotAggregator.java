@@ -0,0 +1,99 @@
+package com.wyk.redis.util;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+  集群热点聚合: 各节点每个窗口把本地候选key的频率增量通过管道ZINCRBY累加到该窗口的有序集合,
+  再读取上一个完整窗口中总频率达到阈值的前topK个key作为集群热点,所有节点得到相同的判定结果
+ */
+public class HotspotAggregator {
+
+    private static final Logger log = LoggerFactory.getLogger(HotspotAggregator.class);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final HotKeyDetector hotKeyDetector;
+    private final String prefix;
+    private final long window;
+    private final long threshold;
+    private final int topK;
+    private final ScheduledExecutorService scheduler;
+
+    public HotspotAggregator(RedisTemplate<String, Object> redisTemplate, HotKeyDetector hotKeyDetector,
+                             String prefix, Long window, Long threshold, Integer topK) {
+        this.redisTemplate = redisTemplate;
+        this.hotKeyDetector = hotKeyDetector;
+        this.prefix = prefix;
+        this.window = window;
+        this.threshold = threshold;
+        this.topK = topK;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(ThreadFactories.create("wyk-hotspot-sync-", false));
+    }
+
+    //切换为集群判定并开始周期上报
+    public void start() {
+        hotKeyDetector.enableClusterMode();
+        scheduler.scheduleAtFixedRate(this::sync, window, window, TimeUnit.SECONDS);
+    }
+
+    public void sync() {
+        try {
+            report();
+            refresh();
+        } catch (Exception e) {
+            log.warn("集群热点同步失败: {}", e.getMessage());
+            log.debug("集群热点同步失败", e);
+        }
+    }
+
+    //上报本地候选频率增量到当前窗口
+    public void report() {
+        Map<String, Long> deltas = hotKeyDetector.drainDeltas();
+        if (deltas.isEmpty()) return;
+        byte[] windowKey = windowKey(currentWindow());
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            deltas.forEach((key, delta) -> connection.zSetCommands()
+                    .zIncrBy(windowKey, delta, key.getBytes(StandardCharsets.UTF_8)));
+            //保留当前与上一个窗口
+            connection.keyCommands().expire(windowKey, window * 3);
+            return null;
+        }, RedisSerializer.byteArray());
+    }
+
+    //读取上一个完整窗口的集群热点
+    public void refresh() {
+        byte[] windowKey = windowKey(currentWindow() - 1);
+        Set<Tuple> tuples = redisTemplate.execute((RedisCallback<Set<Tuple>>) connection -> connection.zSetCommands()
+                .zRevRangeByScoreWithScores(windowKey, threshold, Double.POSITIVE_INFINITY, 0, topK));
+        Set<String> keys = new HashSet<>();
+        if (tuples != null) {
+            for (Tuple tuple : tuples) keys.add(new String(tuple.getValue(), StandardCharsets.UTF_8));
+        }
+        hotKeyDetector.applyClusterHot(keys);
+    }
+
+    private long currentWindow() {
+        return System.currentTimeMillis() / TimeUnit.SECONDS.toMillis(window);
+    }
+
+    private byte[] windowKey(long index) {
+        return (prefix + ":" + index).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
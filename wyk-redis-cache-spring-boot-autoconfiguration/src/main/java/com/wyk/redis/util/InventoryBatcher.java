@@ -0,0 +1,177 @@
+package com.wyk.redis.util;
+
+
+import com.wyk.redis.exception.CustomizeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+  库存批量扣减: 并发的扣减请求进入队列,由一个线程在batchWindow内或凑满batchSize后合并为一次lua调用,
+  脚本按提交顺序逐个处理请求,每个请求(一个订单)全部成功或全部失败,结果分别完成各自的future
+  集群模式下按slot分组,每组一次调用;请求自身的key跨slot时不合并,直接走RedisUtil逐次扣减
+ */
+public class InventoryBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(InventoryBatcher.class);
+    private static final int NO_SLOT = -1;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisUtil redisUtil;
+    private final int batchSize;
+    private final long windowNanos;
+    private final SlotRouter slotRouter;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public InventoryBatcher(RedisTemplate<String, Object> redisTemplate, RedisUtil redisUtil, SlotRouter slotRouter,
+                            Integer batchSize, Long windowMillis) {
+        if (batchSize == null || batchSize < 1) throw CustomizeException.badRequest("批量扣减数量必须大于0");
+        this.redisTemplate = redisTemplate;
+        this.redisUtil = redisUtil;
+        this.batchSize = batchSize;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.slotRouter = slotRouter;
+        this.worker = ThreadFactories.create("wyk-inventory-batch-", false).newThread(this::run);
+        this.worker.start();
+    }
+
+    //单商品扣减,keys为(库存,锁定库存),结果与RedisUtil.deductInv(List,Integer)一致
+    public CompletableFuture<Boolean> deductInv(List<String> keys, Integer num) {
+        return submit(keys, List.of(num), true);
+    }
+
+    //一个订单的多商品扣减,keys按(库存,锁定库存)成对排列,全部成功或全部失败
+    public CompletableFuture<Boolean> deductInv(List<String> keys, List<Integer> nums) {
+        return submit(keys, nums, false);
+    }
+
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    //停止合并,已提交的请求执行完后退出;工作线程退出后才入队的请求由关闭线程执行,保证每个future都会完成
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) return;
+        List<Request> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) flush(rest);
+    }
+
+    private CompletableFuture<Boolean> submit(List<String> keys, List<Integer> nums, boolean single) {
+        if (keys == null || nums == null || keys.size() != nums.size() * 2) {
+            throw CustomizeException.badRequest("库存key需按(库存,锁定库存)成对传入");
+        }
+        for (Integer num : nums) {
+            if (num == null) throw CustomizeException.badRequest("库存数量不能为空");
+        }
+        int slot = slot(keys);
+        if (slot == NO_SLOT || !running) {
+            return CompletableFuture.completedFuture(single
+                    ? redisUtil.deductInv(keys, nums.get(0)) : redisUtil.deductInv(keys, nums));
+        }
+        Request request = new Request(List.copyOf(keys), List.copyOf(nums), single, slot, new CompletableFuture<>());
+        queue.add(request);
+        //关闭后才入队且工作线程已退出时由调用线程执行
+        if (!running && !worker.isAlive() && queue.remove(request)) {
+            request.future.complete(single ? redisUtil.deductInv(keys, nums.get(0)) : redisUtil.deductInv(keys, nums));
+        }
+        return request.future;
+    }
+
+    private void run() {
+        List<Request> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Request first = running ? queue.take() : queue.poll();
+                if (first == null) break;
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 && running ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                //关闭时继续处理剩余请求
+            }
+            if (batch.isEmpty()) continue;
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    //按slot分组,每组一次脚本调用
+    private void flush(List<Request> batch) {
+        Map<Integer, List<Request>> bySlot = new LinkedHashMap<>();
+        for (Request request : batch) bySlot.computeIfAbsent(request.slot, s -> new ArrayList<>()).add(request);
+        for (List<Request> group : bySlot.values()) {
+            try {
+                execute(group);
+            } catch (Exception e) {
+                log.warn("批量扣减库存失败,请求数: {},error: {}", group.size(), e.getMessage());
+                log.debug("批量扣减库存失败", e);
+                for (Request request : group) request.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void execute(List<Request> group) {
+        Map<String, Integer> index = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        for (Request request : group) {
+            args.add(String.valueOf(request.nums.size()));
+            args.add(request.single ? "1" : "0");
+            for (int i = 0; i < request.nums.size(); i++) {
+                args.add(String.valueOf(index(request.keys.get(2 * i), index, keys)));
+                args.add(String.valueOf(index(request.keys.get(2 * i + 1), index, keys)));
+                args.add(request.nums.get(i).toString());
+            }
+        }
+        List<?> results = redisTemplate.execute(LuaScripts.DEDUCT_BATCH, RedisSerializer.string(),
+                LuaScripts.LIST_RESULT, keys, args.toArray());
+        for (int i = 0; i < group.size(); i++) {
+            boolean ok = results != null && i < results.size() && results.get(i) instanceof Long l && l == 1L;
+            group.get(i).future.complete(ok);
+        }
+    }
+
+    //lua下标从1开始
+    private static int index(String key, Map<String, Integer> index, List<String> keys) {
+        return index.computeIfAbsent(key, k -> {
+            keys.add(k);
+            return keys.size();
+        });
+    }
+
+    //非集群时所有请求同一组;集群时请求的key须在同一slot
+    private int slot(List<String> keys) {
+        if (!slotRouter.isCluster()) return 0;
+        return slotRouter.spansSlots(keys) ? NO_SLOT : SlotRouter.slot(keys.get(0));
+    }
+
+    private record Request(List<String> keys, List<Integer> nums, boolean single, int slot,
+                           CompletableFuture<Boolean> future) {
+    }
+}
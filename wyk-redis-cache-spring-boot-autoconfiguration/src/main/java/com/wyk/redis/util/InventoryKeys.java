@@ -0,0 +1,50 @@
+package com.wyk.redis.util;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/*
+  库存key生成: 库存key为前缀+商品id,锁定库存key为锁定前缀+商品id;
+  开启hash tag时商品id包在{}中,同一商品的库存与锁定库存落在同一slot,可以在一个lua脚本中操作
+ */
+public class InventoryKeys {
+
+    private final String stockPrefix;
+    private final String lockedPrefix;
+    private final boolean hashTag;
+
+    public InventoryKeys(String stockPrefix, String lockedPrefix, boolean hashTag) {
+        this.stockPrefix = stockPrefix;
+        this.lockedPrefix = lockedPrefix;
+        this.hashTag = hashTag;
+    }
+
+    public String stock(Object id) {
+        return stockPrefix + tag(id);
+    }
+
+    public String locked(Object id) {
+        return lockedPrefix + tag(id);
+    }
+
+    //(库存,锁定库存),用于单商品库存方法
+    public List<String> pair(Object id) {
+        return List.of(stock(id), locked(id));
+    }
+
+    //按ids顺序成对排列,用于多商品库存方法
+    public List<String> pairs(Collection<?> ids) {
+        List<String> keys = new ArrayList<>(ids.size() * 2);
+        for (Object id : ids) {
+            keys.add(stock(id));
+            keys.add(locked(id));
+        }
+        return keys;
+    }
+
+    private String tag(Object id) {
+        return hashTag ? "{" + id + "}" : String.valueOf(id);
+    }
+}
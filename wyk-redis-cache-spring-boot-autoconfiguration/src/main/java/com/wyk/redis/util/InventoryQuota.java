@@ -0,0 +1,330 @@
+package com.wyk.redis.util;
+
+
+import com.wyk.redis.exception.CustomizeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+  本地库存额度: 节点从redis库存一次租借一个额度到本地计数器,额度内的扣减只在本地CAS,不访问redis;
+  已扣减数量每flushMillis毫秒批量从额度哈希转入锁定库存,paySuccess、addInv前先同步转入该商品的待提交数量;
+  额度哈希中只保留未提交数量,租约到期或关闭时提交后归还剩余部分;库存不足一个额度时改为RedisUtil逐次扣减
+  节点宕机时最后一次提交之后的扣减无法确认,会随剩余额度回到库存,最多为一个提交间隔内的扣减量
+  库存为0且没有节点持有额度时判定售罄,通过pub/sub广播,各节点直接拒绝该商品的请求
+  额度哈希key为库存key:quota,集群模式下库存、锁定库存需带相同hash tag
+ */
+public class InventoryQuota implements MessageListener {
+
+    private static final Logger log = LoggerFactory.getLogger(InventoryQuota.class);
+    private static final RedisSerializer<Long> RESULT_SERIALIZER = new GenericToStringSerializer<>(Long.class);
+    private static final char SEPARATOR = '|';
+    private static final String SOLD_OUT = "S";
+    private static final String RESTOCK = "R";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisUtil redisUtil;
+    private final long block;
+    private final long leaseMillis;
+    private final byte[] channel;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, Quota> quotas = new ConcurrentHashMap<>();
+    //售罄商品与标记过期时间,过期后重新访问redis确认
+    private final Map<String, Long> soldOut = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public InventoryQuota(RedisTemplate<String, Object> redisTemplate, RedisUtil redisUtil, Long block,
+                          Long leaseSeconds, Long flushMillis, String channel) {
+        if (block == null || block < 1) throw CustomizeException.badRequest("库存额度必须大于0");
+        this.redisTemplate = redisTemplate;
+        this.redisUtil = redisUtil;
+        this.block = block;
+        this.leaseMillis = TimeUnit.SECONDS.toMillis(leaseSeconds);
+        this.channel = channel.getBytes(StandardCharsets.UTF_8);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(ThreadFactories.create("wyk-inventory-quota-", false));
+        scheduler.scheduleWithFixedDelay(this::tick, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    //keys为(库存,锁定库存),与RedisUtil.deductInv一致
+    public boolean deductInv(List<String> keys, Integer num) {
+        if (keys == null || keys.size() != 2) {
+            throw CustomizeException.badRequest("库存key需按(库存,锁定库存)成对传入");
+        }
+        if (num == null) throw CustomizeException.badRequest("库存数量不能为空");
+        String stockKey = keys.get(0);
+        if (isSoldOut(stockKey)) return false;
+        if (num > 0 && num <= block) {
+            Quota quota = quotas.computeIfAbsent(stockKey, k -> new Quota(keys));
+            if (quota.unlimited && quota.alive()) return true;
+            if (take(quota, num)) return true;
+            if (topUp(quota) && (quota.unlimited || take(quota, num))) return true;
+        }
+        if (redisUtil.deductInv(keys, num)) return true;
+        checkSoldOut(keys);
+        return false;
+    }
+
+    //回补后清除售罄标记,回补前先提交本地已扣减数量,保证锁定库存足够
+    public boolean addInv(List<String> keys, Integer num) {
+        flush(keys);
+        boolean result = redisUtil.addInv(keys, num);
+        if (result) restock(keys.get(0));
+        return result;
+    }
+
+    //支付前先提交本地已扣减数量,keys按(库存,锁定库存)成对传入以定位额度,nums[i]对应第i对
+    public boolean paySuccess(List<String> keys, List<Integer> nums) {
+        if (keys == null || nums == null || keys.size() != nums.size() * 2) {
+            throw CustomizeException.badRequest("库存key需按(库存,锁定库存)成对传入");
+        }
+        flush(keys);
+        List<String> lockedKeys = new ArrayList<>(nums.size());
+        for (int i = 1; i < keys.size(); i += 2) lockedKeys.add(keys.get(i));
+        return redisUtil.paySuccess(lockedKeys, nums);
+    }
+
+    //补货后调用,清除所有节点的售罄标记
+    public void restock(String stockKey) {
+        soldOut.remove(stockKey);
+        publish(RESTOCK, stockKey);
+    }
+
+    public boolean isSoldOut(String stockKey) {
+        Long expireAt = soldOut.get(stockKey);
+        if (expireAt == null) return false;
+        if (expireAt > System.currentTimeMillis()) return true;
+        soldOut.remove(stockKey, expireAt);
+        return false;
+    }
+
+    //本地剩余额度
+    public long getAvailable(String stockKey) {
+        Quota quota = quotas.get(stockKey);
+        return quota == null ? 0 : quota.available.get();
+    }
+
+    public int getQuotaCount() {
+        return quotas.size();
+    }
+
+    public int getSoldOutCount() {
+        return soldOut.size();
+    }
+
+    //接收售罄与补货消息,格式为 节点|类型|库存key
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int first = body.indexOf(SEPARATOR);
+        int second = body.indexOf(SEPARATOR, first + 1);
+        if (first < 0 || second < 0) return;
+        if (body.regionMatches(0, nodeId, 0, first) && first == nodeId.length()) return;
+        String type = body.substring(first + 1, second);
+        String stockKey = body.substring(second + 1);
+        if (SOLD_OUT.equals(type)) {
+            soldOut.put(stockKey, System.currentTimeMillis() + leaseMillis);
+            log.debug("收到售罄消息: {}", stockKey);
+        } else if (RESTOCK.equals(type)) {
+            soldOut.remove(stockKey);
+            log.debug("收到补货消息: {}", stockKey);
+        }
+    }
+
+    //停止调度并归还全部额度
+    public void shutdown() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        quotas.values().forEach(this::release);
+        quotas.clear();
+    }
+
+    //批量提交已扣减数量,归还到期额度
+    private void tick() {
+        long now = System.currentTimeMillis();
+        for (Quota quota : quotas.values()) {
+            try {
+                if (quota.expireAt > now) {
+                    commit(quota);
+                    continue;
+                }
+                release(quota);
+                quotas.remove(quota.keys.get(0), quota);
+            } catch (Exception e) {
+                log.warn("库存额度同步失败,key: {},error: {}", quota.keys.get(0), e.getMessage());
+                log.debug("库存额度同步失败,key: {}", quota.keys.get(0), e);
+            }
+        }
+    }
+
+    //租借一个额度,其他线程正在租借或本租约已不能续借时直接返回
+    private boolean topUp(Quota quota) {
+        if (!quota.alive() || quota.drained || !quota.lock.tryLock()) return false;
+        try {
+            if (!quota.alive()) return false;
+            long now = System.currentTimeMillis();
+            String stockKey = quota.keys.get(0);
+            Long result = execute(LuaScripts.QUOTA_LEASE, List.of(stockKey, quotaKey(stockKey), expKey(stockKey)),
+                    now, nodeId, block, now + leaseMillis * 2);
+            if (result == null || result == 0) {
+                //库存不足一个额度,本租约期内改为逐次扣减
+                quota.drained = true;
+                return false;
+            }
+            if (result == -1) {
+                quota.unlimited = true;
+                return true;
+            }
+            quota.available.addAndGet(result);
+            return true;
+        } catch (Exception e) {
+            log.warn("租借库存额度失败,key: {},error: {}", quota.keys.get(0), e.getMessage());
+            log.debug("租借库存额度失败,key: {}", quota.keys.get(0), e);
+            return false;
+        } finally {
+            quota.lock.unlock();
+        }
+    }
+
+    //本地扣减,只记录待提交数量,由tick批量转入锁定库存
+    private boolean take(Quota quota, long num) {
+        if (!quota.tryTake(num)) return false;
+        quota.pending.addAndGet(num);
+        return true;
+    }
+
+    //同步提交keys中各商品的待提交数量,keys按(库存,锁定库存)成对传入
+    private void flush(List<String> keys) {
+        for (int i = 0; i < keys.size(); i += 2) {
+            Quota quota = quotas.get(keys.get(i));
+            if (quota != null) commit(quota);
+        }
+    }
+
+    //待提交数量从额度哈希转入锁定库存,失败时放回待提交数量,下次重试
+    private void commit(Quota quota) {
+        long num = quota.pending.getAndSet(0);
+        if (num == 0) return;
+        String stockKey = quota.keys.get(0);
+        try {
+            Long shortage = execute(LuaScripts.QUOTA_COMMIT,
+                    List.of(stockKey, quotaKey(stockKey), expKey(stockKey), quota.keys.get(1)), nodeId, num);
+            if (shortage != null && shortage > 0) {
+                log.warn("额度已被回收且库存不足,超卖数量: {},key: {}", shortage, stockKey);
+            }
+        } catch (Exception e) {
+            quota.pending.addAndGet(num);
+            throw e;
+        }
+    }
+
+    //停止本地扣减,提交已扣减数量后归还redis中剩余的额度
+    private void release(Quota quota) {
+        quota.lock.lock();
+        try {
+            quota.expireAt = 0;
+            quota.available.set(0);
+            if (quota.unlimited) return;
+            String stockKey = quota.keys.get(0);
+            commit(quota);
+            execute(LuaScripts.QUOTA_RELEASE, List.of(stockKey, quotaKey(stockKey), expKey(stockKey)), nodeId);
+            //归还期间完成的扣减直接从库存提交
+            commit(quota);
+        } catch (Exception e) {
+            log.warn("归还库存额度失败,过期后由其他节点回收,key: {},error: {}", quota.keys.get(0), e.getMessage());
+            log.debug("归还库存额度失败,key: {}", quota.keys.get(0), e);
+        } finally {
+            quota.lock.unlock();
+        }
+    }
+
+    private void checkSoldOut(List<String> keys) {
+        String stockKey = keys.get(0);
+        try {
+            Long result = execute(LuaScripts.QUOTA_SOLD_OUT, List.of(stockKey, quotaKey(stockKey), expKey(stockKey)),
+                    System.currentTimeMillis());
+            if (!Long.valueOf(1L).equals(result)) return;
+            soldOut.put(stockKey, System.currentTimeMillis() + leaseMillis);
+            publish(SOLD_OUT, stockKey);
+            log.debug("商品已售罄: {}", stockKey);
+        } catch (Exception e) {
+            log.warn("售罄判断失败,key: {},error: {}", stockKey, e.getMessage());
+            log.debug("售罄判断失败,key: {}", stockKey, e);
+        }
+    }
+
+    private void publish(String type, String stockKey) {
+        try {
+            byte[] body = (nodeId + SEPARATOR + type + SEPARATOR + stockKey).getBytes(StandardCharsets.UTF_8);
+            redisTemplate.execute(connection -> connection.publish(channel, body), true);
+        } catch (Exception e) {
+            log.warn("库存消息广播失败,key: {},error: {}", stockKey, e.getMessage());
+            log.debug("库存消息广播失败,key: {}", stockKey, e);
+        }
+    }
+
+    private Long execute(RedisScript<Long> script, List<String> keys, Object... args) {
+        Object[] values = new Object[args.length];
+        for (int i = 0; i < args.length; i++) values[i] = String.valueOf(args[i]);
+        return redisTemplate.execute(script, RedisSerializer.string(), RESULT_SERIALIZER, keys, values);
+    }
+
+    private static String quotaKey(String stockKey) {
+        return stockKey + ":quota";
+    }
+
+    //额度过期集合,与额度哈希同一slot
+    private static String expKey(String stockKey) {
+        return SlotRouter.sameSlotKey(quotaKey(stockKey), ":exp");
+    }
+
+    //单个商品的本地额度,租约期内可多次续借
+    private final class Quota {
+        private final List<String> keys;
+        private final AtomicLong available = new AtomicLong();
+        //已在本地扣减、尚未转入锁定库存的数量
+        private final AtomicLong pending = new AtomicLong();
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile long expireAt = System.currentTimeMillis() + leaseMillis;
+        private volatile boolean unlimited;
+        private volatile boolean drained;
+
+        private Quota(List<String> keys) {
+            this.keys = List.copyOf(keys);
+        }
+
+        private boolean alive() {
+            return expireAt > System.currentTimeMillis();
+        }
+
+        private boolean tryTake(long num) {
+            long current;
+            do {
+                if (!alive()) return false;
+                current = available.get();
+                if (current < num) return false;
+            } while (!available.compareAndSet(current, current - num));
+            return true;
+        }
+    }
+}
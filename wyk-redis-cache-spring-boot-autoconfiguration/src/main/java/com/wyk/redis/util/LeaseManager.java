@@ -0,0 +1,194 @@
+package com.wyk.redis.util;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+  分布式锁租约管理(看门狗): 所有持有中的锁集中登记,
+  由一个调度线程按tick收集到期租约,按slot分组后用一次lua脚本批量比较value并PEXPIRE;
+  分组交给SlotRouter,非集群时所有租约为一组,每batchSize个租约一次脚本调用;单个批次失败不影响其他批次,下次tick重试
+ */
+public class LeaseManager {
+
+    private static final Logger log = LoggerFactory.getLogger(LeaseManager.class);
+
+    //参数原样传递: byte[]直接写入,其余按字符串
+    private static final RedisSerializer<Object> ARGS_SERIALIZER = new RedisSerializer<>() {
+        @Override
+        public byte[] serialize(Object value) {
+            return value instanceof byte[] bytes ? bytes : String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes) {
+            return bytes;
+        }
+    };
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final SlotRouter slotRouter;
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final long tickMillis;
+    private final int batchSize;
+
+    private final LongAdder renewed = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+    private volatile long lastTickAt;
+    private volatile long lastLagMillis; //最近一次tick中最大的续期延迟
+    private volatile long maxLagMillis;
+    private volatile long lastTickCostMillis;
+
+    public LeaseManager(RedisTemplate<String, Object> redisTemplate, SlotRouter slotRouter, Long tickMillis, Integer batchSize) {
+        this.redisTemplate = redisTemplate;
+        this.slotRouter = slotRouter;
+        this.tickMillis = tickMillis;
+        this.batchSize = batchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wyk-lease-renewal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::renew, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    //登记租约,同一key的旧租约被覆盖
+    public void register(String key, Object value, long ttlMillis) {
+        byte[] rawValue = serializeValue(value);
+        leases.put(key, new Lease(key, rawValue, ttlMillis, System.currentTimeMillis() + ttlMillis / 3));
+    }
+
+    //注销租约,仅当value一致
+    public void unregister(String key, Object value) {
+        byte[] rawValue = serializeValue(value);
+        leases.computeIfPresent(key, (k, lease) -> Arrays.equals(lease.value, rawValue) ? null : lease);
+    }
+
+    //批量续期到期租约
+    private void renew() {
+        long start = System.currentTimeMillis();
+        try {
+            List<Lease> due = new ArrayList<>();
+            long lag = 0;
+            for (Lease lease : leases.values()) {
+                if (lease.renewAt <= start) {
+                    lag = Math.max(lag, start - lease.renewAt);
+                    due.add(lease);
+                }
+            }
+            lastLagMillis = lag;
+            maxLagMillis = Math.max(maxLagMillis, lag);
+            if (due.isEmpty()) return;
+            for (List<Lease> slotLeases : slotRouter.group(due, lease -> lease.key).values()) {
+                for (int from = 0; from < slotLeases.size(); from += batchSize) {
+                    List<Lease> batch = slotLeases.subList(from, Math.min(from + batchSize, slotLeases.size()));
+                    try {
+                        renewBatch(batch);
+                    } catch (Exception e) {
+                        log.warn("租约批量续期失败,数量: {},error: {}", batch.size(), e.getMessage());
+                        log.debug("租约批量续期失败", e);
+                    }
+                }
+            }
+        } finally {
+            lastTickAt = start;
+            lastTickCostMillis = System.currentTimeMillis() - start;
+        }
+    }
+
+    private void renewBatch(List<Lease> batch) {
+        List<String> keys = new ArrayList<>(batch.size());
+        Object[] args = new Object[batch.size() * 2];
+        for (int i = 0; i < batch.size(); i++) {
+            Lease lease = batch.get(i);
+            keys.add(lease.key);
+            args[i] = lease.value;
+            args[batch.size() + i] = lease.ttlMillis;
+        }
+        List<?> results = redisTemplate.execute(LuaScripts.RENEW, ARGS_SERIALIZER, LuaScripts.LIST_RESULT, keys, args);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < batch.size(); i++) {
+            Lease lease = batch.get(i);
+            boolean ok = results != null && i < results.size() && results.get(i) instanceof Long l && l == 1L;
+            if (ok) {
+                lease.renewAt = now + lease.ttlMillis / 3;
+                renewed.increment();
+            } else {
+                //锁已过期或被他人持有,停止续期
+                leases.remove(lease.key, lease);
+                lost.increment();
+                log.debug("租约已失效,停止续期: {}", lease.key);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serializeValue(Object value) {
+        return ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(value);
+    }
+
+    public int getLeaseCount() {
+        return leases.size();
+    }
+
+    public Set<String> getLeaseKeys() {
+        return Collections.unmodifiableSet(leases.keySet());
+    }
+
+    public long getRenewedCount() {
+        return renewed.sum();
+    }
+
+    public long getLostCount() {
+        return lost.sum();
+    }
+
+    public long getLastTickAt() {
+        return lastTickAt;
+    }
+
+    public long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    public long getLastTickCostMillis() {
+        return lastTickCostMillis;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private static final class Lease {
+        private final String key;
+        private final byte[] value;
+        private final long ttlMillis;
+        private volatile long renewAt;
+
+        private Lease(String key, byte[] value, long ttlMillis, long renewAt) {
+            this.key = key;
+            this.value = value;
+            this.ttlMillis = ttlMillis;
+            this.renewAt = renewAt;
+        }
+    }
+}
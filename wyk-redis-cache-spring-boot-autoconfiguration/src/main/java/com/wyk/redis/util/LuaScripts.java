@@ -0,0 +1,476 @@
+package com.wyk.redis.util;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/*
+  lua脚本注册表: 所有脚本在类加载时创建一次,SHA1只计算一次,启动时SCRIPT LOAD预加载;
+  执行时先EVALSHA只发送摘要,服务端缺少脚本(主从切换、SCRIPT FLUSH)返回NOSCRIPT时自动回退EVAL并重新缓存
+  库存脚本的ARGV按纯字符串传递,每个key只读取一次,检查全部通过后再统一修改,保证全部成功或全部失败
+ */
+public final class LuaScripts {
+
+    private static final Logger log = LoggerFactory.getLogger(LuaScripts.class);
+
+    //value一致时删除,用于释放分布式锁
+    public static final RedisScript<Long> UNLOCK = RedisScript.of("""
+            if redis.call('GET',KEYS[1]) == ARGV[1] then
+                redis.call('DEL',KEYS[1])
+                return 1
+            end
+            return 0
+            """, Long.class);
+
+    //批量续期: 前n个ARGV为value,后n个为过期毫秒,返回每个key是否续期成功
+    @SuppressWarnings("rawtypes")
+    public static final RedisScript<List> RENEW = RedisScript.of("""
+            local n = #KEYS
+            local result = {}
+            for i = 1, n do
+                if redis.call('GET', KEYS[i]) == ARGV[i] then
+                    redis.call('PEXPIRE', KEYS[i], ARGV[n + i])
+                    result[i] = 1
+                else
+                    result[i] = 0
+                end
+            end
+            return result
+            """, List.class);
+
+    //扣减: KEYS[1]库存,KEYS[2]锁定库存;库存-1为不限量,返回-1,成功返回1,不足或数量非法返回0
+    public static final RedisScript<Long> DEDUCT = RedisScript.of("""
+            local stock = tonumber(redis.call('GET',KEYS[1])) or 0
+            if stock == -1 then
+                return -1
+            end
+            local num = tonumber(ARGV[1])
+            if num == nil or num <= 0 or stock < num then
+                return 0
+            end
+            redis.call('DECRBY',KEYS[1],num)
+            redis.call('INCRBY',KEYS[2],num)
+            return 1
+            """, Long.class);
+
+    //回补: 锁定库存转回库存,不限量时不处理
+    public static final RedisScript<Long> ADD = RedisScript.of("""
+            local num = tonumber(ARGV[1])
+            if num == nil or num <= 0 then
+                return 0
+            end
+            local stock = tonumber(redis.call('GET',KEYS[1])) or 0
+            if stock == -1 then
+                return 0
+            end
+            local locked = tonumber(redis.call('GET',KEYS[2])) or 0
+            if locked < num then
+                return 0
+            end
+            redis.call('DECRBY',KEYS[2],num)
+            redis.call('INCRBY',KEYS[1],num)
+            return 1
+            """, Long.class);
+
+    //多商品扣减: KEYS按(库存,锁定库存)成对排列,ARGV[i]对应第i对;库存只读取一次并在第二轮复用
+    //同一商品出现多次时按累计数量判断,避免逐项判断通过后扣成负数
+    public static final RedisScript<Long> DEDUCT_MULTI = RedisScript.of("""
+            local n = #ARGV
+            local remaining = {}
+            for i = 1, n do
+                local key = KEYS[2*i-1]
+                local num = tonumber(ARGV[i]) or 0
+                if num < 0 then
+                    return 0
+                end
+                if remaining[key] == nil then
+                    remaining[key] = tonumber(redis.call('GET',key)) or 0
+                end
+                if remaining[key] ~= -1 then
+                    if remaining[key] < num then
+                        return 0
+                    end
+                    remaining[key] = remaining[key] - num
+                end
+            end
+            for i = 1, n do
+                local num = tonumber(ARGV[i]) or 0
+                if remaining[KEYS[2*i-1]] ~= -1 and num > 0 then
+                    redis.call('DECRBY',KEYS[2*i-1],num)
+                    redis.call('INCRBY',KEYS[2*i],num)
+                end
+            end
+            return 1
+            """, Long.class);
+
+    //多商品回补,同一商品出现多次时按累计数量判断锁定库存
+    public static final RedisScript<Long> ADD_MULTI = RedisScript.of("""
+            local n = #ARGV
+            local stocks = {}
+            local locked = {}
+            for i = 1, n do
+                local key = KEYS[2*i-1]
+                local lockedKey = KEYS[2*i]
+                local num = tonumber(ARGV[i]) or 0
+                if num < 0 then
+                    return 0
+                end
+                if stocks[key] == nil then
+                    stocks[key] = tonumber(redis.call('GET',key)) or 0
+                end
+                if stocks[key] ~= -1 then
+                    if locked[lockedKey] == nil then
+                        locked[lockedKey] = tonumber(redis.call('GET',lockedKey)) or 0
+                    end
+                    if locked[lockedKey] < num then
+                        return 0
+                    end
+                    locked[lockedKey] = locked[lockedKey] - num
+                end
+            end
+            for i = 1, n do
+                local num = tonumber(ARGV[i]) or 0
+                if stocks[KEYS[2*i-1]] ~= -1 and num > 0 then
+                    redis.call('DECRBY',KEYS[2*i],num)
+                    redis.call('INCRBY',KEYS[2*i-1],num)
+                end
+            end
+            return 1
+            """, Long.class);
+
+    //支付成功: 删除锁定库存,KEYS[i]为锁定库存,ARGV[i]为数量;同一key出现多次时按累计数量判断
+    public static final RedisScript<Long> PAY_SUCCESS = RedisScript.of("""
+            local locked = {}
+            for i = 1, #KEYS do
+                local num = tonumber(ARGV[i]) or 0
+                if num < 0 then
+                    return 0
+                end
+                if locked[KEYS[i]] == nil then
+                    locked[KEYS[i]] = tonumber(redis.call('GET',KEYS[i])) or 0
+                end
+                if locked[KEYS[i]] < num then
+                    return 0
+                end
+                locked[KEYS[i]] = locked[KEYS[i]] - num
+            end
+            for i = 1, #KEYS do
+                local num = tonumber(ARGV[i]) or 0
+                if num > 0 then
+                    redis.call('DECRBY',KEYS[i],num)
+                end
+            end
+            return 1
+            """, Long.class);
+
+    //分片取出: 从KEYS[1]库存分片取出至多ARGV[1]件,返回取出数量;不限量或无库存返回0
+    //取出的同时在KEYS[2]转移记录哈希中记下 ARGV[2]转移id -> 目标分片ARGV[3]|数量,放入目标分片后删除
+    public static final RedisScript<Long> SHARD_TAKE = RedisScript.of("""
+            local max = tonumber(ARGV[1]) or 0
+            local stock = tonumber(redis.call('GET',KEYS[1])) or 0
+            if stock == -1 or stock <= 0 or max <= 0 then
+                return 0
+            end
+            local taken = math.min(stock, max)
+            redis.call('DECRBY',KEYS[1],taken)
+            redis.call('HSET',KEYS[2],ARGV[2],ARGV[3] .. '|' .. taken)
+            return taken
+            """, Long.class);
+
+    //分片放入: 转移id ARGV[1]的ARGV[2]件放入KEYS[1]库存分片,KEYS[2]记录已放入的id,重复调用只放入一次
+    public static final RedisScript<Long> SHARD_PUT = RedisScript.of("""
+            if redis.call('HEXISTS',KEYS[2],ARGV[1]) == 1 then
+                return 0
+            end
+            redis.call('INCRBY',KEYS[1],tonumber(ARGV[2]))
+            redis.call('HSET',KEYS[2],ARGV[1],ARGV[2])
+            return 1
+            """, Long.class);
+
+    //分片回补: 从KEYS[2]锁定库存转回至多ARGV[1]件到KEYS[1]库存,返回转回数量;不限量返回-1
+    public static final RedisScript<Long> SHARD_RELEASE = RedisScript.of("""
+            local stock = tonumber(redis.call('GET',KEYS[1])) or 0
+            if stock == -1 then
+                return -1
+            end
+            local locked = tonumber(redis.call('GET',KEYS[2])) or 0
+            local moved = math.min(locked, tonumber(ARGV[1]) or 0)
+            if moved <= 0 then
+                return 0
+            end
+            redis.call('DECRBY',KEYS[2],moved)
+            redis.call('INCRBY',KEYS[1],moved)
+            return moved
+            """, Long.class);
+
+    //分片支付: 从KEYS[1]锁定库存删除至多ARGV[1]件,返回删除数量
+    public static final RedisScript<Long> SHARD_PAY = RedisScript.of("""
+            local locked = tonumber(redis.call('GET',KEYS[1])) or 0
+            local paid = math.min(locked, tonumber(ARGV[1]) or 0)
+            if paid <= 0 then
+                return 0
+            end
+            redis.call('DECRBY',KEYS[1],paid)
+            return paid
+            """, Long.class);
+
+    //回收过期记录: 哈希中id字段为数量,过期时间记录在有序集合中(score为过期时间),过期的数量放回库存;用于额度租约与跨slot预留
+    //每次最多回收100条,剩余的由后续调用继续回收,脚本耗时与未过期记录数无关
+    private static final String RECLAIM = """
+            local function reclaim(stockKey, hashKey, expKey, now)
+                local expired = redis.call('ZRANGEBYSCORE',expKey,'-inf','(' .. now,'LIMIT',0,100)
+                for _, id in ipairs(expired) do
+                    local count = tonumber(redis.call('HGET',hashKey,id)) or 0
+                    if count > 0 then
+                        redis.call('INCRBY',stockKey,count)
+                    end
+                    redis.call('HDEL',hashKey,id)
+                    redis.call('ZREM',expKey,id)
+                end
+            end
+            """;
+
+    //租借额度: KEYS[1]库存,KEYS[2]额度哈希,KEYS[3]额度过期集合;ARGV为当前时间、节点、数量、过期时间
+    //不限量返回-1,库存不足一个额度返回0(改为逐次扣减),成功返回租借数量
+    public static final RedisScript<Long> QUOTA_LEASE = RedisScript.of(RECLAIM + """
+            reclaim(KEYS[1], KEYS[2], KEYS[3], ARGV[1])
+            local stock = tonumber(redis.call('GET',KEYS[1])) or 0
+            if stock == -1 then
+                return -1
+            end
+            local block = tonumber(ARGV[3])
+            if stock < block then
+                return 0
+            end
+            redis.call('DECRBY',KEYS[1],block)
+            redis.call('HINCRBY',KEYS[2],ARGV[2],block)
+            redis.call('ZADD',KEYS[3],ARGV[4],ARGV[2])
+            return block
+            """, Long.class);
+
+    //提交已扣减数量: KEYS[1]库存,KEYS[2]额度哈希,KEYS[3]额度过期集合,KEYS[4]锁定库存;ARGV为节点、数量
+    //哈希中只记录未提交的额度,优先从额度转入锁定库存,用完时删除该节点的记录;
+    //额度已过期回收时不足部分从库存补扣,返回库存也不足的数量(已超卖)
+    public static final RedisScript<Long> QUOTA_COMMIT = RedisScript.of("""
+            local num = tonumber(ARGV[2]) or 0
+            if num <= 0 then
+                return 0
+            end
+            local leased = tonumber(redis.call('HGET',KEYS[2],ARGV[1])) or 0
+            local shortage = num
+            if leased > 0 then
+                if leased <= num then
+                    redis.call('HDEL',KEYS[2],ARGV[1])
+                    redis.call('ZREM',KEYS[3],ARGV[1])
+                    shortage = num - leased
+                else
+                    redis.call('HINCRBY',KEYS[2],ARGV[1],-num)
+                    shortage = 0
+                end
+            end
+            if shortage > 0 then
+                local stock = tonumber(redis.call('GET',KEYS[1])) or 0
+                if stock == -1 then
+                    shortage = 0
+                elseif stock > 0 then
+                    local taken = math.min(stock, shortage)
+                    redis.call('DECRBY',KEYS[1],taken)
+                    shortage = shortage - taken
+                end
+            end
+            redis.call('INCRBY',KEYS[4],num)
+            return shortage
+            """, Long.class);
+
+    //归还额度: KEYS[1]库存,KEYS[2]额度哈希,KEYS[3]额度过期集合;ARGV[1]节点
+    //调用前已提交本地扣减数量,哈希中剩余的都是未使用额度,全部放回库存,返回放回的数量
+    public static final RedisScript<Long> QUOTA_RELEASE = RedisScript.of("""
+            local unused = tonumber(redis.call('HGET',KEYS[2],ARGV[1])) or 0
+            if unused > 0 then
+                redis.call('INCRBY',KEYS[1],unused)
+            end
+            redis.call('HDEL',KEYS[2],ARGV[1])
+            redis.call('ZREM',KEYS[3],ARGV[1])
+            return unused
+            """, Long.class);
+
+    //售罄判断: KEYS[1]库存,KEYS[2]额度哈希,KEYS[3]额度过期集合;ARGV[1]当前时间;库存为0且没有节点持有额度时返回1
+    public static final RedisScript<Long> QUOTA_SOLD_OUT = RedisScript.of(RECLAIM + """
+            reclaim(KEYS[1], KEYS[2], KEYS[3], ARGV[1])
+            local stock = tonumber(redis.call('GET',KEYS[1])) or 0
+            if stock == -1 or stock > 0 then
+                return 0
+            end
+            if redis.call('HLEN',KEYS[2]) > 0 then
+                return 0
+            end
+            return 1
+            """, Long.class);
+
+    //批量扣减: KEYS为本批涉及的全部key;ARGV按请求依次排列: 商品数、是否单商品(1/0),之后每个商品为库存key下标、锁定库存key下标、数量
+    //请求按顺序逐个判断,每个请求全部成功或全部失败,请求内同一商品按累计数量判断;库存只读取一次,最后每个key只写一次,返回每个请求的结果1/0
+    @SuppressWarnings("rawtypes")
+    public static final RedisScript<List> DEDUCT_BATCH = RedisScript.of("""
+            local values = {}
+            local deltas = {}
+            local result = {}
+            local p = 1
+            while p <= #ARGV do
+                local n = tonumber(ARGV[p])
+                local single = ARGV[p + 1] == '1'
+                p = p + 2
+                local ok = 1
+                local need = {}
+                for j = 0, n - 1 do
+                    local s = tonumber(ARGV[p + 3 * j])
+                    local num = tonumber(ARGV[p + 3 * j + 2]) or 0
+                    if values[s] == nil then
+                        values[s] = tonumber(redis.call('GET',KEYS[s])) or 0
+                    end
+                    if values[s] ~= -1 then
+                        need[s] = (need[s] or 0) + num
+                        if num < 0 or values[s] < need[s] or (single and num == 0) then
+                            ok = 0
+                        end
+                    end
+                end
+                if ok == 1 then
+                    for j = 0, n - 1 do
+                        local s = tonumber(ARGV[p + 3 * j])
+                        local l = tonumber(ARGV[p + 3 * j + 1])
+                        local num = tonumber(ARGV[p + 3 * j + 2]) or 0
+                        if values[s] ~= -1 and num > 0 then
+                            values[s] = values[s] - num
+                            deltas[s] = (deltas[s] or 0) - num
+                            deltas[l] = (deltas[l] or 0) + num
+                        end
+                    end
+                end
+                result[#result + 1] = ok
+                p = p + 3 * n
+            end
+            for i, delta in pairs(deltas) do
+                if delta ~= 0 then
+                    redis.call('INCRBY',KEYS[i],delta)
+                end
+            end
+            return result
+            """, List.class);
+
+    //跨slot预留: KEYS按(库存,预留哈希,预留过期集合)三个一组排列;ARGV为当前时间、事务id、过期时间,之后为各商品数量
+    //先回收过期预留,全部满足后扣减库存并记录到预留哈希,每个过期集合都写入事务id作为预留标记
+    public static final RedisScript<Long> TX_RESERVE = RedisScript.of(RECLAIM + """
+            local n = #ARGV - 3
+            for i = 1, n do
+                reclaim(KEYS[3*i-2], KEYS[3*i-1], KEYS[3*i], ARGV[1])
+            end
+            local remaining = {}
+            for i = 1, n do
+                local key = KEYS[3*i-2]
+                local num = tonumber(ARGV[3+i]) or 0
+                if num < 0 then
+                    return 0
+                end
+                if remaining[key] == nil then
+                    remaining[key] = tonumber(redis.call('GET',key)) or 0
+                end
+                if remaining[key] ~= -1 then
+                    if remaining[key] < num then
+                        return 0
+                    end
+                    remaining[key] = remaining[key] - num
+                end
+            end
+            for i = 1, n do
+                local num = tonumber(ARGV[3+i]) or 0
+                if remaining[KEYS[3*i-2]] ~= -1 and num > 0 then
+                    redis.call('DECRBY',KEYS[3*i-2],num)
+                    redis.call('HINCRBY',KEYS[3*i-1],ARGV[2],num)
+                end
+                redis.call('ZADD',KEYS[3*i],ARGV[3],ARGV[2])
+            end
+            return 1
+            """, Long.class);
+
+    //跨slot提交: KEYS按(预留哈希,预留过期集合,锁定库存)三个一组排列,ARGV为事务id、当前时间
+    //预留已被回收或已过期时返回0且不做修改
+    public static final RedisScript<Long> TX_COMMIT = RedisScript.of("""
+            local now = tonumber(ARGV[2])
+            for i = 1, #KEYS, 3 do
+                local exp = tonumber(redis.call('ZSCORE',KEYS[i+1],ARGV[1]))
+                if exp == nil or exp < now then
+                    return 0
+                end
+            end
+            for i = 1, #KEYS, 3 do
+                local count = tonumber(redis.call('HGET',KEYS[i],ARGV[1])) or 0
+                if count > 0 then
+                    redis.call('INCRBY',KEYS[i+2],count)
+                end
+                redis.call('HDEL',KEYS[i],ARGV[1])
+                redis.call('ZREM',KEYS[i+1],ARGV[1])
+            end
+            return 1
+            """, Long.class);
+
+    //跨slot撤销: KEYS按(库存,预留哈希,预留过期集合)三个一组排列,ARGV[1]为事务id;预留放回库存,可重复执行
+    public static final RedisScript<Long> TX_ABORT = RedisScript.of("""
+            for i = 1, #KEYS, 3 do
+                local count = tonumber(redis.call('HGET',KEYS[i+1],ARGV[1])) or 0
+                if count > 0 then
+                    redis.call('INCRBY',KEYS[i],count)
+                end
+                redis.call('HDEL',KEYS[i+1],ARGV[1])
+                redis.call('ZREM',KEYS[i+2],ARGV[1])
+            end
+            return 1
+            """, Long.class);
+
+    private static final List<RedisScript<?>> ALL = List.of(UNLOCK, RENEW, DEDUCT, ADD, DEDUCT_MULTI, ADD_MULTI, PAY_SUCCESS,
+            SHARD_TAKE, SHARD_PUT, SHARD_RELEASE, SHARD_PAY, QUOTA_LEASE, QUOTA_COMMIT, QUOTA_RELEASE, QUOTA_SOLD_OUT,
+            DEDUCT_BATCH, TX_RESERVE, TX_COMMIT, TX_ABORT);
+
+    //整数列表结果由驱动直接返回,无需反序列化
+    @SuppressWarnings("rawtypes")
+    public static final RedisSerializer<List> LIST_RESULT = new RedisSerializer<>() {
+        @Override
+        public byte[] serialize(List value) {
+            return null;
+        }
+
+        @Override
+        public List deserialize(byte[] bytes) {
+            return null;
+        }
+    };
+
+    private LuaScripts() {
+    }
+
+    public static List<RedisScript<?>> all() {
+        return ALL;
+    }
+
+    //预加载全部脚本,失败不影响使用,首次执行时由EVAL回退加载
+    public static void load(RedisTemplate<String, Object> redisTemplate) {
+        try {
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                for (RedisScript<?> script : ALL) {
+                    connection.scriptingCommands().scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+            log.info("lua脚本预加载完成,数量: {}", ALL.size());
+        } catch (Exception e) {
+            log.warn("lua脚本预加载失败,将在首次执行时加载: {}", e.getMessage());
+            log.debug("lua脚本预加载失败", e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.wyk.redis.util;
+
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.wyk.redis.codec.ValueCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+
+/*
+  本地一级缓存(Caffeine W-TinyLFU淘汰),位于redis之前,
+  写操作通过redis pub/sub广播失效消息,各节点收到后删除本地副本
+  默认保存编码后的字节,每次读取反序列化出新对象,调用方修改返回值不会污染本地副本;
+  字符串、数字等不可变类型直接保存。immutable为true时直接保存对象引用,省去编解码,需保证缓存值不会被修改
+ */
+public class NearCache implements MessageListener {
+
+    private static final Logger log = LoggerFactory.getLogger(NearCache.class);
+    private static final char SEPARATOR = '|';
+
+    private final Cache<String, Object> cache;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final byte[] channel;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ValueCodec codec;
+    private final boolean immutable;
+
+    public NearCache(RedisTemplate<String, Object> redisTemplate,
+                     String channel,
+                     Long maxSize,
+                     Long expires,
+                     ValueCodec codec,
+                     boolean immutable) {
+        this.redisTemplate = redisTemplate;
+        this.codec = codec;
+        this.immutable = immutable;
+        this.channel = channel.getBytes(StandardCharsets.UTF_8);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(expires))
+                .build();
+    }
+
+    public Object get(String key, JavaType javaType) {
+        if (key == null) return null;
+        Object value = cache.getIfPresent(key);
+        return value instanceof Encoded encoded ? codec.decode(encoded.bytes(), javaType) : value;
+    }
+
+    public boolean contains(String key) {
+        return key != null && cache.getIfPresent(key) != null;
+    }
+
+    public void put(String key, Object value) {
+        if (key == null || value == null) return;
+        cache.put(key, immutable || isImmutable(value) ? value : new Encoded(codec.encode(value)));
+    }
+
+    //仅删除本节点
+    public void invalidateLocal(String key) {
+        if (key != null) cache.invalidate(key);
+    }
+
+    //删除本节点并广播到其他节点
+    public void invalidate(String key) {
+        if (key == null) return;
+        cache.invalidate(key);
+        try {
+            byte[] body = (nodeId + SEPARATOR + key).getBytes(StandardCharsets.UTF_8);
+            redisTemplate.execute(connection -> connection.publish(channel, body), true);
+        } catch (Exception e) {
+            log.warn("本地缓存失效广播失败,key: {},error: {}", key, e.getMessage());
+            log.debug("本地缓存失效广播失败,key: {},error: ", key, e);
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    //接收其他节点的失效消息
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.indexOf(SEPARATOR);
+        if (index < 0) return;
+        if (body.regionMatches(0, nodeId, 0, index) && index == nodeId.length()) return;
+        String key = body.substring(index + 1);
+        cache.invalidate(key);
+        log.debug("收到本地缓存失效消息: {}", key);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    private static boolean isImmutable(Object value) {
+        return value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Character || value instanceof Enum<?>;
+    }
+
+    //编码后的缓存值,与方法本身返回byte[]的情况区分
+    private record Encoded(byte[] bytes) {
+    }
+}
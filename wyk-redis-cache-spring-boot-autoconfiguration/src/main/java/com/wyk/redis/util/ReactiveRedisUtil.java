@@ -0,0 +1,120 @@
+package com.wyk.redis.util;
+
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.wyk.redis.codec.ValueCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+  响应式redis工具类: 基于ReactiveRedisTemplate,值编码与RedisUtil共用同一个ValueCodec,
+  读写失败时记录日志并按未命中处理,不中断业务流
+ */
+public class ReactiveRedisUtil {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveRedisUtil.class);
+    private static final String LOCK_PREFIX = "DistributedLock";
+
+    private final ReactiveRedisTemplate<String, byte[]> redisTemplate;
+    private final ValueCodec codec;
+    private final String nilValue;
+    private final byte[] nilBytes;
+    private final Long nilTime;
+    private final Long max_expires;
+    private final Long min_expires;
+
+    public ReactiveRedisUtil(ReactiveRedisTemplate<String, byte[]> redisTemplate,
+                             ValueCodec codec,
+                             String nilValue,
+                             Long nilTime,
+                             Long max_expires,
+                             Long min_expires) {
+        this.redisTemplate = redisTemplate;
+        this.codec = codec;
+        this.nilValue = nilValue;
+        this.nilBytes = codec.encode(nilValue);
+        this.nilTime = nilTime;
+        this.max_expires = max_expires;
+        this.min_expires = min_expires;
+    }
+
+    //按目标类型读取,未命中为空,空值占位返回占位符
+    public Mono<Object> get(String key, JavaType javaType) {
+        return redisTemplate.opsForValue().get(key)
+                .map(bytes -> Arrays.equals(bytes, nilBytes) ? nilValue : codec.decode(bytes, javaType))
+                .onErrorResume(e -> {
+                    log.warn("响应式redis获取失败,key: {},javaType: {},error: {}", key, javaType, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    //设置随机过期时间
+    public Mono<Boolean> setRandomExpires(String key, Object value) {
+        return Mono.fromCallable(() -> codec.encode(value))
+                .flatMap(bytes -> redisTemplate.opsForValue().set(key, bytes, Duration.ofSeconds(randomExpires())))
+                .onErrorResume(e -> {
+                    log.warn("响应式设置随机过期redis失败,key: {},error: {}", key, e.getMessage());
+                    return Mono.just(false);
+                });
+    }
+
+    //设置空值占位
+    public Mono<Boolean> setNil(String key) {
+        return redisTemplate.opsForValue().set(key, nilBytes, Duration.ofSeconds(nilTime))
+                .onErrorResume(e -> {
+                    log.warn("响应式redis设置NULL值失败,key: {},error: {}", key, e.getMessage());
+                    return Mono.just(false);
+                });
+    }
+
+    //删除缓存
+    public Mono<Boolean> remove(String key) {
+        return redisTemplate.delete(key)
+                .map(count -> count > 0)
+                .onErrorResume(e -> {
+                    log.warn("响应式删除redis失败,key: {},error: {}", key, e.getMessage());
+                    return Mono.just(false);
+                });
+    }
+
+    //获取分布式锁,与RedisUtil使用相同的锁key,同步与异步调用互斥
+    public Mono<Boolean> setDistributedLock(String key, String value, Long timeSeconds) {
+        return redisTemplate.opsForValue()
+                .setIfAbsent(LOCK_PREFIX + key, value.getBytes(StandardCharsets.UTF_8), Duration.ofSeconds(timeSeconds))
+                .onErrorResume(e -> {
+                    log.warn("响应式获取分布式锁 {}:{} 失败: {}", key, value, e.getMessage());
+                    return Mono.just(false);
+                });
+    }
+
+    //释放分布式锁,仅当value一致
+    public Mono<Boolean> delDistributedLock(String key, String value) {
+        return redisTemplate.execute(LuaScripts.UNLOCK, List.of(LOCK_PREFIX + key),
+                        List.of(value.getBytes(StandardCharsets.UTF_8)))
+                .next()
+                .map(result -> result > 0)
+                .onErrorResume(e -> {
+                    log.warn("响应式释放分布式锁 {}:{} 失败: {}", key, value, e.getMessage());
+                    return Mono.just(false);
+                });
+    }
+
+    public String getNilValue() {
+        return nilValue;
+    }
+
+    //随机过期时间,单位s
+    private long randomExpires() {
+        return max_expires > min_expires
+                ? ThreadLocalRandom.current().nextLong(min_expires, max_expires)
+                : ThreadLocalRandom.current().nextLong(10, 31);
+    }
+}
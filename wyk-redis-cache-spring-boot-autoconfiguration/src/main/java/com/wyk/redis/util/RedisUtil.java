@@ -5,13 +5,28 @@ import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.wyk.redis.codec.SerializerValueCodec;
+import com.wyk.redis.exception.CustomizeException;
+import com.wyk.redis.codec.ValueCodec;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.concurrent.*;
 
 
@@ -20,9 +35,9 @@ import java.util.concurrent.*;
  */
 public class RedisUtil {
 
-    private static final ScheduledExecutorService schedule = Executors.newScheduledThreadPool(1);
-
     private static final long DEFAULT_TIME = 60;
+    private static final int SCAN_BATCH = 500; //SCAN每批数量
+    private static final RedisSerializer<Long> INV_RESULT_SERIALIZER = new GenericToStringSerializer<>(Long.class);
     private final RedisTemplate<String,Object> redisTemplate;
     private final ObjectMapper objectMapper;
     private static final Logger log = LoggerFactory.getLogger(RedisUtil.class);
@@ -31,9 +46,14 @@ public class RedisUtil {
     private final boolean watchdog; //仅cluster = true有效
     private final Long max_expires;
     private final Long min_expires;
-    private final Map<String,CompletableFuture<Void>> completableFutureMap = new ConcurrentHashMap<>();
+    private final LeaseManager leaseManager; //看门狗租约管理
+    private final ValueCodec codec; //缓存值编解码
+    private final byte[] nilBytes; //空值占位编码结果
+    private final SlotRouter slotRouter; //集群slot分组
+    private final CrossSlotInventory crossSlotInventory; //跨slot库存
 
-    private static final ScheduledExecutorService scheduleExecutor = Executors.newScheduledThreadPool(1);
+    //兼容旧版本: 开启watchdog时创建默认LeaseManager,续期线程为守护线程,随JVM退出;需要关闭时改用传入LeaseManager的构造方法
+    @Deprecated
     public RedisUtil(RedisTemplate<String, Object> redisTemplate,
                      ObjectMapper objectMapper,
                      Long nilTime,
@@ -41,6 +61,55 @@ public class RedisUtil {
                      Long min_expires,
                      String nilValue,
                      boolean watchdog) {
+        this(redisTemplate, objectMapper, nilTime, max_expires, min_expires, nilValue, watchdog,
+                watchdog ? new LeaseManager(redisTemplate, new SlotRouter(redisTemplate, 1, false), 500L, 200) : null);
+    }
+
+    //开启watchdog时需要传入由容器管理生命周期的LeaseManager
+    public RedisUtil(RedisTemplate<String, Object> redisTemplate,
+                     ObjectMapper objectMapper,
+                     Long nilTime,
+                     Long max_expires,
+                     Long min_expires,
+                     String nilValue,
+                     boolean watchdog,
+                     LeaseManager leaseManager) {
+        this(redisTemplate, objectMapper, nilTime, max_expires, min_expires, nilValue, watchdog, leaseManager,
+                new SerializerValueCodec(valueSerializer(redisTemplate), objectMapper));
+    }
+
+    public RedisUtil(RedisTemplate<String, Object> redisTemplate,
+                     ObjectMapper objectMapper,
+                     Long nilTime,
+                     Long max_expires,
+                     Long min_expires,
+                     String nilValue,
+                     boolean watchdog,
+                     LeaseManager leaseManager,
+                     ValueCodec codec) {
+        this(redisTemplate, objectMapper, nilTime, max_expires, min_expires, nilValue, watchdog, leaseManager, codec,
+                null, null);
+    }
+
+    //slotRouter不为空且为集群时,多key操作按slot分组并行执行,跨slot库存扣减使用两阶段预留,reserveTimeout单位s
+    public RedisUtil(RedisTemplate<String, Object> redisTemplate,
+                     ObjectMapper objectMapper,
+                     Long nilTime,
+                     Long max_expires,
+                     Long min_expires,
+                     String nilValue,
+                     boolean watchdog,
+                     LeaseManager leaseManager,
+                     ValueCodec codec,
+                     SlotRouter slotRouter,
+                     Long reserveTimeout) {
+        if (watchdog && leaseManager == null) throw CustomizeException.badRequest("开启看门狗需要注入LeaseManager");
+        this.slotRouter = slotRouter;
+        this.crossSlotInventory = slotRouter == null ? null
+                : new CrossSlotInventory(redisTemplate, slotRouter, reserveTimeout);
+        this.leaseManager = leaseManager;
+        this.codec = codec;
+        this.nilBytes = codec.encode(nilValue);
         this.redisTemplate = redisTemplate;
         this.objectMapper = objectMapper;
         this.nilTime = nilTime;
@@ -50,14 +119,51 @@ public class RedisUtil {
         this.min_expires = min_expires;
     }
 
+    public LeaseManager getLeaseManager() {
+        return leaseManager;
+    }
+
+    public ValueCodec getCodec() {
+        return codec;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RedisSerializer<Object> valueSerializer(RedisTemplate<String, Object> redisTemplate) {
+        return (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(String key) {
+        return ((RedisSerializer<String>) redisTemplate.getKeySerializer()).serialize(key);
+    }
+
+    //读取原始字节
+    private byte[] getRaw(String key) {
+        byte[] rawKey = rawKey(key);
+        return redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey));
+    }
+
+    //写入编码后的值,seconds<=0时不过期
+    private void setRaw(String key, byte[] rawValue, long seconds) {
+        byte[] rawKey = rawKey(key);
+        redisTemplate.execute((RedisCallback<Object>) connection -> seconds > 0
+                ? connection.stringCommands().set(rawKey, rawValue, Expiration.seconds(seconds), RedisStringCommands.SetOption.upsert())
+                : connection.stringCommands().set(rawKey, rawValue));
+    }
+
+    //按目标类型解码,空值占位直接返回占位符,交由调用方判断
+    private Object decode(byte[] bytes, JavaType javaType) {
+        if (bytes == null) return null;
+        if (Arrays.equals(bytes, nilBytes)) return nilValue;
+        return codec.decode(bytes, javaType);
+    }
+
     // 非泛型类redis获取
     public <T> T get(String key,Class<T> tClass) {
         try {
-            return Optional.ofNullable(key)
-                    .map(k -> redisTemplate.opsForValue().get(k))
-                    .filter(tClass::isInstance)
-                    .map(tClass::cast)
-                    .orElse(null);
+            if (key == null) return null;
+            Object object = decode(getRaw(key), objectMapper.constructType(tClass));
+            return tClass.isInstance(object) ? tClass.cast(object) : null;
         } catch (Exception e) {
             log.warn("redis获取失败,key: {},tClass: {},error: {}",key,tClass,e.getMessage());
             log.debug("redis获取失败,key: {},tClass: {},error: ",key,tClass,e);
@@ -66,12 +172,11 @@ public class RedisUtil {
     }
 
     // 泛型类redis获取
+    @SuppressWarnings("unchecked")
     public <T> T get(String key, JavaType javaType) {
         try {
-            Object object = redisTemplate.opsForValue().get(key);
-            if (object == null) return null;
-            return objectMapper.convertValue(object,javaType);
-        } catch (IllegalArgumentException e) {
+            return (T) decode(getRaw(key), javaType);
+        } catch (IllegalArgumentException | SerializationException e) {
             log.warn("类型转换异常,key: {},javaType: {},error: {}",key,javaType,e.getMessage());
             log.debug("类型转换异常,key: {},javaType: {},error: ",key,javaType,e);
             return null;
@@ -82,9 +187,34 @@ public class RedisUtil {
         }
     }
 
+    //获取值及剩余过期时间(毫秒),管道一次往返
+    public CacheValue getWithTtl(String key, JavaType javaType) {
+        try {
+            byte[] rawKey = rawKey(key);
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.stringCommands().get(rawKey);
+                connection.keyCommands().pTtl(rawKey);
+                return null;
+            }, RedisSerializer.byteArray());
+            long ttl = results.get(1) instanceof Long l ? l : -1L;
+            return new CacheValue(decode((byte[]) results.get(0), javaType), ttl);
+        } catch (IllegalArgumentException | SerializationException e) {
+            log.warn("类型转换异常,key: {},javaType: {},error: {}",key,javaType,e.getMessage());
+            log.debug("类型转换异常,key: {},javaType: {},error: ",key,javaType,e);
+        } catch (Exception e) {
+            log.warn("redis获取失败,key: {},javaType: {},error: {}",key,javaType,e.getMessage());
+            log.debug("redis获取失败,key: {},javaType: {},error: ",key,javaType,e);
+        }
+        return new CacheValue(null, -1L);
+    }
+
+    //缓存值与剩余过期时间(毫秒,-1为永不过期)
+    public record CacheValue(Object value, long ttl) {
+    }
+
     public Object get(String key) {
         try {
-            return redisTemplate.opsForValue().get(key);
+            return decode(getRaw(key), null);
         } catch (Exception e) {
             log.warn("redis获取失败,key: {},error: {}",key,e.getMessage());
             log.debug("redis获取失败,key: {},error: ",key,e);
@@ -96,7 +226,7 @@ public class RedisUtil {
     public <T> void set(String key,T value) {
         if (value != null && key != null) {
             try {
-                redisTemplate.opsForValue().set(key,value);
+                setRaw(key,codec.encode(value),0);
             } catch (Exception e) {
                 log.warn("设置redis失败,key: {},value: {},error: {}",key,value,e.getMessage());
                 log.debug("设置redis失败,key: {},value: {},error: ",key,value,e);
@@ -108,13 +238,13 @@ public class RedisUtil {
         if (value != null && key != null) {
             if (time > 0)
                 try {
-                    redisTemplate.opsForValue().set(key,value,time, TimeUnit.MINUTES);
+                    setRaw(key,codec.encode(value),TimeUnit.MINUTES.toSeconds(time));
                 } catch (Exception e) {
                     log.warn("设置带过期时间redis失败,key: {},value: {},time: {},error: {}",key,value,time,e.getMessage());
                     log.warn("设置带过期时间redis失败,key: {},value: {},time: {},error: ",key,value,time,e);
                 }
             else try {
-                redisTemplate.opsForValue().set(key,value);
+                setRaw(key,codec.encode(value),0);
             } catch (Exception e) {
                 log.warn("设置带无效过期时间redis失败,key: {},value: {},time: {},error: {}",key,value,time,e.getMessage());
                 log.warn("设置带无效过期时间redis失败,key: {},value: {},time: {},error: ",key,value,time,e);
@@ -125,7 +255,7 @@ public class RedisUtil {
     public <T> void setDefault(String key,T value) {
         if (value != null && key != null) {
             try {
-                redisTemplate.opsForValue().set(key,value,DEFAULT_TIME,TimeUnit.MINUTES);
+                setRaw(key,codec.encode(value),TimeUnit.MINUTES.toSeconds(DEFAULT_TIME));
             } catch (Exception e) {
                 log.warn("设置默认过期redis失败,key: {},value: {},error: {}",key,value,e.getMessage());
                 log.warn("设置默认过期redis失败,key: {},value: {},error: ",key,value,e);
@@ -136,11 +266,7 @@ public class RedisUtil {
     //设置随机过期时间redis值
     public <T> void setRandomExpires(String key,T value) {
         try {
-            if (max_expires > min_expires) {
-                redisTemplate.opsForValue().set(key,value,ThreadLocalRandom.current()
-                        .nextLong(min_expires,max_expires),TimeUnit.SECONDS);
-            } else redisTemplate.opsForValue().set(key,value,ThreadLocalRandom.current()
-                    .nextLong(10,31),TimeUnit.SECONDS);
+            setRaw(key,codec.encode(value),randomExpires());
         } catch (Exception e) {
             log.warn("设置随机过期redis失败,key: {},value: {},error: {}",key,value,e.getMessage());
             log.warn("设置随机过期redis失败,key: {},value: {},error: ",key,value,e);
@@ -148,11 +274,83 @@ public class RedisUtil {
     }
 
 
+    //批量获取,返回值与keys一一对应,未命中为null,空值占位保持原样
+    public List<Object> multiGet(List<String> keys, JavaType javaType) {
+        List<Object> results = new ArrayList<>(keys.size());
+        List<byte[]> values;
+        try {
+            values = slotRouter != null && slotRouter.spansSlots(keys) ? multiGetBySlot(keys) : mGet(keys);
+        } catch (Exception e) {
+            log.warn("redis批量获取失败,keys: {},error: {}",keys.size(),e.getMessage());
+            log.debug("redis批量获取失败,keys: {},error: ",keys,e);
+            values = null;
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] bytes = values == null || i >= values.size() ? null : values.get(i);
+            try {
+                results.add(decode(bytes,javaType));
+            } catch (IllegalArgumentException | SerializationException e) {
+                log.warn("类型转换异常,key: {},javaType: {},error: {}",keys.get(i),javaType,e.getMessage());
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+    private List<byte[]> mGet(List<String> keys) {
+        byte[][] rawKeys = keys.stream().map(this::rawKey).toArray(byte[][]::new);
+        return redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(rawKeys));
+    }
+
+    //集群下按slot分组,每组一次MGET并行执行,结果按原顺序合并
+    private List<byte[]> multiGetBySlot(List<String> keys) {
+        List<Integer> positions = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) positions.add(i);
+        Collection<List<Integer>> groups = slotRouter.group(positions, keys::get).values();
+        List<List<byte[]>> results = slotRouter.parallel(groups,
+                group -> mGet(group.stream().map(keys::get).toList()));
+        byte[][] values = new byte[keys.size()][];
+        int g = 0;
+        for (List<Integer> group : groups) {
+            List<byte[]> result = results.get(g++);
+            for (int i = 0; result != null && i < group.size(); i++) values[group.get(i)] = result.get(i);
+        }
+        return Arrays.asList(values);
+    }
+
+    //管道批量写入,values使用随机过期时间,nilKeys写入空值占位
+    public void multiSetRandomExpires(Map<String,Object> values, Collection<String> nilKeys) {
+        if (values.isEmpty() && nilKeys.isEmpty()) return;
+        try {
+            Map<byte[],byte[]> encoded = new LinkedHashMap<>();
+            values.forEach((key, value) -> encoded.put(rawKey(key), codec.encode(value)));
+            List<byte[]> rawNilKeys = nilKeys.stream().map(this::rawKey).toList();
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                RedisStringCommands commands = connection.stringCommands();
+                encoded.forEach((key, value) -> commands.set(key, value, Expiration.seconds(randomExpires()),
+                        RedisStringCommands.SetOption.upsert()));
+                rawNilKeys.forEach(key -> commands.set(key, nilBytes, Expiration.seconds(nilTime),
+                        RedisStringCommands.SetOption.upsert()));
+                return null;
+            }, RedisSerializer.byteArray());
+        } catch (Exception e) {
+            log.warn("管道批量写入redis失败,size: {},error: {}",values.size() + nilKeys.size(),e.getMessage());
+            log.debug("管道批量写入redis失败,keys: {},error: ",values.keySet(),e);
+        }
+    }
+
+    //随机过期时间,单位s
+    private long randomExpires() {
+        return max_expires > min_expires
+                ? ThreadLocalRandom.current().nextLong(min_expires,max_expires)
+                : ThreadLocalRandom.current().nextLong(10,31);
+    }
+
     //设置redis值(空值防穿透过期时间30s)
     public void set(String key) {
         if (key != null) {
             try {
-                redisTemplate.opsForValue().set(key,nilValue,nilTime,TimeUnit.SECONDS);
+                setRaw(key,nilBytes,nilTime);
             } catch (Exception e) {
                 log.warn("redis设置NULL值失败,key: {},error: {}",key,e.getMessage());
                 log.debug("redis设置NULL值失败,key: {},error: ",key,e);
@@ -162,16 +360,84 @@ public class RedisUtil {
 
 
 
+    //不存在时设置,带过期时间
+    public boolean setIfAbsent(String key, Object value, long seconds) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key, value, Duration.ofSeconds(seconds)));
+        } catch (Exception e) {
+            log.warn("redis setIfAbsent失败,key: {},error: {}",key,e.getMessage());
+            log.debug("redis setIfAbsent失败,key: {},error: ",key,e);
+            return false;
+        }
+    }
+
+    //发布消息
+    public void publish(String channel, String message) {
+        if (channel != null && message != null) {
+            try {
+                byte[] rawChannel = channel.getBytes(StandardCharsets.UTF_8);
+                byte[] rawMessage = message.getBytes(StandardCharsets.UTF_8);
+                redisTemplate.execute(connection -> connection.publish(rawChannel, rawMessage), true);
+            } catch (Exception e) {
+                log.warn("redis发布消息失败,channel: {},message: {},error: {}",channel,message,e.getMessage());
+                log.debug("redis发布消息失败,channel: {},message: {},error: ",channel,message,e);
+            }
+        }
+    }
+
+    public String getNilValue() {
+        return nilValue;
+    }
+
     //删除指定redis缓存
-    public void remove(String key) {
+    //返回key是否存在并被删除
+    public boolean remove(String key) {
         if (key != null) {
             try {
-                redisTemplate.delete(key);
+                return Boolean.TRUE.equals(redisTemplate.delete(key));
             } catch (Exception e) {
                 log.warn("删除指定redis失败,key: {},error: {}",key,e.getMessage());
                 log.debug("删除指定redis失败,key: {},error: ",key,e);
             }
         }
+        return false;
+    }
+
+    //批量删除指定redis缓存
+    public void remove(Collection<String> keys) {
+        if (keys != null && !keys.isEmpty()) {
+            try {
+                redisTemplate.delete(keys);
+            } catch (Exception e) {
+                log.warn("批量删除redis失败,keys: {},error: {}",keys.size(),e.getMessage());
+                log.debug("批量删除redis失败,keys: {},error: ",keys,e);
+            }
+        }
+    }
+
+    //按模式SCAN并分批UNLINK,返回删除数量,用于按前缀清理
+    public long removeByPattern(String pattern) {
+        long count = 0;
+        List<String> batch = new ArrayList<>(SCAN_BATCH);
+        try (Cursor<String> cursor = redisTemplate.scan(ScanOptions.scanOptions().match(pattern).count(SCAN_BATCH).build())) {
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= SCAN_BATCH) {
+                    count += unlink(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) count += unlink(batch);
+        } catch (Exception e) {
+            log.warn("按模式删除redis失败,pattern: {},已删除: {},error: {}",pattern,count,e.getMessage());
+            log.debug("按模式删除redis失败,pattern: {},error: ",pattern,e);
+        }
+        return count;
+    }
+
+    private long unlink(List<String> keys) {
+        Long removed = redisTemplate.unlink(keys);
+        return removed == null ? 0 : removed;
     }
 
     //热点key升级
@@ -201,26 +467,10 @@ public class RedisUtil {
 
     public boolean setDistributedLock(String key,String value,Long timeSeconds) {
         try {
-            removeOldFuture(key);
             Boolean lock = redisTemplate.opsForValue().setIfAbsent("DistributedLock"+key, value, Duration.ofSeconds(timeSeconds));
             if (Boolean.TRUE.equals(lock) && watchdog) {
-                log.info("获取锁成功");
-                CompletableFuture<Void> future = new CompletableFuture<>();
-                ScheduledFuture<?> scheduled = schedule.scheduleAtFixedRate(() -> {
-                    Object newKey = redisTemplate.opsForValue().get("DistributedLock"+key);
-                    if (value.equals(newKey)) {
-                        redisTemplate.expire("DistributedLock"+key, Duration.ofSeconds(timeSeconds));
-                        log.debug("锁自动续期");
-                    } else {
-                        future.complete(null);
-                    }
-                }, timeSeconds / 3, timeSeconds / 3, TimeUnit.SECONDS);
-                future.thenRun(() -> {
-                    scheduled.cancel(false);
-                    completableFutureMap.remove(key,future);
-                    log.debug("自动续期取消");
-                });
-                completableFutureMap.put(key,future);
+                log.debug("获取锁成功,登记续期租约: {}",key);
+                leaseManager.register("DistributedLock"+key, value, TimeUnit.SECONDS.toMillis(timeSeconds));
             }
             return Boolean.TRUE.equals(lock);
         } catch (Exception e) {
@@ -229,18 +479,24 @@ public class RedisUtil {
         }
         return false;
     }
+    //在等待时间内退避重试获取分布式锁,休眠期间虚拟线程让出载体线程,超时返回false
+    public boolean setDistributedLock(String key,String value,Long timeSeconds,long waitMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        long backoff = 10;
+        while (!setDistributedLock(key, value, timeSeconds)) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) return false;
+            Thread.sleep(Math.min(remaining, backoff + ThreadLocalRandom.current().nextLong(backoff)));
+            backoff = Math.min(backoff * 2, 200);
+        }
+        return true;
+    }
     public boolean delDistributedLock(String key,String value) {
-        String luaScript = """
-                if redis.call('GET',KEYS[1]) == ARGV[1] then
-                    redis.call('DEL',KEYS[1])
-                    return 1
-                end
-                return 0
-                """;
-        RedisScript<Long> script = RedisScript.of(luaScript,Long.class);
+        if (watchdog) leaseManager.unregister("DistributedLock"+key, value);
         try {
-            Long execute = redisTemplate.execute(script, List.of("DistributedLock"+key), value);
-            return execute > 0;
+            //锁的value由setIfAbsent按模板序列化写入,ARGV同样按模板序列化才能比较
+            Long execute = redisTemplate.execute(LuaScripts.UNLOCK, List.of("DistributedLock"+key), value);
+            return execute != null && execute > 0;
         } catch (Exception e) {
             log.warn("释放分布式锁 {}:{} 失败: {}",key,value,e.getMessage());
             log.debug("释放分布式锁 {}:{} 失败",key,value,e);
@@ -249,140 +505,59 @@ public class RedisUtil {
         return false;
     }
 
+    //keys为(库存,锁定库存),库存-1为不限量
     public boolean deductInv(List<String> keys, Integer num) {
-        String luaScript = """
-                local stock = tonumber(redis.call('GET',KEYS[1]) or '0')
-                if stock == -1 then
-                    return -1
-                end
-                local num = tonumber(ARGV[1] or '0')
-                if num == nil or num <= 0 then
-                    return 0
-                end
-                if stock >= num then
-                    redis.call('DECRBY',KEYS[1],num)
-                    redis.call('INCRBY',KEYS[2],num)
-                    return 1
-                else
-                    return 0
-                end
-                """;
-        RedisScript<Integer> longRedisScript = RedisScript.of(luaScript, Integer.class);
-        Integer result = redisTemplate.execute(longRedisScript, keys, num.toString());
-        return switch (result) {
-            case 1,-1 -> true;
-            default -> false;
-        };
+        checkPairs(keys, 1);
+        Long result = executeInv(LuaScripts.DEDUCT, keys, List.of(num));
+        return result != null && (result == 1L || result == -1L);
     }
 
     public boolean addInv(List<String> keys, Integer num) {
-        String luaScript = """
-                local cache = tonumber(redis.call('GET',KEYS[2]) or '0')
-                local num = tonumber(ARGV[1] or '0')
-                local stock = tonumber(redis.call('GET',KEYS[1]) or '0')
-                if num == nil or num <= 0 or stock == -1 then
-                    return 0
-                end
-                if cache >= num then
-                    redis.call('DECRBY',KEYS[2],num)
-                    redis.call('INCRBY',KEYS[1],num)
-                    return 1
-                end
-                return 0
-                """;
-        RedisScript<Integer> integerRedisScript = RedisScript.of(luaScript, Integer.class);
-        Integer result = redisTemplate.execute(integerRedisScript, keys, num.toString());
-        return result.equals(1);
+        checkPairs(keys, 1);
+        return Long.valueOf(1L).equals(executeInv(LuaScripts.ADD, keys, List.of(num)));
     }
 
+    //keys按(库存,锁定库存)成对排列,nums[i]对应第i对
     public boolean deductInv(List<String> keys, List<Integer> nums) {
-        String luaScript = """
-                for i=1,#KEYS,2 do
-                    local stock = tonumber(redis.call('GET',KEYS[i])) or 0
-                    local argIndex = math.floor((i+1)/2)
-                    local num = tonumber(ARGV[argIndex]) or 0
-                    if stock < num and stock ~= -1 then
-                        return 0
-                    end
-                end
-                for i=1,#KEYS,2 do
-                    local argIndex = math.floor((i+1)/2)
-                    local num = tonumber(ARGV[argIndex]) or 0
-                    local stock = tonumber(redis.call('GET',KEYS[i])) or 0
-                    if stock ~= -1 then
-                        redis.call('DECRBY',KEYS[i],num)
-                        redis.call('INCRBY',KEYS[i+1],num)
-                    end
-                end
-                return 1
-                """;
-        RedisScript<Long> longRedisScript = RedisScript.of(luaScript, Long.class);
-        String[] args = nums.stream()
-                .map(String::valueOf)
-                .toArray(String[]::new);
-        Long result = redisTemplate.execute(longRedisScript, keys,(Object[]) args);
-        return result.equals(1L);
+        checkPairs(keys, nums.size());
+        if (crossSlot(keys)) return crossSlotInventory.deductInv(keys, nums);
+        return Long.valueOf(1L).equals(executeInv(LuaScripts.DEDUCT_MULTI, keys, nums));
     }
     public boolean addInv(List<String> keys, List<Integer> nums) {
-        String luaScript = """
-                for i = 1,#KEYS,2 do
-                    local stock = tonumber(redis.call('GET',KEYS[i])) or 0
-                    local cache = tonumber(redis.call('GET',KEYS[i+1])) or 0
-                    local argIndex = math.floor((i+1)/2)
-                    local num = tonumber(ARGV[argIndex]) or 0
-                    if cache < num and stock ~= -1 then
-                        return 0
-                    end
-                end
-                for i=1,#KEYS,2 do
-                    local stock = tonumber(redis.call('GET',KEYS[i])) or 0
-                    local argIndex = math.floor((i+1)/2)
-                    local num = tonumber(ARGV[argIndex]) or 0
-                    if stock ~= -1 and num ~= 0 then
-                        redis.call('DECRBY',KEYS[i+1],num)
-                        redis.call('INCRBY',KEYS[i],num)
-                    end
-                end
-                return 1
-                """;
-        RedisScript<Long> longRedisScript = RedisScript.of(luaScript, Long.class);
-        String[] args = nums.stream()
-                .map(String::valueOf)
-                .toArray(String[]::new);
-        Long result = redisTemplate.execute(longRedisScript, keys,(Object[]) args);
-        return result.equals(1L);
+        checkPairs(keys, nums.size());
+        if (crossSlot(keys)) return crossSlotInventory.addInv(keys, nums);
+        return Long.valueOf(1L).equals(executeInv(LuaScripts.ADD_MULTI, keys, nums));
     }
     //支付成功后的删锁定库存
     public boolean paySuccess(List<String> keys, List<Integer> args) {
-        String luaScript = """
-                for i = 1,#KEYS,1 do
-                    local cache = tonumber(redis.call('GET',KEYS[i]) or '0')
-                    local num = tonumber(ARGV[i] or '0')
-                    if cache < num then
-                        return 0
-                    end
-                end
-                for i = 1,#KEYS,1 do
-                    local cache = tonumber(redis.call('GET',KEYS[i]) or '0')
-                    local num = tonumber(ARGV[i] or '0')
-                    if cache >= num and num ~= 0 then
-                        redis.call('DECRBY',KEYS[i],num)
-                    end
-                end
-                return 1
-                """;
-        RedisScript<Integer> script = RedisScript.of(luaScript, Integer.class);
-        Integer result = redisTemplate.execute(script, keys,
-                (Object[]) args.stream().map(String::valueOf).toArray(String[]::new));
-        return result.equals(1);
-    }
-
-    private void removeOldFuture(String key) {
-        CompletableFuture<Void> future = completableFutureMap.remove(key);
-        if (future != null && !future.isDone()) {
-            future.complete(null);
-            log.debug("手动取消看门狗任务: {}", key);
+        if (keys.size() != args.size()) {
+            throw CustomizeException.badRequest("锁定库存key与数量个数不一致");
+        }
+        if (crossSlot(keys)) return crossSlotInventory.paySuccess(keys, args);
+        return Long.valueOf(1L).equals(executeInv(LuaScripts.PAY_SUCCESS, keys, args));
+    }
+
+    private void checkPairs(List<String> keys, int size) {
+        if (keys.size() != size * 2) {
+            throw CustomizeException.badRequest("库存key需按(库存,锁定库存)成对传入");
+        }
+        if (size == 1 && slotRouter != null && slotRouter.spansSlots(keys)) {
+            throw CustomizeException.badRequest("库存与锁定库存key需在同一slot,请使用相同hash tag: " + keys.get(0));
+        }
+    }
+
+    private boolean crossSlot(List<String> keys) {
+        return crossSlotInventory != null && slotRouter.spansSlots(keys);
+    }
+
+    //库存脚本的ARGV按纯字符串传递,避免值序列化器把数字包成json字符串导致tonumber失败
+    private Long executeInv(RedisScript<Long> script, List<String> keys, List<Integer> nums) {
+        Object[] args = new Object[nums.size()];
+        for (int i = 0; i < args.length; i++) {
+            if (nums.get(i) == null) throw CustomizeException.badRequest("库存数量不能为空");
+            args[i] = nums.get(i).toString();
         }
+        return redisTemplate.execute(script, RedisSerializer.string(), INV_RESULT_SERIALIZER, keys, args);
     }
 
 }
@@ -0,0 +1,252 @@
+package com.wyk.redis.util;
+
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+  可扩容布隆过滤器: 由多个分片组成,最新分片达到容量后追加新分片,
+  新分片容量翻倍、误判率减半,整体误判率收敛于fpp
+ */
+public class ScalableBloomFilter extends AbstractBloomFilter {
+
+    private static final int GROWTH = 2; //新分片容量倍数
+    private static final double TIGHTENING = 0.5; //新分片误判率收紧比例
+
+    private final long expectedSize;
+    private final double fpp;
+    private final boolean tracking; //是否记录脏位用于同步到redis
+    private final ReentrantLock growLock = new ReentrantLock();
+    private volatile Slice[] slices;
+
+    public ScalableBloomFilter(long expectedSize, double fpp, boolean tracking) {
+        this.expectedSize = Math.max(expectedSize, 1);
+        this.fpp = fpp;
+        this.tracking = tracking;
+        this.slices = new Slice[]{newSlice(0)};
+    }
+
+    @Override
+    protected boolean apply(long hash1, long hash2, int operation) {
+        return switch (operation) {
+            case PUT -> {
+                put(hash1, hash2);
+                yield true;
+            }
+            case CONTAINS -> mightContain(hash1, hash2);
+            default -> false; //分片位图不支持删除
+        };
+    }
+
+    @Override
+    protected AbstractBloomFilter emptyCopy() {
+        return new ScalableBloomFilter(expectedSize, fpp, tracking);
+    }
+
+    //新分片的脏位包含全部数据,开启redis同步时由下次推送写入
+    @Override
+    protected void replaceWith(AbstractBloomFilter source) {
+        growLock.lock();
+        try {
+            slices = ((ScalableBloomFilter) source).slices;
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    private void put(long hash1, long hash2) {
+        Slice[] current = slices;
+        //已存在则不重复计数
+        for (Slice slice : current) {
+            if (slice.contains(hash1, hash2)) return;
+        }
+        Slice last = current[current.length - 1];
+        last.set(hash1, hash2);
+        last.pending.increment();
+        if (last.count.incrementAndGet() >= last.capacity) {
+            ensureSlices(current.length + 1);
+        }
+    }
+
+    private boolean mightContain(long hash1, long hash2) {
+        for (Slice slice : slices) {
+            if (slice.contains(hash1, hash2)) return true;
+        }
+        return false;
+    }
+
+    //保证分片数量至少为size,分片参数由下标确定,各节点一致
+    public void ensureSlices(int size) {
+        if (slices.length >= size) return;
+        growLock.lock();
+        try {
+            Slice[] current = slices;
+            if (current.length >= size) return;
+            Slice[] grown = Arrays.copyOf(current, size);
+            for (int i = current.length; i < size; i++) {
+                grown[i] = newSlice(i);
+            }
+            slices = grown;
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    private Slice newSlice(int index) {
+        long capacity = expectedSize * (long) Math.pow(GROWTH, index);
+        double sliceFpp = fpp * (1 - TIGHTENING) * Math.pow(TIGHTENING, index);
+        long bits = (long) Math.ceil(-capacity * Math.log(sliceFpp) / (Math.log(2) * Math.log(2)));
+        //向上取2的幂,探测时用掩码代替取模
+        int bitSize = 1 << Math.min(30, 64 - Long.numberOfLeadingZeros(Math.max(bits, 64) - 1));
+        int hashCount = Math.max(1, (int) Math.round((double) bitSize / capacity * Math.log(2)));
+        return new Slice(bitSize, hashCount, capacity, tracking);
+    }
+
+    //合并redis中的分片位图(SETBIT位序,高位在前),remoteCount为全局已确认插入数
+    public void merge(int index, byte[] bitmap, long remoteCount) {
+        Slice[] current = slices;
+        if (index >= current.length) return;
+        Slice slice = current[index];
+        if (bitmap != null) {
+            int words = slice.bits.length();
+            for (int j = 0; j < bitmap.length && j / 8 < words; j++) {
+                int b = bitmap[j] & 0xFF;
+                if (b == 0) continue;
+                long mask = (long) (Integer.reverse(b) >>> 24) << ((j % 8) * 8);
+                slice.bits.getAndUpdate(j / 8, old -> old | mask);
+            }
+        }
+        slice.count.set(remoteCount + slice.pending.sum());
+    }
+
+    //合并其他节点推送的置位位置,位置与SETBIT偏移一致;不记入脏位
+    public void mergePositions(int index, int[] positions) {
+        Slice[] current = slices;
+        if (index >= current.length) return;
+        Slice slice = current[index];
+        for (int position : positions) {
+            if (position < 0 || position >= slice.size) continue;
+            long mark = 1L << position;
+            slice.bits.getAndUpdate(position >>> 6, old -> old | mark);
+        }
+    }
+
+    //更新分片的全局已确认插入数
+    public void mergeCount(int index, long remoteCount) {
+        merge(index, null, remoteCount);
+    }
+
+    //取出并清空自上次同步以来新置位的位置,供同步到redis
+    public long[] drainDirty(int index) {
+        Slice slice = slices[index];
+        if (slice.dirty == null) return new long[0];
+        long[] positions = new long[16];
+        int size = 0;
+        for (int w = 0; w < slice.dirty.length(); w++) {
+            long d = slice.dirty.getAndSet(w, 0L);
+            while (d != 0) {
+                if (size == positions.length) positions = Arrays.copyOf(positions, size * 2);
+                positions[size++] = (long) w * 64 + Long.numberOfTrailingZeros(d);
+                d &= d - 1;
+            }
+        }
+        return Arrays.copyOf(positions, size);
+    }
+
+    //取出并清空自上次同步以来的插入计数
+    public long drainPending(int index) {
+        return slices[index].pending.sumThenReset();
+    }
+
+    @Override
+    public String getType() {
+        return "scalable";
+    }
+
+    public int getSliceCount() {
+        return slices.length;
+    }
+
+    //近似插入数量
+    @Override
+    public long getApproximateCount() {
+        long sum = 0;
+        for (Slice slice : slices) sum += slice.count.get();
+        return sum;
+    }
+
+    //整体填充率
+    @Override
+    public double getFillRatio() {
+        long set = 0, total = 0;
+        for (Slice slice : slices) {
+            set += slice.bitCount();
+            total += slice.size;
+        }
+        return total == 0 ? 0 : (double) set / total;
+    }
+
+    //按各分片填充率估算当前误判率
+    @Override
+    public double getEstimatedFpp() {
+        double pass = 1;
+        for (Slice slice : slices) {
+            pass *= 1 - Math.pow((double) slice.bitCount() / slice.size, slice.hashCount);
+        }
+        return 1 - pass;
+    }
+
+    //单个分片
+    private static final class Slice {
+        private final AtomicLongArray bits;
+        private final AtomicLongArray dirty;
+        private final int size;
+        private final int mask;
+        private final int hashCount;
+        private final long capacity;
+        private final AtomicLong count = new AtomicLong();
+        private final LongAdder pending = new LongAdder();
+
+        private Slice(int size, int hashCount, long capacity, boolean tracking) {
+            this.bits = new AtomicLongArray((size + 63) / 64);
+            this.dirty = tracking ? new AtomicLongArray((size + 63) / 64) : null;
+            this.size = size;
+            this.mask = size - 1;
+            this.hashCount = hashCount;
+            this.capacity = capacity;
+        }
+
+        private void set(long hash1, long hash2) {
+            long combined = hash1;
+            for (int i = 0; i < hashCount; i++, combined += hash2) {
+                int hash = (int) combined & mask;
+                int longIndex = hash >>> 6;
+                long mark = 1L << hash;
+                long old = bits.getAndUpdate(longIndex, o -> o | mark);
+                if (dirty != null && (old & mark) == 0) {
+                    dirty.getAndUpdate(longIndex, o -> o | mark);
+                }
+            }
+        }
+
+        private boolean contains(long hash1, long hash2) {
+            long combined = hash1;
+            for (int i = 0; i < hashCount; i++, combined += hash2) {
+                int hash = (int) combined & mask;
+                if ((bits.get(hash >>> 6) & (1L << hash)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long bitCount() {
+            long count = 0;
+            for (int i = 0; i < bits.length(); i++) count += Long.bitCount(bits.get(i));
+            return count;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.wyk.redis.util;
+
+
+import com.wyk.redis.exception.CustomizeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+  分片库存: 一个商品的库存拆成n个子计数器,每个分片的库存与锁定库存共用hash tag {库存key#i},
+  不同分片落在不同slot,热门商品的扣减分散到多个redis节点
+  库存key可以带hash tag(如InventoryKeys生成的stock:{id}),生成分片key时去掉其中的{},否则所有分片会落在同一slot
+  扣减随机选一个分片,不足时依次尝试相邻分片,单个分片都不够但总量足够时先把其他分片的库存归集过来再扣
+  分片之间的转移先在来源分片记录转移,放入目标分片后删除记录,中途失败时由recover补完
+  keys与RedisUtil库存方法一致为(库存,锁定库存),库存-1表示不限量
+ */
+public class ShardedInventory {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedInventory.class);
+    private static final RedisSerializer<Long> RESULT_SERIALIZER = new GenericToStringSerializer<>(Long.class);
+    private static final String LOCK_PREFIX = "ShardedInventory";
+    private static final long REBALANCE_LOCK_TIMEOUT = 30L; //单位s
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisUtil redisUtil;
+    private final int shards;
+
+    public ShardedInventory(RedisTemplate<String, Object> redisTemplate, RedisUtil redisUtil, Integer shards) {
+        if (shards == null || shards < 1) throw CustomizeException.badRequest("库存分片数必须大于0");
+        this.redisTemplate = redisTemplate;
+        this.redisUtil = redisUtil;
+        this.shards = shards;
+    }
+
+    //第i个库存分片key,库存key中的hash tag会被去掉,stock:{id}的分片为{stock:id#i}
+    public static String stockShard(String stockKey, int i) {
+        return "{" + stockKey.replace("{", "").replace("}", "") + "#" + i + "}";
+    }
+
+    //第i个锁定库存分片key,与库存分片同一hash tag
+    public static String lockedShard(String stockKey, String lockedKey, int i) {
+        return stockShard(stockKey, i) + ":" + lockedKey;
+    }
+
+    //初始化库存,平均分到各分片,余数给前面的分片;-1表示不限量;不修改锁定库存
+    public void init(List<String> keys, long stock) {
+        checkKeys(keys);
+        if (stock < -1) throw CustomizeException.badRequest("库存不能小于-1");
+        String stockKey = keys.get(0);
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            RedisStringCommands commands = connection.stringCommands();
+            for (int i = 0; i < shards; i++) {
+                long value = stock == -1 ? -1 : stock / shards + (i < stock % shards ? 1 : 0);
+                commands.set(bytes(stockShard(stockKey, i)), bytes(String.valueOf(value)));
+                //重新初始化后未完成的转移作废
+                connection.keyCommands().del(bytes(transferKey(stockKey, i)), bytes(receivedKey(stockKey, i)));
+            }
+            return null;
+        });
+    }
+
+    public boolean deductInv(List<String> keys, Integer num) {
+        checkKeys(keys);
+        if (num == null) throw CustomizeException.badRequest("库存数量不能为空");
+        int start = ThreadLocalRandom.current().nextInt(shards);
+        for (int i = 0; i < shards; i++) {
+            if (deductShard(keys, (start + i) % shards, num)) return true;
+        }
+        //单个分片都不足,总量足够时归集到起始分片后重试一次
+        if (num <= 1 || getStock(keys.get(0)) < num) return false;
+        gather(keys.get(0), start, num);
+        return deductShard(keys, start, num);
+    }
+
+    //锁定库存转回库存,锁定库存可能分布在多个分片,逐个分片转回;中途不足时撤销已转回的部分
+    public boolean addInv(List<String> keys, Integer num) {
+        checkKeys(keys);
+        if (num == null || num <= 0 || getLocked(keys) < num) return false;
+        String stockKey = keys.get(0);
+        long[] moved = new long[shards];
+        long remaining = num;
+        int start = ThreadLocalRandom.current().nextInt(shards);
+        for (int i = 0; i < shards && remaining > 0; i++) {
+            int shard = (start + i) % shards;
+            Long result = execute(LuaScripts.SHARD_RELEASE,
+                    List.of(stockShard(stockKey, shard), lockedShard(stockKey, keys.get(1), shard)), remaining);
+            if (result == null) continue;
+            if (result == -1L) return false;
+            moved[shard] = result;
+            remaining -= result;
+        }
+        if (remaining == 0) return true;
+        for (int shard = 0; shard < shards; shard++) {
+            if (moved[shard] == 0) continue;
+            Long result = execute(LuaScripts.DEDUCT,
+                    List.of(stockShard(stockKey, shard), lockedShard(stockKey, keys.get(1), shard)), moved[shard]);
+            if (!Long.valueOf(1L).equals(result)) {
+                log.warn("分片库存回补撤销失败,key: {},分片: {},数量: {}", stockKey, shard, moved[shard]);
+            }
+        }
+        return false;
+    }
+
+    //支付成功后删除锁定库存,逐个分片删除;中途不足时把已删除的部分加回
+    public boolean paySuccess(List<String> keys, Integer num) {
+        checkKeys(keys);
+        if (num == null || num < 0 || getLocked(keys) < num) return false;
+        String stockKey = keys.get(0);
+        long[] paid = new long[shards];
+        long remaining = num;
+        for (int shard = 0; shard < shards && remaining > 0; shard++) {
+            Long result = execute(LuaScripts.SHARD_PAY, List.of(lockedShard(stockKey, keys.get(1), shard)), remaining);
+            if (result == null) continue;
+            paid[shard] = result;
+            remaining -= result;
+        }
+        if (remaining == 0) return true;
+        for (int shard = 0; shard < shards; shard++) {
+            if (paid[shard] > 0) incrBy(lockedShard(stockKey, keys.get(1), shard), paid[shard]);
+        }
+        return false;
+    }
+
+    //总库存,任一分片为-1时返回-1
+    public long getStock(String stockKey) {
+        List<String> shardKeys = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) shardKeys.add(stockShard(stockKey, i));
+        long total = 0;
+        for (long value : read(shardKeys)) {
+            if (value == -1) return -1;
+            total += value;
+        }
+        return total;
+    }
+
+    //总锁定库存
+    public long getLocked(List<String> keys) {
+        checkKeys(keys);
+        List<String> shardKeys = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) shardKeys.add(lockedShard(keys.get(0), keys.get(1), i));
+        long total = 0;
+        for (long value : read(shardKeys)) total += value;
+        return total;
+    }
+
+    //把库存重新平均分到各分片,多个节点同时调用时只有拿到锁的执行;期间扣减照常进行
+    //先补完未完成的转移,再按快照从多的分片逐对转移到少的分片,转移失败的部分留待下次
+    public boolean rebalance(String stockKey) {
+        String value = UUID.randomUUID().toString();
+        if (!redisUtil.setDistributedLock(LOCK_PREFIX + stockKey, value, REBALANCE_LOCK_TIMEOUT)) return false;
+        try {
+            recover(stockKey);
+            List<String> shardKeys = new ArrayList<>(shards);
+            for (int i = 0; i < shards; i++) shardKeys.add(stockShard(stockKey, i));
+            long[] values = read(shardKeys);
+            long total = 0;
+            for (long v : values) {
+                if (v == -1) return true;
+                total += v;
+            }
+            long[] diff = new long[shards];
+            for (int i = 0; i < shards; i++) diff[i] = values[i] - target(total, i);
+            int to = 0;
+            for (int from = 0; from < shards; from++) {
+                while (diff[from] > 0) {
+                    while (to < shards && diff[to] >= 0) to++;
+                    if (to == shards) break;
+                    long amount = Math.min(diff[from], -diff[to]);
+                    long moved = transfer(stockKey, from, to, amount);
+                    if (moved == 0) break;
+                    diff[from] -= moved;
+                    diff[to] += moved;
+                }
+            }
+            log.debug("分片库存重新平衡完成,key: {},总量: {}", stockKey, total);
+            return true;
+        } finally {
+            redisUtil.delDistributedLock(LOCK_PREFIX + stockKey, value);
+        }
+    }
+
+    //补完中途失败的分片转移: 已放入目标分片的只删除记录,未放入的放入目标分片,返回补完的转移数
+    public int recover(String stockKey) {
+        int recovered = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            byte[] transferKey = bytes(transferKey(stockKey, shard));
+            Map<byte[], byte[]> transfers = redisTemplate.execute(
+                    (RedisCallback<Map<byte[], byte[]>>) connection -> connection.hashCommands().hGetAll(transferKey));
+            if (transfers == null) continue;
+            for (Map.Entry<byte[], byte[]> entry : transfers.entrySet()) {
+                String id = new String(entry.getKey(), StandardCharsets.UTF_8);
+                String record = new String(entry.getValue(), StandardCharsets.UTF_8);
+                int index = record.indexOf('|');
+                int to = Integer.parseInt(record.substring(0, index));
+                long amount = Long.parseLong(record.substring(index + 1));
+                try {
+                    finish(stockKey, shard, to, id, amount);
+                    recovered++;
+                } catch (Exception e) {
+                    log.error("分片库存转移补完失败,key: {},分片: {} -> {},数量: {},error: {}",
+                            stockKey, shard, to, amount, e.getMessage());
+                }
+            }
+        }
+        if (recovered > 0) log.info("分片库存转移已补完,key: {},数量: {}", stockKey, recovered);
+        return recovered;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    private long target(long total, int i) {
+        return total / shards + (i < total % shards ? 1 : 0);
+    }
+
+    private boolean deductShard(List<String> keys, int shard, int num) {
+        Long result = execute(LuaScripts.DEDUCT,
+                List.of(stockShard(keys.get(0), shard), lockedShard(keys.get(0), keys.get(1), shard)), num);
+        return result != null && (result == 1L || result == -1L);
+    }
+
+    //从其他分片取出库存放入目标分片,直到目标分片达到need
+    private void gather(String stockKey, int target, long need) {
+        long remaining = need - read(List.of(stockShard(stockKey, target)))[0];
+        for (int i = 1; i < shards && remaining > 0; i++) {
+            long moved = transfer(stockKey, (target + i) % shards, target, remaining);
+            remaining -= moved;
+        }
+    }
+
+    //从from分片取出至多amount件放入to分片,返回放入数量;放入失败时转移记录保留在来源分片,由recover补完,不抛出异常
+    private long transfer(String stockKey, int from, int to, long amount) {
+        String id = UUID.randomUUID().toString();
+        Long taken;
+        try {
+            taken = execute(LuaScripts.SHARD_TAKE, List.of(stockShard(stockKey, from), transferKey(stockKey, from)),
+                    amount, id, to);
+        } catch (Exception e) {
+            log.warn("分片库存取出失败,key: {},分片: {},error: {}", stockKey, from, e.getMessage());
+            return 0;
+        }
+        if (taken == null || taken == 0) return 0;
+        try {
+            finish(stockKey, from, to, id, taken);
+            return taken;
+        } catch (Exception e) {
+            log.error("分片库存转移未完成,已记录待recover补完,key: {},分片: {} -> {},数量: {},error: {}",
+                    stockKey, from, to, taken, e.getMessage());
+            return 0;
+        }
+    }
+
+    //放入目标分片后依次删除来源与目标的记录,放入脚本按id去重,重复执行不会多放
+    private void finish(String stockKey, int from, int to, String id, long amount) {
+        execute(LuaScripts.SHARD_PUT, List.of(stockShard(stockKey, to), receivedKey(stockKey, to)), id, amount);
+        byte[] field = bytes(id);
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hDel(bytes(transferKey(stockKey, from)), field);
+            connection.hashCommands().hDel(bytes(receivedKey(stockKey, to)), field);
+            return null;
+        });
+    }
+
+    //撤销时加回,失败只记录日志,不影响本次返回结果
+    private void incrBy(String key, long delta) {
+        try {
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.stringCommands().incrBy(bytes(key), delta));
+        } catch (Exception e) {
+            log.error("分片库存撤销失败,key: {},数量: {},error: {}", key, delta, e.getMessage());
+        }
+    }
+
+    private long[] read(List<String> keys) {
+        byte[][] raw = keys.stream().map(ShardedInventory::bytes).toArray(byte[][]::new);
+        List<byte[]> values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(raw));
+        long[] result = new long[keys.size()];
+        for (int i = 0; values != null && i < result.length; i++) {
+            byte[] value = values.get(i);
+            result[i] = value == null ? 0 : Long.parseLong(new String(value, StandardCharsets.UTF_8).trim());
+        }
+        return result;
+    }
+
+    private Long execute(RedisScript<Long> script, List<String> keys, Object... args) {
+        Object[] values = new Object[args.length];
+        for (int i = 0; i < args.length; i++) values[i] = String.valueOf(args[i]);
+        return redisTemplate.execute(script, RedisSerializer.string(), RESULT_SERIALIZER, keys, values);
+    }
+
+    //分片转移记录,与来源分片同一slot
+    private static String transferKey(String stockKey, int i) {
+        return stockShard(stockKey, i) + ":transfer";
+    }
+
+    //目标分片已放入的转移id,与目标分片同一slot
+    private static String receivedKey(String stockKey, int i) {
+        return stockShard(stockKey, i) + ":received";
+    }
+
+    private static void checkKeys(List<String> keys) {
+        if (keys == null || keys.size() != 2) {
+            throw CustomizeException.badRequest("库存key需按(库存,锁定库存)成对传入");
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
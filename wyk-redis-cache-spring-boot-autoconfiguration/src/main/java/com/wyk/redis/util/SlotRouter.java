@@ -0,0 +1,115 @@
+package com.wyk.redis.util;
+
+
+import com.wyk.redis.exception.CustomizeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/*
+  slot路由: 集群模式下把多key操作按slot分组,每组可以在一次命令或lua脚本中执行,
+  多个分组由线程池并行执行;非集群时所有key视为同一组,直接在调用线程执行
+  是否集群在首次使用时通过连接类型判断,redis不可用时按非集群处理并在下次使用时重试
+ */
+public class SlotRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(SlotRouter.class);
+    private static final int SINGLE_GROUP = 0;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final ExecutorService executor;
+    private volatile Boolean cluster;
+
+    //threads为0时取cpu核数
+    public SlotRouter(RedisTemplate<String, Object> redisTemplate, Integer threads, boolean virtualThreads) {
+        this.redisTemplate = redisTemplate;
+        int size = threads == null || threads <= 0 ? Runtime.getRuntime().availableProcessors() : threads;
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), ThreadFactories.create("wyk-slot-", virtualThreads));
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+    }
+
+    public boolean isCluster() {
+        Boolean result = cluster;
+        if (result != null) return result;
+        try {
+            result = Boolean.TRUE.equals(redisTemplate.execute(
+                    (RedisCallback<Boolean>) connection -> connection instanceof RedisClusterConnection));
+            cluster = result;
+            return result;
+        } catch (Exception e) {
+            log.warn("判断redis集群模式失败,暂按非集群处理,error: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    public static int slot(String key) {
+        return ClusterSlotHashUtil.calculateSlot(key);
+    }
+
+    //按slot分组并保持组内顺序,非集群时只有一组
+    public <T> Map<Integer, List<T>> group(List<T> items, Function<T, String> key) {
+        Map<Integer, List<T>> groups = new LinkedHashMap<>();
+        boolean cluster = isCluster();
+        for (T item : items) {
+            int slot = cluster ? slot(key.apply(item)) : SINGLE_GROUP;
+            groups.computeIfAbsent(slot, s -> new ArrayList<>()).add(item);
+        }
+        return groups;
+    }
+
+    //keys是否分布在多个slot,非集群时恒为false
+    public boolean spansSlots(List<String> keys) {
+        if (keys.isEmpty() || !isCluster()) return false;
+        int slot = slot(keys.get(0));
+        for (int i = 1; i < keys.size(); i++) {
+            if (slot(keys.get(i)) != slot) return true;
+        }
+        return false;
+    }
+
+    //并行执行各分组,结果与分组顺序一致;只有一组时在调用线程执行
+    public <G, R> List<R> parallel(Collection<G> groups, Function<G, R> task) {
+        if (groups.size() == 1) return List.of(task.apply(groups.iterator().next()));
+        List<CompletableFuture<R>> futures = new ArrayList<>(groups.size());
+        for (G group : groups) futures.add(CompletableFuture.supplyAsync(() -> task.apply(group), executor));
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+        return futures.stream().map(CompletableFuture::join).toList();
+    }
+
+    //与key同一slot的派生key: key带hash tag时直接拼接后缀,否则以整个key作为hash tag
+    public static String sameSlotKey(String key, String suffix) {
+        int slot = slot(key);
+        String candidate = key + suffix;
+        if (slot(candidate) == slot) return candidate;
+        candidate = "{" + key + "}" + suffix;
+        if (slot(candidate) == slot) return candidate;
+        throw CustomizeException.badRequest("无法生成与key同slot的派生key: " + key);
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
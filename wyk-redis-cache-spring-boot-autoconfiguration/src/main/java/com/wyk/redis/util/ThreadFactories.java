@@ -0,0 +1,61 @@
+package com.wyk.redis.util;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+  线程工厂: 运行在Java 21及以上且开启virtualThreads时创建虚拟线程,否则创建守护平台线程
+  编译目标为Java 17,虚拟线程API通过反射获取
+ */
+public final class ThreadFactories {
+
+    private static final Logger log = LoggerFactory.getLogger(ThreadFactories.class);
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method FACTORY;
+
+    static {
+        Method ofVirtual = null, name = null, factory = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+        } catch (ReflectiveOperationException e) {
+            log.debug("当前JVM不支持虚拟线程");
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+    }
+
+    private ThreadFactories() {
+    }
+
+    public static boolean isVirtualSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    //virtual为true且JVM支持时返回虚拟线程工厂
+    public static ThreadFactory create(String prefix, boolean virtual) {
+        if (virtual && isVirtualSupported()) {
+            try {
+                Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 1L);
+                return (ThreadFactory) FACTORY.invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                log.warn("创建虚拟线程工厂失败,使用平台线程: {}", e.getMessage());
+            }
+        }
+        AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
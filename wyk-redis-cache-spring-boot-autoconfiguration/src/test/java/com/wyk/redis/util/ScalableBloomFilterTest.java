@@ -0,0 +1,66 @@
+package com.wyk.redis.util;
+
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+  误判率校验: 插入expectedSize个元素后,用未插入的元素测量误判率,不超过配置fpp的1.5倍;扩容后整体误判率同样收敛
+ */
+class ScalableBloomFilterTest {
+
+    private static final double FPP = 0.01;
+    private static final double TOLERANCE = 1.5;
+    private static final int PROBES = 200_000;
+
+    @Test
+    void fppWithinExpectedSize() {
+        int expectedSize = 100_000;
+        ScalableBloomFilter filter = new ScalableBloomFilter(expectedSize, FPP, false);
+        fill(filter, expectedSize);
+
+        double measured = measure(filter);
+        assertTrue(measured <= FPP * TOLERANCE, "误判率 " + measured + " 超过 " + FPP * TOLERANCE);
+    }
+
+    @Test
+    void fppAfterGrowth() {
+        int expectedSize = 20_000;
+        ScalableBloomFilter filter = new ScalableBloomFilter(expectedSize, FPP, false);
+        fill(filter, expectedSize * 7);
+
+        assertTrue(filter.getSliceCount() >= 3, "未扩容,分片数 " + filter.getSliceCount());
+        double measured = measure(filter);
+        assertTrue(measured <= FPP * TOLERANCE, "扩容后误判率 " + measured + " 超过 " + FPP * TOLERANCE);
+    }
+
+    @Test
+    void fppForLongKeys() {
+        int expectedSize = 100_000;
+        ScalableBloomFilter filter = new ScalableBloomFilter(expectedSize, FPP, false);
+        for (long i = 0; i < expectedSize; i++) filter.put(i);
+        for (long i = 0; i < expectedSize; i++) assertTrue(filter.mightContain(i), "漏判: " + i);
+
+        int falsePositives = 0;
+        for (long i = 0; i < PROBES; i++) {
+            if (filter.mightContain(Long.MAX_VALUE - i)) falsePositives++;
+        }
+        double measured = (double) falsePositives / PROBES;
+        assertTrue(measured <= FPP * TOLERANCE, "误判率 " + measured + " 超过 " + FPP * TOLERANCE);
+    }
+
+    //插入后逐个确认没有漏判
+    private static void fill(ScalableBloomFilter filter, int size) {
+        for (int i = 0; i < size; i++) filter.put("item:" + i);
+        for (int i = 0; i < size; i++) assertTrue(filter.mightContain("item:" + i), "漏判: item:" + i);
+    }
+
+    private static double measure(ScalableBloomFilter filter) {
+        int falsePositives = 0;
+        for (int i = 0; i < PROBES; i++) {
+            if (filter.mightContain("probe:" + i)) falsePositives++;
+        }
+        return (double) falsePositives / PROBES;
+    }
+}